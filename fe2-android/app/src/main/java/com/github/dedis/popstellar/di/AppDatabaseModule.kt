@@ -3,6 +3,7 @@ package com.github.dedis.popstellar.di
 import android.app.Application
 import androidx.room.Room.databaseBuilder
 import com.github.dedis.popstellar.repository.database.AppDatabase
+import com.github.dedis.popstellar.repository.database.AppDatabaseMigrations
 import com.github.dedis.popstellar.repository.database.CustomTypeConverters
 import dagger.Module
 import dagger.Provides
@@ -29,6 +30,8 @@ object AppDatabaseModule {
         .addTypeConverter(
             CustomTypeConverters(
                 JsonModule.provideGson(DataRegistryModule.provideDataRegistryForGson())))
+        .addMigrations(*AppDatabaseMigrations.ALL)
+        // Only the versions without a migration path (prior to 4) are recreated from scratch
         .fallbackToDestructiveMigration()
         .allowMainThreadQueries()
         .build()
@@ -4,11 +4,15 @@ import com.github.dedis.popstellar.model.network.GenericMessage
 import com.github.dedis.popstellar.model.network.answer.Answer
 import com.github.dedis.popstellar.model.network.answer.Result
 import com.github.dedis.popstellar.model.network.answer.ResultMessages
+import com.github.dedis.popstellar.model.network.answer.ResultMessagesByChannel
+import com.github.dedis.popstellar.model.network.method.GetMessagesById
+import com.github.dedis.popstellar.model.network.method.Heartbeat
 import com.github.dedis.popstellar.model.network.method.Message
 import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
 import com.github.dedis.popstellar.model.network.method.message.data.Data
 import com.github.dedis.popstellar.model.network.method.message.data.DataRegistry
 import com.github.dedis.popstellar.model.network.method.message.data.election.Vote
+import com.github.dedis.popstellar.model.network.serializer.JsonValidationPolicy
 import com.github.dedis.popstellar.model.network.serializer.base64.JsonBase64DataSerializer
 import com.github.dedis.popstellar.model.network.serializer.data.JsonDataSerializer
 import com.github.dedis.popstellar.model.network.serializer.data.JsonVoteSerializer
@@ -18,7 +22,9 @@ import com.github.dedis.popstellar.model.network.serializer.database.JsonTransac
 import com.github.dedis.popstellar.model.network.serializer.network.JsonAnswerSerializer
 import com.github.dedis.popstellar.model.network.serializer.network.JsonChannelSerializer
 import com.github.dedis.popstellar.model.network.serializer.network.JsonGenericMessageDeserializer
+import com.github.dedis.popstellar.model.network.serializer.network.JsonGenericMessageStreamFactory
 import com.github.dedis.popstellar.model.network.serializer.network.JsonMessageGeneralSerializer
+import com.github.dedis.popstellar.model.network.serializer.network.JsonMessageIdsSerializer
 import com.github.dedis.popstellar.model.network.serializer.network.JsonMessageSerializer
 import com.github.dedis.popstellar.model.network.serializer.network.JsonResultSerializer
 import com.github.dedis.popstellar.model.objects.Channel
@@ -45,15 +51,34 @@ object JsonModule {
   @Provides
   @Singleton
   fun provideGson(dataRegistry: DataRegistry): Gson {
+    return buildGson(dataRegistry, JsonValidationPolicy.DEFAULT)
+  }
+
+  /**
+   * Build the Gson instance used to convert the protocol messages and the persisted objects
+   *
+   * @param dataRegistry registry used to find the type of the data messages
+   * @param validationPolicy policy deciding which messages are validated against the schemas
+   * @return the Gson instance
+   */
+  @JvmStatic
+  fun buildGson(dataRegistry: DataRegistry, validationPolicy: JsonValidationPolicy): Gson {
+    val dataSerializer = JsonDataSerializer(dataRegistry, validationPolicy)
     return GsonBuilder()
         .registerTypeAdapter(GenericMessage::class.java, JsonGenericMessageDeserializer())
+        // Registered after the tree based deserializer, to which it delegates non-broadcast frames
+        .registerTypeAdapterFactory(JsonGenericMessageStreamFactory(dataSerializer))
         .registerTypeAdapter(Message::class.java, JsonMessageSerializer())
-        .registerTypeAdapter(Data::class.java, JsonDataSerializer(dataRegistry))
+        .registerTypeAdapter(Heartbeat::class.java, JsonMessageIdsSerializer())
+        .registerTypeAdapter(GetMessagesById::class.java, JsonMessageIdsSerializer())
+        .registerTypeAdapter(Data::class.java, dataSerializer)
         .registerTypeAdapter(Vote::class.java, JsonVoteSerializer())
         .registerTypeAdapter(Result::class.java, JsonResultSerializer())
         .registerTypeAdapter(ResultMessages::class.java, JsonResultSerializer())
+        .registerTypeAdapter(ResultMessagesByChannel::class.java, JsonResultSerializer())
         .registerTypeAdapter(Answer::class.java, JsonAnswerSerializer())
-        .registerTypeAdapter(MessageGeneral::class.java, JsonMessageGeneralSerializer())
+        .registerTypeAdapter(
+            MessageGeneral::class.java, JsonMessageGeneralSerializer(validationPolicy))
         .registerTypeAdapter(Channel::class.java, JsonChannelSerializer())
         // Objects serializer for database
         .registerTypeAdapter(Lao::class.java, JsonLaoSerializer())
@@ -64,7 +89,7 @@ object JsonModule {
             Base64URLData::class.java,
             JsonBase64DataSerializer { data: String -> Base64URLData(data) })
         .registerTypeAdapter(
-            PublicKey::class.java, JsonBase64DataSerializer { data: String -> PublicKey(data) })
+            PublicKey::class.java, JsonBase64DataSerializer { data: String -> PublicKey.of(data) })
         .registerTypeAdapter(
             Signature::class.java, JsonBase64DataSerializer { data: String -> Signature(data) })
         .registerTypeAdapter(
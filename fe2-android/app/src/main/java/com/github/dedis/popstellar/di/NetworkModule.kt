@@ -1,5 +1,8 @@
 package com.github.dedis.popstellar.di
 
+import com.github.dedis.popstellar.repository.remote.TrafficCounters
+import com.tinder.scarlet.retry.BackoffStrategy
+import com.tinder.scarlet.retry.ExponentialWithJitterBackoffStrategy
 import dagger.Module
 import dagger.Provides
 import dagger.hilt.InstallIn
@@ -13,12 +16,35 @@ import okhttp3.logging.HttpLoggingInterceptor
 @InstallIn(SingletonComponent::class)
 object NetworkModule {
 
+  /**
+   * The websockets offer the permessage-deflate extension to the servers. The JSON messages
+   * compress well, so they are compressed from a lower size than the default of OkHttp (1024
+   * bytes), which also covers the publishes and most broadcasts.
+   */
   @JvmStatic
   @Provides
   @Singleton
-  fun provideOkHttpClient(): OkHttpClient {
+  fun provideOkHttpClient(trafficCounters: TrafficCounters): OkHttpClient {
     return Builder()
         .addInterceptor(HttpLoggingInterceptor().setLevel(HttpLoggingInterceptor.Level.BASIC))
+        .socketFactory(trafficCounters.socketFactory())
+        .minWebSocketMessageToCompress(MIN_COMPRESSED_MESSAGE_BYTES)
         .build()
   }
+
+  /**
+   * Delay between the attempts to reconnect a lost websocket. It doubles at each attempt up to a
+   * maximum, and is randomized so that the clients that lost their connection at the same time do
+   * not all reconnect at the same time.
+   */
+  @JvmStatic
+  @Provides
+  @Singleton
+  fun provideBackoffStrategy(): BackoffStrategy {
+    return ExponentialWithJitterBackoffStrategy(BACKOFF_BASE_MILLIS, BACKOFF_MAX_MILLIS)
+  }
+
+  private const val MIN_COMPRESSED_MESSAGE_BYTES = 256L
+  private const val BACKOFF_BASE_MILLIS = 1000L
+  private const val BACKOFF_MAX_MILLIS = 60_000L
 }
@@ -0,0 +1,35 @@
+package com.github.dedis.popstellar.model.network.answer
+
+import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.objects.Channel
+import java.util.Objects
+
+/** A succeed get_messages_by_id query's answer with the messages found, by channel */
+class ResultMessagesByChannel
+/**
+ * Constructor of a ResultMessagesByChannel
+ *
+ * @param id of the answer
+ * @param messages of the answer, by channel
+ */
+(id: Int, val messages: Map<Channel, List<MessageGeneral>>) : Result(id) {
+
+  override fun equals(other: Any?): Boolean {
+    if (this === other) {
+      return true
+    }
+    if (other == null || javaClass != other.javaClass) {
+      return false
+    }
+    val that = other as ResultMessagesByChannel
+    return id == that.id && messages == that.messages
+  }
+
+  override fun hashCode(): Int {
+    return Objects.hash(id, messages)
+  }
+
+  override fun toString(): String {
+    return "ResultMessagesByChannel{messages=$messages}"
+  }
+}
@@ -0,0 +1,38 @@
+package com.github.dedis.popstellar.model.network.method
+
+import com.github.dedis.popstellar.model.Immutable
+import com.github.dedis.popstellar.model.objects.Channel
+import com.github.dedis.popstellar.model.objects.security.MessageID
+import java.util.Objects
+
+/**
+ * Query to retrieve messages given their ids, typically those announced by a [Heartbeat] that are
+ * unknown.
+ *
+ * It is not bound to a single channel, the root channel is used as a placeholder.
+ */
+@Immutable
+class GetMessagesById(messageIds: Map<Channel, List<MessageID>>, id: Int) :
+    Query(Channel.ROOT, id) {
+  /** Returns the ids of the requested messages, by channel. */
+  val messageIds: Map<Channel, List<MessageID>> = HashMap(messageIds)
+
+  override val method: String
+    get() = Method.GET_MESSAGES_BY_ID.method
+
+  override fun equals(other: Any?): Boolean {
+    if (!super.equals(other)) {
+      return false
+    }
+    val that = other as GetMessagesById
+    return messageIds == that.messageIds
+  }
+
+  override fun hashCode(): Int {
+    return Objects.hash(super.hashCode(), messageIds)
+  }
+
+  override fun toString(): String {
+    return "GetMessagesById{id=$requestId, messageIds=$messageIds}"
+  }
+}
@@ -0,0 +1,40 @@
+package com.github.dedis.popstellar.model.network.method
+
+import com.github.dedis.popstellar.model.Immutable
+import com.github.dedis.popstellar.model.objects.Channel
+import com.github.dedis.popstellar.model.objects.security.MessageID
+import java.util.Objects
+
+/**
+ * Notification listing the ids of the messages a server received recently on each channel, so that
+ * the receiver can fetch those it is missing with [GetMessagesById].
+ *
+ * It is not bound to a single channel, the root channel is used as a placeholder.
+ */
+@Immutable
+class Heartbeat(messageIds: Map<Channel, List<MessageID>>) : Message(Channel.ROOT) {
+  /** Returns the ids of the messages, by channel. */
+  val messageIds: Map<Channel, List<MessageID>> = HashMap(messageIds)
+
+  override val method: String
+    get() = Method.HEARTBEAT.method
+
+  override fun equals(other: Any?): Boolean {
+    if (this === other) {
+      return true
+    }
+    if (other == null || javaClass != other.javaClass) {
+      return false
+    }
+    val that = other as Heartbeat
+    return messageIds == that.messageIds
+  }
+
+  override fun hashCode(): Int {
+    return Objects.hash(messageIds)
+  }
+
+  override fun toString(): String {
+    return "Heartbeat{messageIds=$messageIds}"
+  }
+}
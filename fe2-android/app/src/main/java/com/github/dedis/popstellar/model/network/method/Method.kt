@@ -8,7 +8,8 @@ enum class Method
  * Constructor for the Method
  *
  * @param method the name of the method
- * @param dataClass the data class (publish/broadcast/catchup/subscribe/unsubscribe)
+ * @param dataClass the data class
+ *   (publish/broadcast/catchup/subscribe/unsubscribe/heartbeat/get_messages_by_id)
  * @param expectResult the expect result as a boolean
  */
 (
@@ -22,7 +23,9 @@ enum class Method
   UNSUBSCRIBE("unsubscribe", Unsubscribe::class.java, true),
   PUBLISH("publish", Publish::class.java, true),
   MESSAGE("broadcast", Broadcast::class.java, false),
-  CATCHUP("catchup", Catchup::class.java, true);
+  CATCHUP("catchup", Catchup::class.java, true),
+  HEARTBEAT("heartbeat", Heartbeat::class.java, false),
+  GET_MESSAGES_BY_ID("get_messages_by_id", GetMessagesById::class.java, true);
 
   /** Returns the expected result of the Method. */
   fun expectResult(): Boolean {
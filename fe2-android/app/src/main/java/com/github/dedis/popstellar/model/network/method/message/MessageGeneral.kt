@@ -9,6 +9,7 @@ import com.github.dedis.popstellar.model.objects.security.MessageID
 import com.github.dedis.popstellar.model.objects.security.PrivateKey
 import com.github.dedis.popstellar.model.objects.security.PublicKey
 import com.github.dedis.popstellar.model.objects.security.Signature
+import com.github.dedis.popstellar.model.objects.security.SignatureBatch
 import com.google.gson.Gson
 import java.nio.charset.StandardCharsets
 import java.security.GeneralSecurityException
@@ -18,13 +19,15 @@ import timber.log.Timber
 /**
  * Container of a high level message.
  *
- * It is encapsulated inside low level messages
+ * It is encapsulated inside low level messages. The data of a received message is only decoded
+ * when it is first accessed, so that the messages already handled are dropped at the cost of a
+ * lookup of their id.
  */
 @Immutable
 class MessageGeneral {
   val sender: PublicKey
   val dataEncoded: Base64URLData
-  val data: Data
+  private val decodedData: Lazy<Data>
   val messageId: MessageID
   val signature: Signature
 
@@ -34,6 +37,10 @@ class MessageGeneral {
 
   var isEmpty: Boolean = false
 
+  /** Content of the message, decoded from [dataEncoded] on first access */
+  val data: Data
+    get() = decodedData.value
+
   constructor(
       sender: PublicKey,
       dataBuf: Base64URLData,
@@ -41,10 +48,32 @@ class MessageGeneral {
       signature: Signature,
       messageID: MessageID,
       witnessSignatures: List<PublicKeySignaturePair>
+  ) : this(sender, dataBuf, lazyOf(data), signature, messageID, witnessSignatures)
+
+  /**
+   * @param decoder decodes the data of the message from [dataBuf] when it is first accessed, throws
+   *   a JsonParseException if the data is invalid
+   */
+  constructor(
+      sender: PublicKey,
+      dataBuf: Base64URLData,
+      decoder: () -> Data,
+      signature: Signature,
+      messageID: MessageID,
+      witnessSignatures: List<PublicKeySignaturePair>
+  ) : this(sender, dataBuf, lazy(decoder), signature, messageID, witnessSignatures)
+
+  private constructor(
+      sender: PublicKey,
+      dataBuf: Base64URLData,
+      data: Lazy<Data>,
+      signature: Signature,
+      messageID: MessageID,
+      witnessSignatures: List<PublicKeySignaturePair>
   ) {
     this.sender = sender
     this.dataEncoded = dataBuf
-    this.data = data
+    this.decodedData = data
     this.messageId = messageID
     this.signature = signature
     this.witnessSignatures = ArrayList(witnessSignatures)
@@ -54,7 +83,7 @@ class MessageGeneral {
     requireNotNull(data)
 
     this.sender = keyPair.publicKey
-    this.data = data
+    this.decodedData = lazyOf(data)
 
     val dataJson = gson.toJson(data, Data::class.java)
     Timber.tag(TAG).d(dataJson)
@@ -87,6 +116,7 @@ class MessageGeneral {
       return false
     }
 
+    val data = data
     if (data is WitnessMessageSignature) {
       val witness = data
       val witnessSignature = witness.signature
@@ -97,6 +127,26 @@ class MessageGeneral {
     return true
   }
 
+  /**
+   * Add the signatures checked by [verify] to a batch, so that the signatures of many messages are
+   * verified together
+   *
+   * @param batch batch the signatures are added to
+   * @return the number of signatures added, they are the last entries of the batch
+   * @throws com.google.gson.JsonParseException if the data of the message is invalid
+   */
+  fun addSignaturesTo(batch: SignatureBatch): Int {
+    // Decode the data first, so that nothing is added if it is invalid
+    val data = data
+    batch.add(sender, signature, dataEncoded)
+
+    if (data is WitnessMessageSignature) {
+      batch.add(sender, data.signature, data.messageId)
+      return 2
+    }
+    return 1
+  }
+
   override fun equals(other: Any?): Boolean {
     if (this === other) {
       return true
@@ -105,19 +155,21 @@ class MessageGeneral {
       return false
     }
     val that = other as MessageGeneral
+    // The data is decoded from the encoded data, comparing the latter is enough
     return sender == that.sender &&
         dataEncoded == that.dataEncoded &&
-        data == that.data &&
         messageId == that.messageId &&
         signature == that.signature &&
         witnessSignatures == that.witnessSignatures
   }
 
   override fun hashCode(): Int {
-    return Objects.hash(sender, dataEncoded, data, messageId, signature, witnessSignatures)
+    return Objects.hash(sender, dataEncoded, messageId, signature, witnessSignatures)
   }
 
   override fun toString(): String {
+    // Logging a message does not decode its data
+    val data = if (decodedData.isInitialized()) data else dataEncoded
     return "MessageGeneral{sender='$sender', data='$data', signature='$signature', messageId='$messageId', witnessSignatures='${
       witnessSignatures.toTypedArray().contentToString()
     }'}"
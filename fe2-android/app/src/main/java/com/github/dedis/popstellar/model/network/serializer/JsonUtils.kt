@@ -1,12 +1,18 @@
 package com.github.dedis.popstellar.model.network.serializer
 
 import com.fasterxml.jackson.core.JsonProcessingException
+import com.fasterxml.jackson.databind.JsonNode
 import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.node.JsonNodeFactory
+import com.google.gson.JsonElement
 import com.google.gson.JsonObject
 import com.google.gson.JsonParseException
+import com.google.gson.JsonPrimitive
 import com.networknt.schema.JsonSchema
 import com.networknt.schema.JsonSchemaFactory
 import com.networknt.schema.SpecVersion
+import java.math.BigDecimal
+import java.math.BigInteger
 import java.net.URI
 import java.util.concurrent.ConcurrentHashMap
 import timber.log.Timber
@@ -21,6 +27,7 @@ object JsonUtils {
   private val TAG = JsonUtils::class.java.simpleName
 
   private val OBJECT_MAPPER = ObjectMapper()
+  private val NODE_FACTORY = JsonNodeFactory.instance
   private val FACTORY = JsonSchemaFactory.getInstance(SpecVersion.VersionFlag.V7)
 
   const val ROOT_SCHEMA = "protocol/jsonRPC.json"
@@ -78,16 +85,110 @@ object JsonUtils {
     val schema = loadSchema(schemaPath)
 
     try {
-      val errors = schema.validate(OBJECT_MAPPER.readTree(json))
-      if (errors.isNotEmpty()) {
-        throw JsonParseException(
-            "Json : $json\nValidationMessage errors : ${errors.toTypedArray().contentToString()}")
-      }
+      validate(schema, OBJECT_MAPPER.readTree(json))
     } catch (e: JsonProcessingException) {
       throw JsonParseException(e)
     }
   }
 
+  /**
+   * Verify the json tree against the given schema.
+   *
+   * The Gson tree is directly converted into the tree the schema validator works on, which avoids
+   * rendering it to a string and parsing it a second time.
+   *
+   * @param schemaPath the path of the schema resource
+   * @param json the json tree
+   * @throws JsonParseException if the json is invalid
+   */
+  @JvmStatic
+  @Throws(JsonParseException::class)
+  fun verifyJson(schemaPath: String, json: JsonElement) {
+    validate(loadSchema(schemaPath), toJsonNode(json))
+  }
+
+  /**
+   * Verify, if the policy requires it, a json tree built by the app against the given schema.
+   *
+   * @param policy the validation policy in use
+   * @param schemaPath the path of the schema resource
+   * @param json the json tree
+   * @throws JsonParseException if the json is validated and invalid
+   */
+  @JvmStatic
+  @Throws(JsonParseException::class)
+  fun verifyOutboundJson(policy: JsonValidationPolicy, schemaPath: String, json: JsonElement) {
+    if (policy.shouldValidateOutbound()) {
+      verifyJson(schemaPath, json)
+    }
+  }
+
+  @Throws(JsonParseException::class)
+  private fun validate(schema: JsonSchema, node: JsonNode) {
+    val errors = schema.validate(node)
+    if (errors.isNotEmpty()) {
+      throw JsonParseException(
+          "Json : $node\nValidationMessage errors : ${errors.toTypedArray().contentToString()}")
+    }
+  }
+
+  /**
+   * Convert a Gson json tree into the equivalent Jackson tree
+   *
+   * @param element the Gson tree
+   * @return the Jackson tree
+   */
+  private fun toJsonNode(element: JsonElement): JsonNode {
+    return when {
+      element.isJsonObject -> {
+        val node = NODE_FACTORY.objectNode()
+        for ((key, value) in element.asJsonObject.entrySet()) {
+          node.set<JsonNode>(key, toJsonNode(value))
+        }
+        node
+      }
+      element.isJsonArray -> {
+        val node = NODE_FACTORY.arrayNode()
+        element.asJsonArray.forEach { node.add(toJsonNode(it)) }
+        node
+      }
+      element.isJsonPrimitive -> toJsonNode(element.asJsonPrimitive)
+      else -> NODE_FACTORY.nullNode()
+    }
+  }
+
+  private fun toJsonNode(primitive: JsonPrimitive): JsonNode {
+    return when {
+      primitive.isBoolean -> NODE_FACTORY.booleanNode(primitive.asBoolean)
+      primitive.isString -> NODE_FACTORY.textNode(primitive.asString)
+      else ->
+          when (val number = primitive.asNumber) {
+            is Int,
+            is Short,
+            is Byte -> NODE_FACTORY.numberNode(number.toInt())
+            is Long -> NODE_FACTORY.numberNode(number)
+            is Float,
+            is Double -> NODE_FACTORY.numberNode(number.toDouble())
+            is BigInteger -> NODE_FACTORY.numberNode(number)
+            is BigDecimal -> NODE_FACTORY.numberNode(number)
+            // Numbers parsed by Gson keep their textual form, type them the way Jackson would
+            else -> parseNumber(number.toString())
+          }
+    }
+  }
+
+  private fun parseNumber(value: String): JsonNode {
+    if (value.contains('.') || value.contains('e') || value.contains('E')) {
+      return NODE_FACTORY.numberNode(value.toDouble())
+    }
+    val integer = BigInteger(value)
+    return when (integer.bitLength()) {
+      in 0 until Int.SIZE_BITS -> NODE_FACTORY.numberNode(integer.toInt())
+      in Int.SIZE_BITS until Long.SIZE_BITS -> NODE_FACTORY.numberNode(integer.toLong())
+      else -> NODE_FACTORY.numberNode(integer)
+    }
+  }
+
   /**
    * Load a json schema from the resources directory
    *
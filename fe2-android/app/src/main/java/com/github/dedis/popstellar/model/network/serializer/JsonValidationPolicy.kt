@@ -0,0 +1,44 @@
+package com.github.dedis.popstellar.model.network.serializer
+
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Policy deciding which json messages are validated against the protocol schemas.
+ *
+ * Messages received from the network are never trusted and are always validated. Messages built by
+ * the app itself (published messages, or objects written to the database) are valid by
+ * construction, validating them only costs an extra parsing per message.
+ */
+enum class JsonValidationPolicy {
+  /** Every message is validated, whether it was received or built by the app */
+  FULL,
+
+  /** Only received messages are validated, messages built by the app are trusted */
+  INBOUND_ONLY,
+
+  /** Received messages are always validated, one outbound message in [SAMPLING_RATE] is */
+  SAMPLED;
+
+  /**
+   * Tells whether a message built by the app has to be validated before being sent or persisted.
+   *
+   * @return true if the outbound message has to be validated
+   */
+  fun shouldValidateOutbound(): Boolean {
+    return when (this) {
+      FULL -> true
+      INBOUND_ONLY -> false
+      SAMPLED -> outboundCounter.getAndIncrement() % SAMPLING_RATE == 0L
+    }
+  }
+
+  companion object {
+    /** Number of outbound messages among which a single one is validated in [SAMPLED] mode */
+    const val SAMPLING_RATE = 100L
+
+    /** Policy used by the application */
+    @JvmField val DEFAULT = SAMPLED
+
+    private val outboundCounter = AtomicLong()
+  }
+}
@@ -6,17 +6,27 @@ import com.github.dedis.popstellar.model.network.method.message.data.DataRegistr
 import com.github.dedis.popstellar.model.network.method.message.data.Objects
 import com.github.dedis.popstellar.model.network.serializer.JsonUtils
 import com.github.dedis.popstellar.model.network.serializer.JsonUtils.verifyJson
+import com.github.dedis.popstellar.model.network.serializer.JsonUtils.verifyOutboundJson
+import com.github.dedis.popstellar.model.network.serializer.JsonValidationPolicy
+import com.google.gson.Gson
 import com.google.gson.JsonDeserializationContext
 import com.google.gson.JsonDeserializer
 import com.google.gson.JsonElement
 import com.google.gson.JsonParseException
 import com.google.gson.JsonSerializationContext
 import com.google.gson.JsonSerializer
+import com.google.gson.stream.JsonReader
+import java.io.ByteArrayInputStream
+import java.io.IOException
+import java.io.InputStreamReader
 import java.lang.reflect.Type
+import java.nio.charset.StandardCharsets
 
 /** Json serializer and deserializer for the data messages */
-class JsonDataSerializer(private val dataRegistry: DataRegistry) :
-    JsonSerializer<Data>, JsonDeserializer<Data> {
+class JsonDataSerializer(
+    private val dataRegistry: DataRegistry,
+    private val validationPolicy: JsonValidationPolicy = JsonValidationPolicy.DEFAULT
+) : JsonSerializer<Data>, JsonDeserializer<Data> {
   @Throws(JsonParseException::class)
   override fun deserialize(
       json: JsonElement,
@@ -24,16 +34,56 @@ class JsonDataSerializer(private val dataRegistry: DataRegistry) :
       context: JsonDeserializationContext
   ): Data {
     val obj = json.asJsonObject
-    verifyJson(JsonUtils.DATA_SCHEMA, obj.toString())
+    verifyJson(JsonUtils.DATA_SCHEMA, obj)
 
-    val `object` = Objects.find(obj[OBJECT].asString)
-    val action = Action.find(obj[ACTION].asString)
+    val clazz = getDataClass(obj[OBJECT].asString, obj[ACTION].asString)
+    return context.deserialize(json, clazz)
+  }
+
+  /**
+   * Decode the utf-8 json representation of a data into its concrete class.
+   *
+   * The bytes are parsed only once, into a single tree that is validated against the schema and
+   * then bound to the data class. No string is built from the bytes.
+   *
+   * @param gson the Gson instance used to instantiate the data
+   * @param json the utf-8 bytes of the json
+   * @return the decoded data
+   * @throws JsonParseException if the json is invalid or does not represent a known data
+   */
+  @Throws(JsonParseException::class)
+  fun decode(gson: Gson, json: ByteArray): Data {
+    val tree =
+        try {
+          // The reader is strict, as the schema validator of the other paths is
+          newReader(json).use { reader -> gson.getAdapter(JsonElement::class.java).read(reader) }
+        } catch (e: IOException) {
+          throw JsonParseException(e)
+        } catch (e: IllegalStateException) {
+          throw JsonParseException(e)
+        }
+    if (tree == null || !tree.isJsonObject) {
+      throw JsonParseException("The data is not a json object")
+    }
+
+    // The data comes from the network, it is always validated
+    verifyJson(JsonUtils.DATA_SCHEMA, tree)
+
+    val obj = tree.asJsonObject
+    val clazz = getDataClass(obj[OBJECT].asString, obj[ACTION].asString)
+    return gson.fromJson(tree, clazz)
+  }
+
+  @Throws(JsonParseException::class)
+  private fun getDataClass(objectName: String, actionName: String): Class<out Data> {
+    val `object` = Objects.find(objectName)
+    val action = Action.find(actionName)
 
     if (`object` == null) {
-      throw JsonParseException("Unknown object type : " + obj[OBJECT].asString)
+      throw JsonParseException("Unknown object type : $objectName")
     }
     if (action == null) {
-      throw JsonParseException("Unknown action type : " + obj[ACTION].asString)
+      throw JsonParseException("Unknown action type : $actionName")
     }
 
     val clazz = dataRegistry.getType(`object`, action)
@@ -42,7 +92,8 @@ class JsonDataSerializer(private val dataRegistry: DataRegistry) :
           "The pair (${`object`.`object`}, ${action.action}) does not exists in the protocol")
     }
 
-    return context.deserialize(json, clazz.get())
+    @Suppress("UNCHECKED_CAST")
+    return clazz.get() as Class<out Data>
   }
 
   override fun serialize(
@@ -55,7 +106,8 @@ class JsonDataSerializer(private val dataRegistry: DataRegistry) :
     obj.addProperty(OBJECT, src.`object`)
     obj.addProperty(ACTION, src.action)
 
-    verifyJson(JsonUtils.DATA_SCHEMA, obj.toString())
+    // Data built by the app is only validated if the policy requires it
+    verifyOutboundJson(validationPolicy, JsonUtils.DATA_SCHEMA, obj)
 
     return obj
   }
@@ -63,5 +115,9 @@ class JsonDataSerializer(private val dataRegistry: DataRegistry) :
   companion object {
     private const val OBJECT = "object"
     private const val ACTION = "action"
+
+    private fun newReader(json: ByteArray): JsonReader {
+      return JsonReader(InputStreamReader(ByteArrayInputStream(json), StandardCharsets.UTF_8))
+    }
   }
 }
@@ -3,19 +3,16 @@ package com.github.dedis.popstellar.model.network.serializer.database
 import com.github.dedis.popstellar.model.network.method.message.data.election.ElectionQuestion
 import com.github.dedis.popstellar.model.network.method.message.data.election.ElectionVersion
 import com.github.dedis.popstellar.model.network.method.message.data.election.QuestionResult
-import com.github.dedis.popstellar.model.network.method.message.data.election.Vote
 import com.github.dedis.popstellar.model.objects.Channel
 import com.github.dedis.popstellar.model.objects.Election
+import com.github.dedis.popstellar.model.objects.VoteLedger
 import com.github.dedis.popstellar.model.objects.event.EventState
-import com.github.dedis.popstellar.model.objects.security.MessageID
-import com.github.dedis.popstellar.model.objects.security.PublicKey
 import com.google.gson.JsonArray
 import com.google.gson.JsonDeserializationContext
 import com.google.gson.JsonDeserializer
 import com.google.gson.JsonElement
 import com.google.gson.JsonObject
 import com.google.gson.JsonParseException
-import com.google.gson.JsonPrimitive
 import com.google.gson.JsonSerializationContext
 import com.google.gson.JsonSerializer
 import java.lang.reflect.Type
@@ -54,29 +51,6 @@ class JsonElectionSerializer : JsonSerializer<Election>, JsonDeserializer<Electi
           context.deserialize(electionQuestionJsonElement, ElectionQuestion::class.java))
     }
 
-    // Deserialize the map votesBySender
-    val votesBySender: MutableMap<PublicKey, List<Vote>> = HashMap()
-    val votesBySenderObject = jsonObject["votesBySender"].asJsonObject
-    for ((key, value) in votesBySenderObject.entrySet()) {
-      val senderPublicKey = PublicKey(key)
-      val votesBySenderJsonArray = value.asJsonArray
-      // Deserialize the value of the map (list of votes)
-      val votesBySenderPk: MutableList<Vote> = ArrayList()
-      for (element in votesBySenderJsonArray) {
-        votesBySenderPk.add(context.deserialize(element, Vote::class.java))
-      }
-      votesBySender[senderPublicKey] = votesBySenderPk
-    }
-
-    // Deserialize the map messageMap
-    val messageMap: MutableMap<PublicKey, MessageID> = HashMap()
-    val messageMapObject = jsonObject["messageMap"].asJsonObject
-    for ((key, value) in messageMapObject.entrySet()) {
-      val senderPublicKey = PublicKey(key)
-      val messageId = MessageID(value.asString)
-      messageMap[senderPublicKey] = messageId
-    }
-
     // Deserialize the map results
     val results: MutableMap<String, Set<QuestionResult>> = HashMap()
     val resultsObject = jsonObject["results"].asJsonObject
@@ -100,8 +74,7 @@ class JsonElectionSerializer : JsonSerializer<Election>, JsonDeserializer<Electi
         electionQuestions,
         electionKey,
         electionVersion,
-        votesBySender,
-        messageMap,
+        VoteLedger(),
         state,
         results)
   }
@@ -137,28 +110,8 @@ class JsonElectionSerializer : JsonSerializer<Election>, JsonDeserializer<Electi
     }
     jsonObject.add("electionQuestions", electionQuestionsJsonArray)
 
-    // Serialize the map of votesBySender into a JsonObject
-    val votesBySenderJsonObject = JsonObject()
-    for ((key, value) in election.votesBySender) {
-      val pk = key.encoded
-      // Serialize the list of votes into a JsonArray
-      val votesBySenderJsonArray = JsonArray()
-      for (vote in value) {
-        votesBySenderJsonArray.add(context.serialize(vote, Vote::class.java))
-      }
-      votesBySenderJsonObject.add(pk, votesBySenderJsonArray)
-    }
-    jsonObject.add("votesBySender", votesBySenderJsonObject)
-
-    // Serialize the messageMap into a JsonObject
-    val messageMapJsonObject = JsonObject()
-    for ((key, value) in election.messageMap) {
-      val pk = key.encoded
-      val messageID = value.encoded
-      val jsonElement: JsonElement = JsonPrimitive(messageID)
-      messageMapJsonObject.add(pk, jsonElement)
-    }
-    jsonObject.add("messageMap", messageMapJsonObject)
+    // The votes are not serialized, they are persisted one by one in the votes table and were
+    // moved out of the elections stored before (see AppDatabaseMigrations.MIGRATION_4_5)
 
     // Serialize the results map into a JsonObject
     val resultsJsonObject = JsonObject()
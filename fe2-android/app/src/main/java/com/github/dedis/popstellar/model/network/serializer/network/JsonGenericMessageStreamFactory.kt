@@ -0,0 +1,156 @@
+package com.github.dedis.popstellar.model.network.serializer.network
+
+import com.github.dedis.popstellar.model.network.GenericMessage
+import com.github.dedis.popstellar.model.network.method.Broadcast
+import com.github.dedis.popstellar.model.network.method.Method
+import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.network.method.message.PublicKeySignaturePair
+import com.github.dedis.popstellar.model.network.serializer.JsonUtils.testRPCVersion
+import com.github.dedis.popstellar.model.network.serializer.data.JsonDataSerializer
+import com.github.dedis.popstellar.model.objects.Channel
+import com.github.dedis.popstellar.model.objects.security.Base64URLData
+import com.github.dedis.popstellar.model.objects.security.MessageID
+import com.github.dedis.popstellar.model.objects.security.PublicKey
+import com.github.dedis.popstellar.model.objects.security.Signature
+import com.google.gson.Gson
+import com.google.gson.JsonObject
+import com.google.gson.JsonParseException
+import com.google.gson.JsonParser
+import com.google.gson.TypeAdapter
+import com.google.gson.TypeAdapterFactory
+import com.google.gson.reflect.TypeToken
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonToken
+import com.google.gson.stream.JsonWriter
+
+/**
+ * Streaming decoder of the generic messages received from the network.
+ *
+ * Broadcasts make up most of the inbound traffic, in particular during catchups. Their frame is
+ * decoded in a single pass, without building any intermediate json tree or string. The data of the
+ * message is only decoded when first accessed, see [JsonDataSerializer.decode]: it is parsed once
+ * into a tree, as the schema validation needs one.
+ *
+ * Any other frame (answers, or broadcasts whose method comes after their params) is handed over to
+ * the tree based [JsonGenericMessageDeserializer], which must be registered before this factory.
+ */
+class JsonGenericMessageStreamFactory(private val dataSerializer: JsonDataSerializer) :
+    TypeAdapterFactory {
+
+  override fun <T> create(gson: Gson, type: TypeToken<T>): TypeAdapter<T>? {
+    if (type.rawType != GenericMessage::class.java) {
+      return null
+    }
+
+    val delegate = gson.getDelegateAdapter(this, TypeToken.get(GenericMessage::class.java))
+    @Suppress("UNCHECKED_CAST")
+    return GenericMessageAdapter(gson, delegate).nullSafe() as TypeAdapter<T>
+  }
+
+  private inner class GenericMessageAdapter(
+      private val gson: Gson,
+      private val delegate: TypeAdapter<GenericMessage>
+  ) : TypeAdapter<GenericMessage>() {
+    private val witnessSignaturesAdapter =
+        gson.getAdapter(object : TypeToken<List<PublicKeySignaturePair>>() {})
+
+    override fun write(writer: JsonWriter, value: GenericMessage) {
+      delegate.write(writer, value)
+    }
+
+    override fun read(reader: JsonReader): GenericMessage {
+      // Fields that are not streamed are kept to hand the frame over to the tree based deserializer
+      val frame = JsonObject()
+      var method: String? = null
+      var broadcast: Broadcast? = null
+
+      reader.beginObject()
+      while (reader.hasNext()) {
+        val name = reader.nextName()
+        if (name == METHOD && reader.peek() == JsonToken.STRING) {
+          method = reader.nextString()
+          frame.addProperty(METHOD, method)
+        } else if (name == PARAMS && method == Method.MESSAGE.method) {
+          broadcast = readBroadcast(reader)
+        } else {
+          frame.add(name, JsonParser.parseReader(reader))
+        }
+      }
+      reader.endObject()
+
+      if (broadcast == null) {
+        return delegate.fromJsonTree(frame)
+      }
+
+      testRPCVersion(frame)
+      return broadcast
+    }
+
+    private fun readBroadcast(reader: JsonReader): Broadcast {
+      var channel: Channel? = null
+      var message: MessageGeneral? = null
+
+      reader.beginObject()
+      while (reader.hasNext()) {
+        when (reader.nextName()) {
+          CHANNEL -> channel = Channel.fromString(reader.nextString())
+          MESSAGE -> message = readMessage(reader)
+          else -> reader.skipValue()
+        }
+      }
+      reader.endObject()
+
+      return try {
+        Broadcast(channel, message)
+      } catch (e: IllegalArgumentException) {
+        throw JsonParseException(e)
+      }
+    }
+
+    private fun readMessage(reader: JsonReader): MessageGeneral {
+      var dataBuf: Base64URLData? = null
+      var sender: PublicKey? = null
+      var signature: Signature? = null
+      var messageId: MessageID? = null
+      var witnessSignatures: List<PublicKeySignaturePair> = emptyList()
+
+      reader.beginObject()
+      while (reader.hasNext()) {
+        try {
+          when (reader.nextName()) {
+            DATA -> dataBuf = Base64URLData(reader.nextString())
+            SENDER -> sender = PublicKey.of(reader.nextString())
+            SIGNATURE -> signature = Signature(reader.nextString())
+            MESSAGE_ID -> messageId = MessageID(reader.nextString())
+            WITNESS_SIGNATURES -> witnessSignatures = witnessSignaturesAdapter.read(reader)
+            else -> reader.skipValue()
+          }
+        } catch (e: IllegalArgumentException) {
+          // Thrown on invalid base64 values or keys
+          throw JsonParseException(e)
+        }
+      }
+      reader.endObject()
+
+      if (dataBuf == null || sender == null || signature == null || messageId == null) {
+        throw JsonParseException("Incomplete message received")
+      }
+
+      // The data is decoded when first accessed, a message already handled is dropped before
+      val decoder = { dataSerializer.decode(gson, dataBuf.bytesView) }
+      return MessageGeneral(sender, dataBuf, decoder, signature, messageId, witnessSignatures)
+    }
+  }
+
+  companion object {
+    private const val METHOD = "method"
+    private const val PARAMS = "params"
+    private const val CHANNEL = "channel"
+    private const val MESSAGE = "message"
+    private const val DATA = "data"
+    private const val SENDER = "sender"
+    private const val SIGNATURE = "signature"
+    private const val MESSAGE_ID = "message_id"
+    private const val WITNESS_SIGNATURES = "witness_signatures"
+  }
+}
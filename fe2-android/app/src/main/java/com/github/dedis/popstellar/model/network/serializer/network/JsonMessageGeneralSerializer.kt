@@ -4,7 +4,8 @@ import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
 import com.github.dedis.popstellar.model.network.method.message.PublicKeySignaturePair
 import com.github.dedis.popstellar.model.network.method.message.data.Data
 import com.github.dedis.popstellar.model.network.serializer.JsonUtils
-import com.github.dedis.popstellar.model.network.serializer.JsonUtils.verifyJson
+import com.github.dedis.popstellar.model.network.serializer.JsonUtils.verifyOutboundJson
+import com.github.dedis.popstellar.model.network.serializer.JsonValidationPolicy
 import com.github.dedis.popstellar.model.objects.security.Base64URLData
 import com.github.dedis.popstellar.model.objects.security.MessageID
 import com.github.dedis.popstellar.model.objects.security.PublicKey
@@ -20,8 +21,9 @@ import com.google.gson.annotations.SerializedName
 import java.lang.reflect.Type
 import java.nio.charset.StandardCharsets
 
-class JsonMessageGeneralSerializer :
-    JsonSerializer<MessageGeneral>, JsonDeserializer<MessageGeneral> {
+class JsonMessageGeneralSerializer(
+    private val validationPolicy: JsonValidationPolicy = JsonValidationPolicy.DEFAULT
+) : JsonSerializer<MessageGeneral>, JsonDeserializer<MessageGeneral> {
   @Throws(JsonParseException::class)
   override fun deserialize(
       json: JsonElement,
@@ -29,13 +31,17 @@ class JsonMessageGeneralSerializer :
       context: JsonDeserializationContext
   ): MessageGeneral {
     val jsonObject = context.deserialize<JsonMessageData>(json, JsonMessageData::class.java)
-    val dataElement = JsonParser.parseString(jsonObject.data.data.toString(StandardCharsets.UTF_8))
-    val data = context.deserialize<Data>(dataElement, Data::class.java)
+    // The data is decoded when first accessed
+    val decoder = {
+      val dataElement =
+          JsonParser.parseString(jsonObject.data.data.toString(StandardCharsets.UTF_8))
+      context.deserialize<Data>(dataElement, Data::class.java)
+    }
 
     return MessageGeneral(
         jsonObject.sender,
         jsonObject.data,
-        data,
+        decoder,
         jsonObject.signature,
         jsonObject.messageID,
         jsonObject.witnessSignatures)
@@ -51,7 +57,9 @@ class JsonMessageGeneralSerializer :
             src.dataEncoded, src.sender, src.signature, src.messageId, src.witnessSignatures)
     val result = context.serialize(jsonObject)
 
-    verifyJson(JsonUtils.GENERAL_MESSAGE_SCHEMA, result.toString())
+    // Messages are serialized when published or persisted, only validate them if the policy
+    // requires it
+    verifyOutboundJson(validationPolicy, JsonUtils.GENERAL_MESSAGE_SCHEMA, result)
 
     return result
   }
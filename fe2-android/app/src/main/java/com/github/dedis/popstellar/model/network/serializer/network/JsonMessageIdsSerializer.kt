@@ -0,0 +1,71 @@
+package com.github.dedis.popstellar.model.network.serializer.network
+
+import com.github.dedis.popstellar.model.network.method.GetMessagesById
+import com.github.dedis.popstellar.model.network.method.Heartbeat
+import com.github.dedis.popstellar.model.network.method.Message
+import com.github.dedis.popstellar.model.network.serializer.JsonUtils
+import com.github.dedis.popstellar.model.objects.Channel
+import com.github.dedis.popstellar.model.objects.security.MessageID
+import com.google.gson.JsonArray
+import com.google.gson.JsonDeserializationContext
+import com.google.gson.JsonDeserializer
+import com.google.gson.JsonElement
+import com.google.gson.JsonObject
+import com.google.gson.JsonParseException
+import com.google.gson.JsonSerializationContext
+import com.google.gson.JsonSerializer
+import java.lang.reflect.Type
+
+/**
+ * Json serializer and deserializer for the params of the heartbeat and get_messages_by_id methods,
+ * which map each channel to a list of message ids.
+ */
+class JsonMessageIdsSerializer : JsonSerializer<Message>, JsonDeserializer<Message> {
+  @Throws(JsonParseException::class)
+  override fun deserialize(
+      json: JsonElement,
+      typeOfT: Type,
+      context: JsonDeserializationContext
+  ): Message {
+    val params = json.asJsonObject
+    val messageIds = HashMap<Channel, List<MessageID>>()
+    try {
+      params
+          .entrySet()
+          .filter { it.key != JsonUtils.JSON_REQUEST_ID }
+          .forEach { (channel, ids) ->
+            messageIds[Channel.fromString(channel)] = ids.asJsonArray.map { MessageID(it.asString) }
+          }
+    } catch (e: IllegalArgumentException) {
+      // Thrown on invalid channels or ids
+      throw JsonParseException(e)
+    }
+
+    return if (typeOfT == GetMessagesById::class.java) {
+      GetMessagesById(messageIds, params[JsonUtils.JSON_REQUEST_ID].asInt)
+    } else {
+      Heartbeat(messageIds)
+    }
+  }
+
+  override fun serialize(
+      src: Message,
+      typeOfSrc: Type,
+      context: JsonSerializationContext
+  ): JsonElement {
+    val messageIds =
+        when (src) {
+          is GetMessagesById -> src.messageIds
+          is Heartbeat -> src.messageIds
+          else -> throw IllegalArgumentException("Unexpected message $src")
+        }
+
+    val params = JsonObject()
+    messageIds.forEach { (channel, ids) ->
+      val array = JsonArray()
+      ids.forEach { array.add(it.encoded) }
+      params.add(channel.asString, array)
+    }
+    return params
+  }
+}
@@ -2,7 +2,9 @@ package com.github.dedis.popstellar.model.network.serializer.network
 
 import com.github.dedis.popstellar.model.network.answer.Result
 import com.github.dedis.popstellar.model.network.answer.ResultMessages
+import com.github.dedis.popstellar.model.network.answer.ResultMessagesByChannel
 import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.objects.Channel
 import com.google.gson.JsonDeserializationContext
 import com.google.gson.JsonDeserializer
 import com.google.gson.JsonElement
@@ -24,10 +26,18 @@ class JsonResultSerializer : JsonSerializer<Result>, JsonDeserializer<Result> {
     val id = root["id"].asInt
     val resultElement = root[RESULT]
 
+    val listType = object : TypeToken<ArrayList<MessageGeneral>?>() {}.type
     return if (resultElement.isJsonPrimitive) {
       Result(id)
+    } else if (resultElement.isJsonObject) {
+      // Answer of a get_messages_by_id, the messages are grouped by channel
+      val messages =
+          resultElement.asJsonObject.entrySet().associate { (channel, channelMessages) ->
+            Channel.fromString(channel) to
+                context.deserialize<List<MessageGeneral>>(channelMessages, listType)
+          }
+      ResultMessagesByChannel(id, messages)
     } else {
-      val listType = object : TypeToken<ArrayList<MessageGeneral>?>() {}.type
       val messages = context.deserialize<List<MessageGeneral>>(resultElement.asJsonArray, listType)
       ResultMessages(id, messages)
     }
@@ -44,6 +54,12 @@ class JsonResultSerializer : JsonSerializer<Result>, JsonDeserializer<Result> {
     if (src is ResultMessages) {
       val messages = context.serialize(src.messages)
       output.add(RESULT, messages)
+    } else if (src is ResultMessagesByChannel) {
+      val messages = JsonObject()
+      src.messages.forEach { (channel, channelMessages) ->
+        messages.add(channel.asString, context.serialize(channelMessages))
+      }
+      output.add(RESULT, messages)
     } else {
       output.addProperty(RESULT, 0)
     }
@@ -1,6 +1,5 @@
 package com.github.dedis.popstellar.model.objects
 
-import com.github.dedis.popstellar.model.Copyable.Companion.copyMapOfList
 import com.github.dedis.popstellar.model.Copyable.Companion.copyMapOfSet
 import com.github.dedis.popstellar.model.Immutable
 import com.github.dedis.popstellar.model.network.method.message.data.election.ElectionQuestion
@@ -32,8 +31,7 @@ class Election(
     electionQuestions: List<ElectionQuestion>,
     electionKey: String?,
     electionVersion: ElectionVersion,
-    votesBySender: Map<PublicKey, List<Vote>>,
-    messageMap: Map<PublicKey, MessageID>,
+    ledger: VoteLedger,
     state: EventState?,
     results: Map<String, Set<QuestionResult>>
 ) : Event() {
@@ -59,22 +57,22 @@ class Election(
   val electionQuestions: List<ElectionQuestion>
     get() = ArrayList(field)
 
-  // Map that associates each sender pk to their votes
+  // Ledger of the votes, an immutable view that shares its storage with the other versions
+  val ledger: VoteLedger
+
+  // Read-only view that associates each sender pk to their votes
   val votesBySender: Map<PublicKey, List<Vote>>
-    get() = copyMapOfList(field)
+    get() = ledger.votesBySender
 
-  // Map that associates each messageId to its sender
+  // Read-only view that associates each sender pk to its last cast vote message id
   val messageMap: Map<PublicKey, MessageID>
-    get() = HashMap(field)
+    get() = ledger.messageMap
 
   // Results of an election (associated to a question id)
   val results: Map<String, Set<QuestionResult>>
     get() = copyMapOfSet(field)
 
   init {
-    // Make sure the vote are encrypted in a secret election and plain in an open election
-    validateVotesTypes(votesBySender, electionVersion)
-
     this.id = id
     this.name = name
     this.creation = creation
@@ -87,9 +85,8 @@ class Election(
 
     // Defensive copies
     this.electionQuestions = ArrayList(electionQuestions)
-    this.votesBySender = copyMapOfList(votesBySender)
     this.results = copyMapOfSet(results)
-    this.messageMap = HashMap(messageMap)
+    this.ledger = ledger
   }
 
   val creationInMillis: Long
@@ -99,6 +96,14 @@ class Election(
     return results[id]
   }
 
+  /**
+   * @param senderPk public key of the voter
+   * @return the id of the last cast vote message of the sender, if any
+   */
+  fun getLastVoteMessage(senderPk: PublicKey): MessageID? {
+    return ledger.getMessage(senderPk)
+  }
+
   /**
    * Computes the hash for the registered votes, when terminating an election (sorted by message
    * id's alphabetical order)
@@ -170,6 +175,7 @@ class Election(
   }
 
   override fun hashCode(): Int {
+    // The votes are left out as hashing them would be linear in the number of votes
     return Objects.hash(
         channel,
         id,
@@ -180,8 +186,6 @@ class Election(
         electionQuestions,
         electionKey,
         electionVersion,
-        votesBySender,
-        messageMap,
         state,
         results)
   }
@@ -206,8 +210,11 @@ class Election(
     private var electionQuestions: List<ElectionQuestion>
     private var electionKey: String? = null
     private var electionVersion: ElectionVersion? = null
-    private val votesBySender: MutableMap<PublicKey, List<Vote>>
-    private val messageMap: MutableMap<PublicKey, MessageID>
+    private var ledger: VoteLedger
+
+    // Votes added by this builder, the ones already in the ledger were validated when added
+    private val newVotes: MutableList<Vote> = ArrayList()
+
     private var state: EventState? = null
     private var results: Map<String, Set<QuestionResult>>
 
@@ -226,8 +233,7 @@ class Election(
       this.channel = getLaoChannel(laoId).subChannel(id)
       this.results = HashMap()
       this.electionQuestions = ArrayList()
-      this.votesBySender = HashMap()
-      this.messageMap = HashMap()
+      this.ledger = VoteLedger()
     }
 
     constructor(election: Election) {
@@ -240,10 +246,7 @@ class Election(
       electionKey = election.electionKey
       electionQuestions = election.electionQuestions
       electionVersion = election.electionVersion
-
-      // We might modify the maps, for safety reason, we need to create a copy
-      votesBySender = HashMap(election.votesBySender)
-      messageMap = HashMap(election.messageMap)
+      ledger = election.ledger
       state = election.state
       results = election.results
     }
@@ -279,12 +282,19 @@ class Election(
     }
 
     fun updateVotes(senderPk: PublicKey, votes: List<Vote>): ElectionBuilder {
-      votesBySender[senderPk] = ArrayList(votes)
+      ledger = ledger.recordVotes(senderPk, votes)
+      newVotes.addAll(votes)
+      return this
+    }
+
+    fun updateVotes(senderPk: PublicKey, messageID: MessageID, votes: List<Vote>): ElectionBuilder {
+      ledger = ledger.record(senderPk, messageID, votes)
+      newVotes.addAll(votes)
       return this
     }
 
     fun updateMessageMap(senderPk: PublicKey, messageID: MessageID): ElectionBuilder {
-      messageMap[senderPk] = messageID
+      ledger = ledger.recordMessage(senderPk, messageID)
       return this
     }
 
@@ -300,6 +310,8 @@ class Election(
 
     fun build(): Election {
       checkNotNull(electionVersion) { "Election version is null " }
+      // Make sure the votes are encrypted in a secret election and plain in an open election
+      newVotes.forEach { vote: Vote -> validateVoteType(vote, electionVersion) }
       return Election(
           id,
           name,
@@ -310,24 +322,13 @@ class Election(
           electionQuestions,
           electionKey,
           electionVersion!!,
-          votesBySender,
-          messageMap,
+          ledger,
           state,
           results)
     }
   }
 
   companion object {
-    private fun validateVotesTypes(
-        votesBySender: Map<PublicKey, List<Vote>>,
-        version: ElectionVersion?
-    ) {
-      votesBySender.values
-          .stream()
-          .flatMap { obj: List<Vote> -> obj.stream() }
-          .forEach { vote: Vote -> validateVoteType(vote, version) }
-    }
-
     private fun validateVoteType(vote: Vote, version: ElectionVersion?) {
       val isElectionEncrypted = version === ElectionVersion.SECRET_BALLOT
       if (vote.isEncrypted != isElectionEncrypted) {
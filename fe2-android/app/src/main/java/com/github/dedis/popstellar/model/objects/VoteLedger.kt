@@ -0,0 +1,161 @@
+package com.github.dedis.popstellar.model.objects
+
+import com.github.dedis.popstellar.model.Immutable
+import com.github.dedis.popstellar.model.network.method.message.data.election.Vote
+import com.github.dedis.popstellar.model.objects.security.MessageID
+import com.github.dedis.popstellar.model.objects.security.PublicKey
+import java.util.Collections
+import java.util.Objects
+
+/**
+ * Ledger of the votes cast in an election, keyed by their sender.
+ *
+ * A ledger is immutable: recording a ballot returns a new ledger. To avoid copying every ballot
+ * previously cast, the successive ledgers of an election share an append-only log of the ballots,
+ * each of them only seeing the part of the log that existed when it was created. Recording a ballot
+ * thus costs O(1), unless it is recorded on a ledger that is not the latest one, which then gets
+ * its own copy of the log.
+ *
+ * A sender casting a new ballot replaces its previous one.
+ */
+@Immutable
+class VoteLedger private constructor(private val log: BallotLog, private val length: Int) {
+
+  constructor() : this(BallotLog(ArrayList()), 0)
+
+  /** Read-only view of the votes of each sender */
+  val votesBySender: Map<PublicKey, List<Vote>> by lazy {
+    val votes = HashMap<PublicKey, List<Vote>>()
+    log.prefix(length).forEach { ballot -> ballot.votes?.let { votes[ballot.sender] = it } }
+    Collections.unmodifiableMap(votes)
+  }
+
+  /** Read-only view of the last cast vote message of each sender */
+  val messageMap: Map<PublicKey, MessageID> by lazy {
+    val messages = HashMap<PublicKey, MessageID>()
+    log.prefix(length).forEach { ballot -> ballot.messageId?.let { messages[ballot.sender] = it } }
+    Collections.unmodifiableMap(messages)
+  }
+
+  /**
+   * @param senderPk public key of the voter
+   * @return the id of the last cast vote message of the sender, without building the whole map
+   */
+  fun getMessage(senderPk: PublicKey): MessageID? {
+    return log.latest(senderPk, length, Ballot::messageId)
+  }
+
+  /**
+   * Record the ballot of a sender, replacing its previous one if any.
+   *
+   * @param senderPk public key of the voter
+   * @param messageId id of the cast vote message
+   * @param ballot votes contained in the message
+   * @return the ledger holding the new ballot
+   */
+  fun record(senderPk: PublicKey, messageId: MessageID, ballot: List<Vote>): VoteLedger {
+    return append(Ballot(senderPk, messageId, Collections.unmodifiableList(ArrayList(ballot))))
+  }
+
+  /**
+   * Record the votes of a sender, without changing the id of its last message.
+   *
+   * @param senderPk public key of the voter
+   * @param ballot votes of the sender
+   * @return the ledger holding the new votes
+   */
+  fun recordVotes(senderPk: PublicKey, ballot: List<Vote>): VoteLedger {
+    return append(Ballot(senderPk, null, Collections.unmodifiableList(ArrayList(ballot))))
+  }
+
+  /**
+   * Record the id of the last cast vote message of a sender, without changing its votes.
+   *
+   * @param senderPk public key of the voter
+   * @param messageId id of the cast vote message
+   * @return the ledger holding the new message id
+   */
+  fun recordMessage(senderPk: PublicKey, messageId: MessageID): VoteLedger {
+    return append(Ballot(senderPk, messageId, null))
+  }
+
+  private fun append(ballot: Ballot): VoteLedger {
+    return VoteLedger(log.append(ballot, length), length + 1)
+  }
+
+  override fun equals(other: Any?): Boolean {
+    if (this === other) {
+      return true
+    }
+    if (other == null || javaClass != other.javaClass) {
+      return false
+    }
+    val that = other as VoteLedger
+    return votesBySender == that.votesBySender && messageMap == that.messageMap
+  }
+
+  override fun hashCode(): Int {
+    return Objects.hash(votesBySender, messageMap)
+  }
+
+  override fun toString(): String {
+    return "VoteLedger{votesBySender=$votesBySender, messageMap=$messageMap}"
+  }
+
+  /** Entry of the log, a null part is left unchanged from the previous ballots of the sender */
+  private class Ballot(val sender: PublicKey, val messageId: MessageID?, val votes: List<Vote>?)
+
+  /** Append-only log of ballots, shared by the ledgers created from one another */
+  private class BallotLog(private val ballots: ArrayList<Ballot>) {
+    // Positions in the log of the ballots of each sender, in increasing order
+    private val positions = HashMap<PublicKey, MutableList<Int>>()
+
+    init {
+      ballots.forEachIndexed { position, ballot -> index(position, ballot) }
+    }
+
+    /**
+     * Append a ballot after the first [length] ones.
+     *
+     * @return this log if the ballot could be appended to it, a copy of its first [length] ballots
+     *   followed by the new one otherwise
+     */
+    @Synchronized
+    fun append(ballot: Ballot, length: Int): BallotLog {
+      if (length != ballots.size) {
+        val copy = ArrayList(ballots.subList(0, length))
+        copy.add(ballot)
+        return BallotLog(copy)
+      }
+
+      ballots.add(ballot)
+      index(length, ballot)
+      return this
+    }
+
+    /** @return the latest non-null part of the ballots of a sender among the first [length] ones */
+    @Synchronized
+    fun <T> latest(sender: PublicKey, length: Int, part: (Ballot) -> T?): T? {
+      val senderPositions = positions[sender] ?: return null
+      val search = Collections.binarySearch(senderPositions, length)
+      // Index of the last position strictly lower than the length
+      var i = if (search >= 0) search - 1 else -search - 2
+      while (i >= 0) {
+        part(ballots[senderPositions[i]])?.let {
+          return it
+        }
+        i--
+      }
+      return null
+    }
+
+    @Synchronized
+    fun prefix(length: Int): List<Ballot> {
+      return ArrayList(ballots.subList(0, length))
+    }
+
+    private fun index(position: Int, ballot: Ballot) {
+      positions.computeIfAbsent(ballot.sender) { ArrayList() }.add(position)
+    }
+  }
+}
@@ -1,21 +1,49 @@
 package com.github.dedis.popstellar.model.objects.security
 
 import com.github.dedis.popstellar.model.Immutable
+import java.nio.ByteBuffer
 import java.nio.charset.StandardCharsets
 import java.util.Base64
 
-/** Represents a data that can be encoded into a Base64 form */
+/**
+ * Represents a data that can be encoded into a Base64 form
+ *
+ * The instances are used as keys of many maps, their hash code is thus computed once and comparing
+ * or hashing them does not copy their bytes.
+ */
 @Immutable
 open class Base64URLData(data: ByteArray) {
-  // Deep copy of byte array
-  val data: ByteArray = data.copyOf(data.size)
-    get() = field.copyOf(field.size)
+  // Deep copy of byte array, it is never modified afterwards
+  private val bytes: ByteArray = data.copyOf(data.size)
+  private val hash: Int = bytes.contentHashCode()
+  // Encoded form, computed on first use. Computing it twice concurrently is harmless
+  @Volatile private var encodedCache: String? = null
 
   constructor(data: String) : this(decode(data))
 
+  /** @return a copy of the bytes of the data */
+  val data: ByteArray
+    get() = bytes.copyOf(bytes.size)
+
+  /** Number of bytes of the data */
+  val size: Int
+    get() = bytes.size
+
   val encoded: String
     /** @return the Base64 - encoded string representation of the data */
-    get() = encode(data)
+    get() = encodedCache ?: encode(bytes).also { encodedCache = it }
+
+  /**
+   * Bytes of the data, without copying them. They must never be modified, this is meant for the
+   * hot paths that need an array (hashing, signing, verifying), [data] should be used otherwise.
+   */
+  internal val bytesView: ByteArray
+    get() = bytes
+
+  /** @return a read-only view of the bytes of the data, which does not copy them */
+  fun asReadOnlyBuffer(): ByteBuffer {
+    return ByteBuffer.wrap(bytes).asReadOnlyBuffer()
+  }
 
   override fun toString(): String {
     return "${javaClass.simpleName}($encoded)"
@@ -29,11 +57,11 @@ open class Base64URLData(data: ByteArray) {
       return false
     }
     val that = other as Base64URLData
-    return data.contentEquals(that.data)
+    return hash == that.hash && bytes.contentEquals(that.bytes)
   }
 
   override fun hashCode(): Int {
-    return data.contentHashCode()
+    return hash
   }
 
   companion object {
@@ -1,31 +1,43 @@
 package com.github.dedis.popstellar.model.objects.security
 
 import com.github.dedis.popstellar.model.Immutable
+import com.github.dedis.popstellar.utility.security.HashSHA256
 import com.google.crypto.tink.PublicKeyVerify
 import com.google.crypto.tink.subtle.Ed25519Verify
+import java.lang.ref.WeakReference
 import java.security.GeneralSecurityException
-import java.security.MessageDigest
-import java.security.NoSuchAlgorithmException
 import java.util.Arrays
 import java.util.Base64
+import java.util.WeakHashMap
 import timber.log.Timber
 
-/** A public key that can be used to verify a signature */
+/**
+ * A public key that can be used to verify a signature
+ *
+ * Most keys are only compared or used as map keys (e.g. the attendees of a roll call), the verifier
+ * is thus only built when a signature is first verified. The keys received from the network or read
+ * from the database are interned with [of], so that each distinct key exists once in memory.
+ */
 @Immutable
 class PublicKey : Base64URLData {
-  private val verifier: PublicKeyVerify
+  private val verifier: PublicKeyVerify by lazy { Ed25519Verify(bytesView) }
+  // Hash of the key, computed on first use. Computing it twice concurrently is harmless
+  @Volatile private var keyHash: String? = null
 
-  constructor(data: ByteArray) : super(data) {
-    verifier = Ed25519Verify(data)
-  }
+  constructor(data: ByteArray) : super(data)
+
+  constructor(data: String) : super(data)
 
-  constructor(data: String) : super(data) {
-    verifier = Ed25519Verify(this.data)
+  init {
+    // Only the length is checked eagerly, as building the verifier would do
+    require(size == Ed25519Verify.PUBLIC_KEY_LEN) {
+      "Given public key's length is not ${Ed25519Verify.PUBLIC_KEY_LEN}."
+    }
   }
 
   fun verify(signature: Signature, data: Base64URLData): Boolean {
     return try {
-      verifier.verify(signature.data, data.data)
+      verifier.verify(signature.bytesView, data.bytesView)
       true
     } catch (e: GeneralSecurityException) {
       Timber.tag(TAG).e("Failed to verify witness signature %s", e.message)
@@ -34,17 +46,21 @@ class PublicKey : Base64URLData {
   }
 
   /**
-   * Function that compute the hash of a public key
+   * Function that compute the hash of a public key. It is computed once, as the digital cash
+   * transactions are validated against the hashes of the keys of all the attendees
    *
    * @return String which correspond to the SHA256 Hash
    */
   fun computeHash(): String {
+    return keyHash ?: hashKey().also { keyHash = it }
+  }
+
+  private fun hashKey(): String {
     try {
-      val digest = MessageDigest.getInstance("SHA-256")
-      val hash = digest.digest(data)
+      val hash = HashSHA256.digest(bytesView)
 
       return Base64.getUrlEncoder().encodeToString(Arrays.copyOf(hash, 20))
-    } catch (e: NoSuchAlgorithmException) {
+    } catch (e: UnsupportedOperationException) {
       Timber.tag(TAG).e(e, "Something is wrong by hashing the String element")
       throw IllegalArgumentException("Error in computing the hash in public key")
     }
@@ -52,5 +68,38 @@ class PublicKey : Base64URLData {
 
   companion object {
     private val TAG = PublicKey::class.java.simpleName
+
+    // Interned keys, an entry is removed once its key is not referenced anymore
+    private val POOL = WeakHashMap<PublicKey, WeakReference<PublicKey>>()
+
+    /**
+     * @param data Base64 - encoded key
+     * @return the key with the given value, the same instance is returned for equal keys as long as
+     *   it is referenced
+     */
+    @JvmStatic
+    fun of(data: String): PublicKey {
+      return intern(PublicKey(data))
+    }
+
+    /**
+     * @param data bytes of the key
+     * @return the key with the given value, the same instance is returned for equal keys as long as
+     *   it is referenced
+     */
+    @JvmStatic
+    fun of(data: ByteArray): PublicKey {
+      return intern(PublicKey(data))
+    }
+
+    private fun intern(key: PublicKey): PublicKey {
+      synchronized(POOL) {
+        POOL[key]?.get()?.let {
+          return it
+        }
+        POOL[key] = WeakReference(key)
+        return key
+      }
+    }
   }
 }
@@ -0,0 +1,60 @@
+package com.github.dedis.popstellar.model.objects.security
+
+/**
+ * Batch of signatures to verify, e.g. the signatures of the messages of a catchup or the signatures
+ * of the witnesses of a LAO.
+ *
+ * Each entry is a (key, signature, data) triple. The signatures are verified one by one, as the
+ * Ed25519 implementation does not expose a batch verification, but the callers are written against
+ * a single batch so that one can be plugged in here.
+ */
+class SignatureBatch {
+  private val entries = ArrayList<Entry>()
+
+  /** Number of signatures in the batch */
+  val size: Int
+    get() = entries.size
+
+  /**
+   * @param key key of the signer
+   * @param signature signature to verify
+   * @param data data that was signed
+   * @return the index of the entry in the batch
+   */
+  fun add(key: PublicKey, signature: Signature, data: Base64URLData): Int {
+    entries.add(Entry(key, signature, data))
+    return entries.size - 1
+  }
+
+  /**
+   * Verify every signature of the batch, so that a single invalid signature does not reject the
+   * others.
+   *
+   * @return the validity of each signature, in the order they were added
+   */
+  fun verify(): BooleanArray {
+    return BooleanArray(entries.size) { index -> entries[index].verify() }
+  }
+
+  /**
+   * @return the index of the first invalid signature, or -1 if they are all valid. The verification
+   *   stops at the first invalid one
+   */
+  fun firstInvalid(): Int {
+    return entries.indexOfFirst { !it.verify() }
+  }
+
+  /**
+   * @return true if all the signatures of the batch are valid, the verification stops at the first
+   *   invalid one
+   */
+  fun verifyAll(): Boolean {
+    return firstInvalid() == -1
+  }
+
+  private class Entry(val key: PublicKey, val signature: Signature, val data: Base64URLData) {
+    fun verify(): Boolean {
+      return key.verify(signature, data)
+    }
+  }
+}
@@ -23,7 +23,7 @@ class PlainPrivateKey(key: ByteArray) : Base64URLData(key), PrivateKey {
 
   @Throws(GeneralSecurityException::class)
   override fun sign(data: Base64URLData): Signature {
-    return Signature(signer.sign(data.data))
+    return Signature(signer.sign(data.bytesView))
   }
 
   override fun toString(): String {
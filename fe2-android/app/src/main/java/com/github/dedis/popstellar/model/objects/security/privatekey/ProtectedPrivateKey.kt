@@ -23,6 +23,6 @@ class ProtectedPrivateKey(handler: KeysetHandle) : PrivateKey {
 
   @Throws(GeneralSecurityException::class)
   override fun sign(data: Base64URLData): Signature {
-    return Signature(signer.sign(data.data))
+    return Signature(signer.sign(data.bytesView))
   }
 }
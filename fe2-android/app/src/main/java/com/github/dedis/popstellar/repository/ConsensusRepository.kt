@@ -16,9 +16,9 @@ import javax.inject.Singleton
 
 @Singleton
 class ConsensusRepository @Inject constructor() {
-  private val consensusByLao: MutableMap<String, LaoConsensus> = HashMap()
-  private val channelToNodesSubject: MutableMap<Channel, BehaviorSubject<List<ConsensusNode>>> =
-      HashMap()
+  private val consensusByLao = ConcurrentHashMap<String, LaoConsensus>()
+  private val channelToNodesSubject =
+      ConcurrentHashMap<Channel, BehaviorSubject<List<ConsensusNode>>>()
 
   /**
    * Return an Observable to the list of nodes in a given channel.
@@ -75,7 +75,6 @@ class ConsensusRepository @Inject constructor() {
   }
 
   /** Get in a thread-safe fashion the consensus object for the lao, computes it if absent. */
-  @Synchronized
   private fun getLaoConsensus(laoId: String): LaoConsensus {
     // Create the lao consensus object if it is not present yet
     return consensusByLao.computeIfAbsent(laoId) { LaoConsensus() }
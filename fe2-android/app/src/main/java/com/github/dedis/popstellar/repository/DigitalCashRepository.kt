@@ -7,6 +7,7 @@ import com.github.dedis.popstellar.model.objects.OutputObject
 import com.github.dedis.popstellar.model.objects.digitalcash.TransactionObject
 import com.github.dedis.popstellar.model.objects.security.PublicKey
 import com.github.dedis.popstellar.repository.database.AppDatabase
+import com.github.dedis.popstellar.repository.database.DatabaseBatch
 import com.github.dedis.popstellar.repository.database.digitalcash.HashDao
 import com.github.dedis.popstellar.repository.database.digitalcash.HashEntity
 import com.github.dedis.popstellar.repository.database.digitalcash.TransactionDao
@@ -32,7 +33,7 @@ import timber.log.Timber
 class DigitalCashRepository
 @Inject
 constructor(appDatabase: AppDatabase, application: Application) {
-  private val transactionsByLao: MutableMap<String, LaoTransactions> = HashMap()
+  private val transactionsByLao = ConcurrentHashMap<String, LaoTransactions>()
   private val transactionDao: TransactionDao = appDatabase.transactionDao()
   private val hashDao: HashDao = appDatabase.hashDao()
   private val disposables = CompositeDisposable()
@@ -104,7 +105,6 @@ constructor(appDatabase: AppDatabase, application: Application) {
     getLaoTransactions(laoId).initializeDigitalCash(attendees)
   }
 
-  @Synchronized
   private fun getLaoTransactions(laoId: String): LaoTransactions {
     // Create the lao transactions object if it is not present yet
     return transactionsByLao.computeIfAbsent(laoId) { LaoTransactions(laoId, this) }
@@ -238,23 +238,18 @@ constructor(appDatabase: AppDatabase, application: Application) {
       // Store the transaction in the db if the flag is true
       if (toBeStored) {
         val transactionEntity = TransactionEntity(laoId, transaction)
-        repository.disposables.add(
+        DatabaseBatch.submit(
+            repository.disposables,
             repository.transactionDao
                 .insert(transactionEntity)
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(
-                    {
-                      Timber.tag(TAG)
-                          .d("Successfully persisted transaction %s", transaction.transactionId)
-                    },
-                    { err: Throwable ->
-                      Timber.tag(TAG)
-                          .e(
-                              err,
-                              "Error in persisting the transaction %s",
-                              transaction.transactionId)
-                    }))
+                .doOnComplete {
+                  Timber.tag(TAG)
+                      .d("Successfully persisted transaction %s", transaction.transactionId)
+                }
+                .doOnError { err: Throwable ->
+                  Timber.tag(TAG)
+                      .e(err, "Error in persisting the transaction %s", transaction.transactionId)
+                })
       }
     }
 
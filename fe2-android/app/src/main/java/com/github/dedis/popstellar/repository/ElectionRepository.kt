@@ -4,13 +4,20 @@ import android.app.Activity
 import android.app.Application
 import androidx.lifecycle.Lifecycle
 import com.github.dedis.popstellar.model.objects.Channel
+import com.github.dedis.popstellar.model.network.method.message.data.election.Vote
 import com.github.dedis.popstellar.model.objects.Election
+import com.github.dedis.popstellar.model.objects.security.MessageID
+import com.github.dedis.popstellar.model.objects.security.PublicKey
 import com.github.dedis.popstellar.repository.database.AppDatabase
+import com.github.dedis.popstellar.repository.database.DatabaseBatch
 import com.github.dedis.popstellar.repository.database.event.election.ElectionDao
 import com.github.dedis.popstellar.repository.database.event.election.ElectionEntity
+import com.github.dedis.popstellar.repository.database.event.election.VoteDao
+import com.github.dedis.popstellar.repository.database.event.election.VoteEntity
 import com.github.dedis.popstellar.utility.GeneralUtils.buildLifecycleCallback
 import com.github.dedis.popstellar.utility.error.UnknownElectionException
 import io.reactivex.Observable
+import io.reactivex.Single
 import io.reactivex.android.schedulers.AndroidSchedulers
 import io.reactivex.disposables.CompositeDisposable
 import io.reactivex.schedulers.Schedulers
@@ -31,8 +38,9 @@ import timber.log.Timber
  */
 @Singleton
 class ElectionRepository @Inject constructor(appDatabase: AppDatabase, application: Application) {
-  private val electionsByLao: MutableMap<String, LaoElections> = HashMap()
+  private val electionsByLao = ConcurrentHashMap<String, LaoElections>()
   private val electionDao: ElectionDao = appDatabase.electionDao()
+  private val voteDao: VoteDao = appDatabase.voteDao()
   private val disposables = CompositeDisposable()
 
   init {
@@ -66,6 +74,35 @@ class ElectionRepository @Inject constructor(appDatabase: AppDatabase, applicati
     getLaoElections(election.channel.extractLaoId()).updateElection(election)
   }
 
+  /**
+   * Register the ballot cast by a sender in an election.
+   *
+   * Contrary to [updateElection], the election is not entirely rewritten to the disk: the ballot
+   * is appended to the vote ledger of the election and persisted as a single row.
+   *
+   * @param election the election in which the ballot is cast
+   * @param senderPk public key of the voter
+   * @param messageId id of the cast vote message
+   * @param votes votes of the sender
+   * @throws IllegalArgumentException if a vote does not match the election version
+   */
+  fun addVotes(election: Election, senderPk: PublicKey, messageId: MessageID, votes: List<Vote>) {
+    val updatedElection = election.builder().updateVotes(senderPk, messageId, votes).build()
+
+    // Persist the ballot
+    val laoId = election.channel.extractLaoId()
+    DatabaseBatch.submit(
+        disposables,
+        voteDao
+            .insert(VoteEntity(election.id, laoId, senderPk, messageId, votes))
+            .doOnComplete { Timber.tag(TAG).d("Successfully persisted vote %s", messageId) }
+            .doOnError { err: Throwable ->
+              Timber.tag(TAG).e(err, "Error in persisting vote %s", messageId)
+            })
+
+    getLaoElections(laoId).updateElection(updatedElection)
+  }
+
   /**
    * Retrieve an election state given its Lao and its ID
    *
@@ -116,7 +153,6 @@ class ElectionRepository @Inject constructor(appDatabase: AppDatabase, applicati
     return getLaoElections(laoId).getElectionsSubject()
   }
 
-  @Synchronized
   private fun getLaoElections(laoId: String): LaoElections {
     // Create the lao elections object if it is not present yet
     return electionsByLao.computeIfAbsent(laoId) { LaoElections(this, laoId) }
@@ -132,21 +168,26 @@ class ElectionRepository @Inject constructor(appDatabase: AppDatabase, applicati
     /** Thread-safe map that maps an election id to an observable of it */
     private val electionSubjects = ConcurrentHashMap<String, Subject<Election>>()
 
-    /** Observable of all the election set */
-    private val electionsSubject = BehaviorSubject.createDefault(emptySet<Election>())
+    /**
+     * Observable of all the election set. The elections of a lao are updated from the handlers of
+     * their channels, which run concurrently.
+     */
+    private val electionsSubject: Subject<Set<Election>> =
+        BehaviorSubject.createDefault(emptySet<Election>()).toSerialized()
 
     init {
       loadStorage()
     }
 
+    @Synchronized
     fun updateElection(election: Election) {
       val id = election.id
       electionById[id] = election
-      electionSubjects.putIfAbsent(id, BehaviorSubject.create())
-      electionSubjects.getValue(id).toSerialized().onNext(election)
-      electionsSubject
-          .toSerialized()
-          .onNext(Collections.unmodifiableSet(HashSet(electionById.values)))
+      electionSubjects
+          .computeIfAbsent(id) { BehaviorSubject.create<Election>().toSerialized() }
+          .onNext(election)
+      // The set is taken and emitted under the lock, so that the last one emitted is the newest
+      electionsSubject.onNext(Collections.unmodifiableSet(HashSet(electionById.values)))
     }
 
     @Throws(UnknownElectionException::class)
@@ -169,15 +210,26 @@ class ElectionRepository @Inject constructor(appDatabase: AppDatabase, applicati
      */
     private fun loadStorage() {
       repository.disposables.add(
-          repository.electionDao
-              .getElectionsByLaoId(laoId)
+          Single.zip(
+                  repository.electionDao.getElectionsByLaoId(laoId),
+                  repository.voteDao.getVotesByLaoId(laoId)) {
+                      elections: List<Election>?,
+                      votes: List<VoteEntity>? ->
+                    Pair(elections.orEmpty(), votes.orEmpty())
+                  }
               .subscribeOn(Schedulers.io())
               .observeOn(AndroidSchedulers.mainThread())
               .subscribe(
-                  { elections: List<Election>? ->
-                    elections?.forEach(
+                  { (elections, votes) ->
+                    val votesByElection = votes.groupBy(VoteEntity::electionId)
+                    elections.forEach(
                         Consumer { election: Election ->
-                          updateElection(election)
+                          // Fill the ledger of the election with its ballots
+                          val builder = election.builder()
+                          votesByElection[election.id]?.forEach { vote: VoteEntity ->
+                            builder.updateVotes(vote.sender, vote.messageId, vote.votes)
+                          }
+                          updateElection(builder.build())
                           Timber.tag(TAG).d("Retrieved from db election %s", election.id)
                         })
                   },
@@ -30,7 +30,7 @@ import timber.log.Timber
  */
 @Singleton
 class MeetingRepository @Inject constructor(appDatabase: AppDatabase, application: Application) {
-  private val meetingsByLao: MutableMap<String, LaoMeetings> = HashMap()
+  private val meetingsByLao = ConcurrentHashMap<String, LaoMeetings>()
   private val meetingDao: MeetingDao = appDatabase.meetingDao()
   private val disposables = CompositeDisposable()
 
@@ -102,7 +102,6 @@ class MeetingRepository @Inject constructor(appDatabase: AppDatabase, applicatio
     return getLaoMeetings(laoId).getMeetingsSubject()
   }
 
-  @Synchronized
   private fun getLaoMeetings(laoId: String): LaoMeetings {
     return meetingsByLao.computeIfAbsent(laoId) { LaoMeetings(this, laoId) }
   }
@@ -127,6 +126,7 @@ class MeetingRepository @Inject constructor(appDatabase: AppDatabase, applicatio
      *
      * @param meeting the meeting to update/add
      */
+    @Synchronized
     fun update(meeting: Meeting) {
       // Updating repo data
       val id = meeting.id
@@ -2,14 +2,25 @@ package com.github.dedis.popstellar.repository
 
 import android.app.Activity
 import android.app.Application
-import android.util.LruCache
 import androidx.lifecycle.Lifecycle
 import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.objects.Channel
 import com.github.dedis.popstellar.model.objects.security.MessageID
 import com.github.dedis.popstellar.repository.database.AppDatabase
+import com.github.dedis.popstellar.repository.database.DatabaseBatch
+import com.github.dedis.popstellar.repository.database.message.MessageCache
 import com.github.dedis.popstellar.repository.database.message.MessageDao
 import com.github.dedis.popstellar.repository.database.message.MessageEntity
+import com.github.dedis.popstellar.repository.database.message.MessageIdFilter
+import com.github.dedis.popstellar.repository.database.message.OutboxDao
+import com.github.dedis.popstellar.repository.database.message.OutboxEntity
+import com.github.dedis.popstellar.repository.database.subscriptions.CatchupMarkDao
+import com.github.dedis.popstellar.repository.database.subscriptions.CatchupMarkEntity
+import com.github.dedis.popstellar.repository.remote.CatchupMark
+import com.github.dedis.popstellar.repository.remote.OutboxPolicy
 import com.github.dedis.popstellar.utility.GeneralUtils.buildLifecycleCallback
+import io.reactivex.Completable
+import io.reactivex.Single
 import io.reactivex.android.schedulers.AndroidSchedulers
 import io.reactivex.disposables.CompositeDisposable
 import io.reactivex.schedulers.Schedulers
@@ -21,7 +32,9 @@ import javax.inject.Singleton
 import timber.log.Timber
 
 @Singleton
-class MessageRepository @Inject constructor(appDatabase: AppDatabase, application: Application) {
+class MessageRepository
+@Inject
+constructor(private val appDatabase: AppDatabase, application: Application) {
   /**
    * Ephemeral messages are all those messages which are not needed to be persisted on the disk, so
    * they're only stored in memory. The messages persisted can be found in the Objects class, see
@@ -35,10 +48,27 @@ class MessageRepository @Inject constructor(appDatabase: AppDatabase, applicatio
   private val ephemeralMessages = ConcurrentHashMap<MessageID, MessageGeneral>()
 
   /** Cache for efficient lookups and for avoiding I/O operations */
-  private val messageCache = LruCache<MessageID, Any>(CACHED_MESSAGES)
+  private val messageCache = MessageCache(CACHE_MEMORY_BUDGET)
   private val messageDao: MessageDao = appDatabase.messageDao()
+
+  /**
+   * Filter of the persisted message ids, telling apart the messages that were never persisted
+   * without any I/O operation. It can only be relied on once it was filled with the ids on disk.
+   */
+  private val persistedIds = MessageIdFilter()
+  @Volatile private var persistedIdsLoaded = false
   private val disposables = CompositeDisposable()
 
+  /** Catchup marks of the channels, see [CatchupMark] */
+  private val catchupMarks = ConcurrentHashMap<Channel, CatchupMark>()
+  private val catchupMarkDao: CatchupMarkDao = appDatabase.catchupMarkDao()
+
+  /** Messages waiting to be published, see [OutboxPolicy] */
+  private val outboxDao: OutboxDao = appDatabase.outboxDao()
+
+  /** Queued message being sent, it may reach a server and cannot be superseded anymore */
+  private var outboxSending: MessageID? = null
+
   init {
     val consumerMap: MutableMap<Lifecycle.Event, Consumer<Activity>> =
         EnumMap(Lifecycle.Event::class.java)
@@ -46,30 +76,62 @@ class MessageRepository @Inject constructor(appDatabase: AppDatabase, applicatio
     application.registerActivityLifecycleCallbacks(buildLifecycleCallback(consumerMap))
     // Full the cache at starting time
     loadCache()
+    loadPersistedIds()
   }
 
-  /** This function is called at creation to fill the cache asynchronously */
+  /**
+   * This function is called at creation to fill the cache asynchronously with the messages that
+   * were persisted last, as those are the most likely to be looked up again.
+   */
   private fun loadCache() {
     disposables.add(
         messageDao
-            .takeFirstNMessages(CACHED_MESSAGES)
+            .getLatestMessages(WARM_UP_MESSAGES)
             .subscribeOn(Schedulers.io())
             .observeOn(AndroidSchedulers.mainThread())
             .subscribe(
                 { messageEntities: List<MessageEntity>? ->
-                  messageEntities?.forEach(
-                      Consumer { msg: MessageEntity ->
-                        messageCache.put(
-                            msg.messageId,
-                            // Cache doesn't accept null as value, so an empty message is used
-                            msg.content ?: MessageGeneral.EMPTY)
-                      })
+                  // Insert the oldest first, so that the most recent ones are evicted last
+                  messageEntities?.asReversed()?.forEach { msg: MessageEntity ->
+                    messageCache.put(
+                        msg.messageId,
+                        // Cache doesn't accept null as value, so an empty message is used
+                        msg.content ?: MessageGeneral.EMPTY)
+                  }
                 },
                 { err: Throwable ->
                   Timber.tag(TAG).e(err, "Error loading message repository cache")
                 }))
   }
 
+  /** This function is called at creation to fill the filter of persisted ids asynchronously */
+  private fun loadPersistedIds() {
+    disposables.add(
+        Single.fromCallable { messageDao.getAllMessageIds() }
+            .subscribeOn(Schedulers.io())
+            .subscribe(
+                { messageIds: List<MessageID> ->
+                  messageIds.forEach { persistedIds.put(it) }
+                  persistedIdsLoaded = true
+                  Timber.tag(TAG).d("Loaded %d persisted message ids", messageIds.size)
+                },
+                { err: Throwable ->
+                  Timber.tag(TAG).e(err, "Error loading the persisted message ids")
+                }))
+  }
+
+  /** Counters of the message cache */
+  val cacheStats: MessageCache.Stats
+    get() = messageCache.stats
+
+  /**
+   * @param messageID identifier of the message
+   * @return false if the message was definitely never persisted, true if it might have been
+   */
+  private fun mightBePersisted(messageID: MessageID): Boolean {
+    return !persistedIdsLoaded || persistedIds.mightContain(messageID)
+  }
+
   /**
    * This function gets a message from the repository given its unique identifier.
    *
@@ -83,20 +145,21 @@ class MessageRepository @Inject constructor(appDatabase: AppDatabase, applicatio
       return ephemeralMessage
     }
 
-    // Retrieve from cache if present
-    synchronized(messageCache) {
-      val cachedMessage = messageCache[messageID]
-      if (cachedMessage != null) {
-        return cachedMessage as MessageGeneral
-      }
+    // Retrieve from cache if present, the content of some messages is not stored
+    val cachedMessage = messageCache[messageID]
+    if (cachedMessage != null) {
+      return cachedMessage as? MessageGeneral
     }
 
-    // Search in the db
+    // Search in the db, unless the message was never persisted
+    if (!mightBePersisted(messageID)) {
+      return null
+    }
     val messageEntity = messageDao.getMessageById(messageID)
     if (messageEntity != null) {
       val messageGeneral = messageEntity.content
       // Put it into cache
-      synchronized(messageCache) { messageCache.put(messageID, messageGeneral) }
+      messageCache.put(messageID, messageGeneral ?: MessageGeneral.EMPTY)
       return messageGeneral
     }
 
@@ -124,22 +187,20 @@ class MessageRepository @Inject constructor(appDatabase: AppDatabase, applicatio
     if (!toPersist) {
       ephemeralMessages[messageID] = message
     } else {
+      persistedIds.put(messageID)
+
       // Add the message to the cache (cache cannot accept a null value)
-      synchronized(messageCache) {
-        messageCache.put(messageID, if (message.isEmpty) MessageGeneral.EMPTY else message)
-      }
+      messageCache.put(messageID, if (message.isEmpty) MessageGeneral.EMPTY else message)
 
       // Add asynchronously the messages to the database
-      disposables.add(
+      DatabaseBatch.submit(
+          disposables,
           messageDao
               .insert(MessageEntity(messageID, if (message.isEmpty) null else message))
-              .subscribeOn(Schedulers.io())
-              .observeOn(AndroidSchedulers.mainThread())
-              .subscribe(
-                  { Timber.tag(TAG).d("Persisted message %s", messageID) },
-                  { err: Throwable ->
-                    Timber.tag(TAG).e(err, "Error persisting the message %s", messageID)
-                  }))
+              .doOnComplete { Timber.tag(TAG).d("Persisted message %s", messageID) }
+              .doOnError { err: Throwable ->
+                Timber.tag(TAG).e(err, "Error persisting the message %s", messageID)
+              })
     }
   }
 
@@ -159,21 +220,219 @@ class MessageRepository @Inject constructor(appDatabase: AppDatabase, applicatio
     }
 
     // Check if it's already in cache
-    synchronized(messageCache) {
-      val messageGeneral = messageCache[messageID]
-      if (messageGeneral != null) {
-        return true
+    if (messageCache[messageID] != null) {
+      return true
+    }
+
+    // Otherwise perform an I/O operation, unless the message was never persisted
+    return mightBePersisted(messageID) && messageDao.getMessageById(messageID) != null
+  }
+
+  /**
+   * Batch version of [isMessagePresent], looking up all the messages absent from memory with as
+   * few I/O operations as possible.
+   *
+   * @param messageIDs identifiers of the messages, each mapped to whether it should also be searched
+   *   in the disk (true) or only in the memory (false)
+   * @return the identifiers of the messages present in the repository
+   */
+  fun getPresentMessages(messageIDs: Map<MessageID, Boolean>): Set<MessageID> {
+    val present = HashSet<MessageID>()
+    val toLookUp = ArrayList<MessageID>()
+
+    messageIDs.forEach { (messageID, isPersisted) ->
+      if (!isPersisted) {
+        if (ephemeralMessages.containsKey(messageID)) {
+          present.add(messageID)
+        }
+      } else if (messageCache[messageID] != null) {
+        present.add(messageID)
+      } else if (mightBePersisted(messageID)) {
+        toLookUp.add(messageID)
+      }
+    }
+
+    // SQLite limits the number of parameters of a single query
+    toLookUp.chunked(MAX_QUERY_PARAMETERS).forEach {
+      present.addAll(messageDao.getPresentMessageIds(it))
+    }
+    return present
+  }
+
+  /**
+   * Find the messages present in the repository among the given ones, without knowing whether they
+   * are ephemeral or persisted. This allows to drop the messages already handled before decoding
+   * their data.
+   *
+   * @param messageIDs identifiers of the messages
+   * @return the identifiers of the messages present in the repository
+   */
+  fun getHandledMessages(messageIDs: Collection<MessageID>): Set<MessageID> {
+    val (ephemeral, candidates) = messageIDs.partition { ephemeralMessages.containsKey(it) }
+    val present = getPresentMessages(candidates.associateWith { true })
+    return if (ephemeral.isEmpty()) present else present + ephemeral
+  }
+
+  /**
+   * Find the messages absent from the repository among the given ones, without knowing whether
+   * they are ephemeral or persisted.
+   *
+   * @param messageIDs identifiers of the messages
+   * @return the identifiers of the messages absent from the repository, in the given order
+   */
+  fun getUnknownMessages(messageIDs: Collection<MessageID>): List<MessageID> {
+    val handled = getHandledMessages(messageIDs)
+    return messageIDs.filterNot { handled.contains(it) }
+  }
+
+  /**
+   * @param messageID identifier of a message
+   * @return true if the message was handled and is only kept in memory
+   */
+  fun isEphemeral(messageID: MessageID): Boolean {
+    return ephemeralMessages.containsKey(messageID)
+  }
+
+  /**
+   * @param channel the channel caught up on
+   * @return the mark of the messages of the channel handled so far, or null if there is none
+   */
+  fun getCatchupMark(channel: Channel): CatchupMark? {
+    val mark = catchupMarks[channel]
+    if (mark != null) {
+      return mark
+    }
+
+    val entity = catchupMarkDao.getCatchupMark(channel.asString) ?: return null
+    return catchupMarks.computeIfAbsent(channel) {
+      CatchupMark(entity.messageId, entity.messageCount, entity.digest)
+    }
+  }
+
+  /**
+   * Set the mark of the messages of a channel handled so far.
+   *
+   * @param channel the channel caught up on
+   * @param mark the new mark of the channel
+   * @param toPersist whether the mark is kept across restarts, which is only correct if all the
+   *   messages it covers were persisted
+   */
+  fun setCatchupMark(channel: Channel, mark: CatchupMark, toPersist: Boolean) {
+    catchupMarks[channel] = mark
+    if (toPersist) {
+      DatabaseBatch.submit(
+          disposables,
+          catchupMarkDao
+              .insert(
+                  CatchupMarkEntity(channel.asString, mark.messageId, mark.messageCount, mark.digest))
+              .doOnError { err: Throwable ->
+                Timber.tag(TAG).e(err, "Error persisting the catchup mark of %s", channel)
+              })
+    }
+  }
+
+  /** @return the messages waiting to be published, in the order they were queued */
+  fun getOutbox(): List<OutboxEntity> {
+    return outboxDao.getOutbox()
+  }
+
+  /**
+   * Queue a message to publish, dropping the queued messages it supersedes.
+   *
+   * @param channel the channel to publish the message on
+   * @param message the signed message to publish
+   * @return a single emitting true if the message was queued, false if it cancelled out with a
+   *   queued message and does not need to be sent
+   */
+  fun addToOutbox(channel: Channel, message: MessageGeneral): Single<Boolean> {
+    return Single.fromCallable {
+      // Queue the messages one at a time, so that each one sees the previous ones
+      synchronized(outboxDao) {
+        val pending = outboxDao.getOutbox().filter { it.messageId != outboxSending }
+        val superseded = OutboxPolicy.superseded(pending.map { it.message }, message)
+        val queued = !superseded.contains(message.messageId)
+        appDatabase.runInTransaction(
+            Runnable {
+              outboxDao.delete(superseded.filter { it != message.messageId })
+              if (queued) {
+                outboxDao.insert(OutboxEntity(message.messageId, channel.asString, message, 0))
+              }
+            })
+        queued
       }
     }
+  }
 
-    // Otherwise perform an I/O operation
-    return messageDao.getMessageById(messageID) != null
+  /**
+   * Mark a queued message as being sent. From then on, the messages queued do not cancel out with
+   * it, as a server may accept it anyway.
+   *
+   * @param messageID identifier of the queued message
+   * @return false if the message was superseded in the meantime and must not be sent
+   */
+  fun startSendingFromOutbox(messageID: MessageID): Boolean {
+    synchronized(outboxDao) {
+      if (!outboxDao.contains(messageID)) {
+        return false
+      }
+      outboxSending = messageID
+      return true
+    }
+  }
+
+  /**
+   * Mark a queued message as not being sent anymore, whether it was published or not.
+   *
+   * @param messageID identifier of the queued message
+   */
+  fun stopSendingFromOutbox(messageID: MessageID) {
+    synchronized(outboxDao) {
+      if (outboxSending == messageID) {
+        outboxSending = null
+      }
+    }
+  }
+
+  /**
+   * Record a failed attempt to publish a queued message.
+   *
+   * @param messageID identifier of the queued message
+   * @param attempts number of attempts so far
+   */
+  fun setOutboxAttempts(messageID: MessageID, attempts: Int): Completable {
+    return Completable.fromAction { outboxDao.updateAttempts(messageID, attempts) }
+  }
+
+  /**
+   * Remove a message from the outbox, once it was published or given up on.
+   *
+   * @param messageID identifier of the queued message
+   */
+  fun removeFromOutbox(messageID: MessageID): Completable {
+    return Completable.fromAction { outboxDao.delete(listOf(messageID)) }
+  }
+
+  /**
+   * Run the given block as a batch: the database writes it issues through the repositories are
+   * committed in a single transaction.
+   *
+   * @param block code to run
+   * @return a completable completing once the writes of the batch are committed
+   */
+  fun batch(block: () -> Unit): Completable {
+    return DatabaseBatch.run(appDatabase, block)
   }
 
   companion object {
     private val TAG = MessageRepository::class.java.simpleName
 
-    /** Size of the LRU cache */
-    private const val CACHED_MESSAGES = 100
+    /** Memory budget of the message cache, in bytes */
+    private const val CACHE_MEMORY_BUDGET = 2L * 1024 * 1024
+
+    /** Number of messages loaded in the cache at starting time */
+    private const val WARM_UP_MESSAGES = 1000
+
+    /** Maximum number of message ids looked up in a single query */
+    private const val MAX_QUERY_PARAMETERS = 500
   }
 }
@@ -34,7 +34,7 @@ import timber.log.Timber
  */
 @Singleton
 class RollCallRepository @Inject constructor(appDatabase: AppDatabase, application: Application) {
-  private val rollCallsByLao: MutableMap<String, LaoRollCalls> = HashMap()
+  private val rollCallsByLao = ConcurrentHashMap<String, LaoRollCalls>()
   private val rollCallDao: RollCallDao = appDatabase.rollCallDao()
   private val disposables = CompositeDisposable()
 
@@ -164,7 +164,6 @@ class RollCallRepository @Inject constructor(appDatabase: AppDatabase, applicati
     disposables.add(disposable)
   }
 
-  @Synchronized
   private fun getLaoRollCalls(laoId: String): LaoRollCalls {
     return rollCallsByLao.computeIfAbsent(laoId) { LaoRollCalls(this, laoId) }
   }
@@ -198,6 +197,7 @@ class RollCallRepository @Inject constructor(appDatabase: AppDatabase, applicati
      *
      * @param rollCall the roll call to update/add
      */
+    @Synchronized
     fun update(rollCall: RollCall) {
       // Updating repo data
       val persistentId = rollCall.persistentId
@@ -7,6 +7,7 @@ import com.github.dedis.popstellar.model.objects.Chirp
 import com.github.dedis.popstellar.model.objects.Reaction
 import com.github.dedis.popstellar.model.objects.security.MessageID
 import com.github.dedis.popstellar.repository.database.AppDatabase
+import com.github.dedis.popstellar.repository.database.DatabaseBatch
 import com.github.dedis.popstellar.repository.database.socialmedia.ChirpDao
 import com.github.dedis.popstellar.repository.database.socialmedia.ChirpEntity
 import com.github.dedis.popstellar.repository.database.socialmedia.ReactionDao
@@ -35,7 +36,7 @@ import timber.log.Timber
 class SocialMediaRepository
 @Inject
 constructor(appDatabase: AppDatabase, application: Application) {
-  private val chirpsByLao: MutableMap<String, LaoChirps> = HashMap()
+  private val chirpsByLao = ConcurrentHashMap<String, LaoChirps>()
   private val reactionDao: ReactionDao = appDatabase.reactionDao()
   private val chirpDao: ChirpDao = appDatabase.chirpDao()
   private val disposables = CompositeDisposable()
@@ -59,16 +60,14 @@ constructor(appDatabase: AppDatabase, application: Application) {
     Timber.tag(TAG).d("Adding new chirp on lao %s : %s", laoId, chirp)
 
     // Persist the chirp
-    disposables.add(
+    DatabaseBatch.submit(
+        disposables,
         chirpDao
             .insert(ChirpEntity(laoId, chirp))
-            .subscribeOn(Schedulers.io())
-            .observeOn(AndroidSchedulers.mainThread())
-            .subscribe(
-                { Timber.tag(TAG).d("Successfully persisted chirp %s", chirp.id) },
-                { err: Throwable ->
-                  Timber.tag(TAG).e(err, "Error in persisting chirp %s", chirp.id)
-                }))
+            .doOnComplete { Timber.tag(TAG).d("Successfully persisted chirp %s", chirp.id) }
+            .doOnError { err: Throwable ->
+              Timber.tag(TAG).e(err, "Error in persisting chirp %s", chirp.id)
+            })
 
     // Retrieve Lao data and add the chirp to it
     getLaoChirps(laoId).add(chirp)
@@ -151,7 +150,6 @@ constructor(appDatabase: AppDatabase, application: Application) {
     return getLaoChirps(laoId).deleteReaction(reactionID)
   }
 
-  @Synchronized
   private fun getLaoChirps(laoId: String): LaoChirps {
     // Create the lao chirps object if it is not present yet
     return chirpsByLao.computeIfAbsent(laoId) { LaoChirps(this, laoId) }
@@ -170,7 +168,9 @@ constructor(appDatabase: AppDatabase, application: Application) {
     // Chirps
     private val chirps = ConcurrentHashMap<MessageID, Chirp>()
     private val chirpSubjects = ConcurrentHashMap<MessageID, Subject<Chirp>>()
-    private val chirpsSubject: Subject<Set<MessageID>> = BehaviorSubject.createDefault(emptySet())
+    // Chirps of a lao are received on the channels of different users, which are handled concurrently
+    private val chirpsSubject: Subject<Set<MessageID>> =
+        BehaviorSubject.createDefault(emptySet<MessageID>()).toSerialized()
 
     // Reactions
     val reactionByChirpId = ConcurrentHashMap<MessageID, MutableSet<Reaction>>()
@@ -181,6 +181,7 @@ constructor(appDatabase: AppDatabase, application: Application) {
       loadStorage()
     }
 
+    @Synchronized
     fun add(chirp: Chirp) {
       val id = chirp.id
       val old = chirps[id]
@@ -189,16 +190,17 @@ constructor(appDatabase: AppDatabase, application: Application) {
         return
       }
 
-      // Update repository data
-      chirps[id] = chirp
+      // Update repository data, the reactions first as they are looked up once the chirp exists
       reactionByChirpId.putIfAbsent(chirp.id, ConcurrentHashMap.newKeySet())
       reactionSubjectsByChirpId.putIfAbsent(chirp.id, BehaviorSubject.createDefault(HashSet()))
+      chirps[id] = chirp
 
       // Publish new values on subjects
       chirpSubjects[id] = BehaviorSubject.createDefault(chirp)
       chirpsSubject.toSerialized().onNext(HashSet(chirps.keys))
     }
 
+    @Synchronized
     fun addReaction(reaction: Reaction): Boolean {
       // Check if the associated chirp is present
       val chirp = chirps[reaction.chirpId] ?: return false
@@ -217,6 +219,7 @@ constructor(appDatabase: AppDatabase, application: Application) {
       return true
     }
 
+    @Synchronized
     fun delete(id: MessageID): Boolean {
       val chirp = chirps[id] ?: return false
       if (chirp.isDeleted) {
@@ -231,20 +234,21 @@ constructor(appDatabase: AppDatabase, application: Application) {
         subject.toSerialized().onNext(deleted)
 
         // Persist the deleted reaction (done only for completeness, this is not necessary)
-        repository.disposables.add(
+        DatabaseBatch.submit(
+            repository.disposables,
             repository.chirpDao
                 .insert(ChirpEntity(laoId, deleted))
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(
-                    { Timber.tag(TAG).d("Successfully persisted deleted chirp %s", deleted.id) },
-                    { err: Throwable ->
-                      Timber.tag(TAG).e(err, "Error in persisting deleted chirp %s", deleted.id)
-                    }))
+                .doOnComplete {
+                  Timber.tag(TAG).d("Successfully persisted deleted chirp %s", deleted.id)
+                }
+                .doOnError { err: Throwable ->
+                  Timber.tag(TAG).e(err, "Error in persisting deleted chirp %s", deleted.id)
+                })
       }
       return true
     }
 
+    @Synchronized
     fun deleteReaction(reactionId: MessageID): Boolean {
       // Check if the associated reaction is present
       val reaction = reactions[reactionId] ?: return false
@@ -9,6 +9,7 @@ import com.github.dedis.popstellar.model.objects.WitnessMessage
 import com.github.dedis.popstellar.model.objects.security.MessageID
 import com.github.dedis.popstellar.model.objects.security.PublicKey
 import com.github.dedis.popstellar.repository.database.AppDatabase
+import com.github.dedis.popstellar.repository.database.DatabaseBatch
 import com.github.dedis.popstellar.repository.database.witnessing.PendingDao
 import com.github.dedis.popstellar.repository.database.witnessing.PendingEntity
 import com.github.dedis.popstellar.repository.database.witnessing.WitnessDao
@@ -81,7 +82,7 @@ constructor(
     private val meetingRepository: MeetingRepository,
     private val digitalCashRepository: DigitalCashRepository
 ) {
-  private val witnessByLao: MutableMap<String, LaoWitness> = HashMap()
+  private val witnessByLao = ConcurrentHashMap<String, LaoWitness>()
   private val witnessingDao: WitnessingDao = appDatabase.witnessingDao()
   private val witnessDao: WitnessDao = appDatabase.witnessDao()
   private val pendingDao: PendingDao = appDatabase.pendingDao()
@@ -106,16 +107,16 @@ constructor(
 
     // Persist the message
     val witnessingEntity = WitnessingEntity(laoId, witnessMessage)
-    disposables.add(
+    DatabaseBatch.submit(
+        disposables,
         witnessingDao
             .insert(witnessingEntity)
-            .subscribeOn(Schedulers.io())
-            .observeOn(AndroidSchedulers.mainThread())
-            .subscribe(
-                { Timber.tag(TAG).d("Successfully persisted witness message %s", witnessMessage) },
-                { err: Throwable ->
-                  Timber.tag(TAG).e(err, "Error in persisting witness message")
-                }))
+            .doOnComplete {
+              Timber.tag(TAG).d("Successfully persisted witness message %s", witnessMessage)
+            }
+            .doOnError { err: Throwable ->
+              Timber.tag(TAG).e(err, "Error in persisting witness message")
+            })
 
     // Retrieve Lao data and add the witness message to it
     getLaoWitness(laoId).add(witnessMessage)
@@ -250,7 +251,6 @@ constructor(
   }
 
   /** Get in a thread-safe fashion the witness object for the lao, computes it if absent. */
-  @Synchronized
   private fun getLaoWitness(laoId: String): LaoWitness {
     // Create the lao witness object if it is not present yet
     return witnessByLao.computeIfAbsent(laoId) { LaoWitness(laoId, this) }
@@ -274,14 +274,19 @@ constructor(
 
     /** Subject to observe the witnesses collection as a whole */
     private val witnessesSubject: Subject<Set<PublicKey>> =
-        BehaviorSubject.createDefault(Collections.unmodifiableSet(emptySet()))
+        BehaviorSubject.createDefault(Collections.unmodifiableSet(emptySet<PublicKey>()))
+            .toSerialized()
 
     /** Thread-safe map to save witness messages by their ids */
     val witnessMessages = ConcurrentHashMap<MessageID, WitnessMessage>()
 
-    /** Subject to observe the witness messages collection as a whole */
+    /**
+     * Subject to observe the witness messages collection as a whole. Witness messages of a lao are
+     * added from the handlers of different channels, which run concurrently.
+     */
     private val witnessMessagesSubject: Subject<List<WitnessMessage>> =
-        BehaviorSubject.createDefault(Collections.unmodifiableList(emptyList()))
+        BehaviorSubject.createDefault(Collections.unmodifiableList(emptyList<WitnessMessage>()))
+            .toSerialized()
 
     /** Thread-safe map to save pending entities by their message id */
     private val pendingEntities = ConcurrentHashMap<MessageID, PendingEntity>()
@@ -297,6 +302,7 @@ constructor(
      *
      * @param witnessMessage the new witness message to add/replace
      */
+    @Synchronized
     fun add(witnessMessage: WitnessMessage) {
       val messageID = witnessMessage.messageId
       witnessMessages[messageID] = witnessMessage
@@ -333,18 +339,16 @@ constructor(
       witnessMessage.addWitness(witness)
 
       // Persist the new message
-      repo.disposables.add(
+      DatabaseBatch.submit(
+          repo.disposables,
           repo.witnessingDao
               .insert(WitnessingEntity(laoId, witnessMessage))
-              .subscribeOn(Schedulers.io())
-              .observeOn(AndroidSchedulers.mainThread())
-              .subscribe(
-                  {
-                    Timber.tag(TAG).d("Successfully persisted witness message %s", witnessMessage)
-                  },
-                  { err: Throwable ->
-                    Timber.tag(TAG).e(err, "Error in persisting witness message")
-                  }))
+              .doOnComplete {
+                Timber.tag(TAG).d("Successfully persisted witness message %s", witnessMessage)
+              }
+              .doOnError { err: Throwable ->
+                Timber.tag(TAG).e(err, "Error in persisting witness message")
+              })
 
       // Upon reception of a new signature check that the witnessing policy is passing.
       // The following function is designed to return true only once (when it just achieves the
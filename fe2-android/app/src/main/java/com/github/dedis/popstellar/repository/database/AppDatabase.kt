@@ -9,6 +9,8 @@ import com.github.dedis.popstellar.repository.database.digitalcash.TransactionDa
 import com.github.dedis.popstellar.repository.database.digitalcash.TransactionEntity
 import com.github.dedis.popstellar.repository.database.event.election.ElectionDao
 import com.github.dedis.popstellar.repository.database.event.election.ElectionEntity
+import com.github.dedis.popstellar.repository.database.event.election.VoteDao
+import com.github.dedis.popstellar.repository.database.event.election.VoteEntity
 import com.github.dedis.popstellar.repository.database.event.meeting.MeetingDao
 import com.github.dedis.popstellar.repository.database.event.meeting.MeetingEntity
 import com.github.dedis.popstellar.repository.database.event.rollcall.RollCallDao
@@ -17,10 +19,14 @@ import com.github.dedis.popstellar.repository.database.lao.LAODao
 import com.github.dedis.popstellar.repository.database.lao.LAOEntity
 import com.github.dedis.popstellar.repository.database.message.MessageDao
 import com.github.dedis.popstellar.repository.database.message.MessageEntity
+import com.github.dedis.popstellar.repository.database.message.OutboxDao
+import com.github.dedis.popstellar.repository.database.message.OutboxEntity
 import com.github.dedis.popstellar.repository.database.socialmedia.ChirpDao
 import com.github.dedis.popstellar.repository.database.socialmedia.ChirpEntity
 import com.github.dedis.popstellar.repository.database.socialmedia.ReactionDao
 import com.github.dedis.popstellar.repository.database.socialmedia.ReactionEntity
+import com.github.dedis.popstellar.repository.database.subscriptions.CatchupMarkDao
+import com.github.dedis.popstellar.repository.database.subscriptions.CatchupMarkEntity
 import com.github.dedis.popstellar.repository.database.subscriptions.SubscriptionsDao
 import com.github.dedis.popstellar.repository.database.subscriptions.SubscriptionsEntity
 import com.github.dedis.popstellar.repository.database.wallet.WalletDao
@@ -38,10 +44,13 @@ import javax.inject.Singleton
     entities =
         [
             MessageEntity::class,
+            OutboxEntity::class,
             LAOEntity::class,
             WalletEntity::class,
             SubscriptionsEntity::class,
+            CatchupMarkEntity::class,
             ElectionEntity::class,
+            VoteEntity::class,
             RollCallEntity::class,
             MeetingEntity::class,
             ChirpEntity::class,
@@ -51,17 +60,21 @@ import javax.inject.Singleton
             WitnessingEntity::class,
             WitnessEntity::class,
             PendingEntity::class],
-    version = 4)
+    version = 7)
 @TypeConverters(CustomTypeConverters::class)
 abstract class AppDatabase : RoomDatabase() {
   abstract fun messageDao(): MessageDao
 
+  abstract fun outboxDao(): OutboxDao
+
   abstract fun laoDao(): LAODao
 
   abstract fun walletDao(): WalletDao
 
   abstract fun subscriptionsDao(): SubscriptionsDao
 
+  abstract fun catchupMarkDao(): CatchupMarkDao
+
   abstract fun witnessingDao(): WitnessingDao
 
   abstract fun witnessDao(): WitnessDao
@@ -70,6 +83,8 @@ abstract class AppDatabase : RoomDatabase() {
 
   abstract fun electionDao(): ElectionDao
 
+  abstract fun voteDao(): VoteDao
+
   abstract fun rollCallDao(): RollCallDao
 
   abstract fun meetingDao(): MeetingDao
@@ -0,0 +1,91 @@
+package com.github.dedis.popstellar.repository.database
+
+import android.content.ContentValues
+import android.database.sqlite.SQLiteDatabase
+import androidx.room.migration.Migration
+import androidx.sqlite.db.SupportSQLiteDatabase
+import com.google.gson.JsonArray
+import com.google.gson.JsonParser
+import com.google.gson.JsonPrimitive
+
+/**
+ * Migrations of the [AppDatabase] between its successive versions, so that upgrading the app keeps
+ * the stored data (e.g. the wallet seed) instead of dropping every table.
+ *
+ * The schema of each version is exported in the app/schemas directory.
+ */
+object AppDatabaseMigrations {
+
+  /** Version 5 moves the votes out of the serialized elections into the votes table */
+  @JvmField
+  val MIGRATION_4_5: Migration =
+      object : Migration(4, 5) {
+        override fun migrate(database: SupportSQLiteDatabase) {
+          database.execSQL(
+              "CREATE TABLE IF NOT EXISTS `votes` (`election_id` TEXT NOT NULL, `lao_id` TEXT NOT NULL, `sender` TEXT NOT NULL, `message_id` TEXT NOT NULL, `votes` TEXT NOT NULL, PRIMARY KEY(`election_id`, `sender`))")
+          database.execSQL("CREATE INDEX IF NOT EXISTS `index_votes_lao_id` ON `votes` (`lao_id`)")
+          moveVotesOutOfElections(database)
+        }
+      }
+
+  /** Version 6 adds the catchup marks of the subscribed channels */
+  @JvmField
+  val MIGRATION_5_6: Migration =
+      object : Migration(5, 6) {
+        override fun migrate(database: SupportSQLiteDatabase) {
+          database.execSQL(
+              "CREATE TABLE IF NOT EXISTS `catchup_marks` (`channel` TEXT NOT NULL, `message_id` TEXT NOT NULL, `message_count` INTEGER NOT NULL, `digest` INTEGER NOT NULL, PRIMARY KEY(`channel`))")
+        }
+      }
+
+  /** Version 7 adds the outbox of the messages waiting to be published */
+  @JvmField
+  val MIGRATION_6_7: Migration =
+      object : Migration(6, 7) {
+        override fun migrate(database: SupportSQLiteDatabase) {
+          database.execSQL(
+              "CREATE TABLE IF NOT EXISTS `outbox` (`message_id` TEXT NOT NULL, `channel` TEXT NOT NULL, `message` TEXT NOT NULL, `attempts` INTEGER NOT NULL, PRIMARY KEY(`message_id`))")
+        }
+      }
+
+  /** All the migrations, to register on the database builder */
+  @JvmField val ALL: Array<Migration> = arrayOf(MIGRATION_4_5, MIGRATION_5_6, MIGRATION_6_7)
+
+  /**
+   * Split the votes of each stored election into rows of the votes table, and rewrite the election
+   * without them.
+   *
+   * The columns hold the same JSON as the one produced by [CustomTypeConverters]: public keys and
+   * message ids are JSON strings and the ballot is the JSON array of its votes.
+   */
+  private fun moveVotesOutOfElections(database: SupportSQLiteDatabase) {
+    val elections = ArrayList<Triple<String, String, String>>()
+    database.query("SELECT election_id, lao_id, election FROM elections").use { cursor ->
+      while (cursor.moveToNext()) {
+        elections.add(Triple(cursor.getString(0), cursor.getString(1), cursor.getString(2)))
+      }
+    }
+
+    for ((electionId, laoId, json) in elections) {
+      val election = JsonParser.parseString(json).asJsonObject
+      val votesBySender = election.remove("votesBySender")?.asJsonObject
+      val messageMap = election.remove("messageMap")?.asJsonObject
+
+      // A ballot is identified by the message that cast it, every sender has one in the map
+      messageMap?.entrySet()?.forEach { (sender, messageId) ->
+        val ballot = ContentValues()
+        ballot.put("election_id", electionId)
+        ballot.put("lao_id", laoId)
+        ballot.put("sender", JsonPrimitive(sender).toString())
+        ballot.put("message_id", messageId.toString())
+        ballot.put("votes", (votesBySender?.get(sender) ?: JsonArray()).toString())
+        database.insert("votes", SQLiteDatabase.CONFLICT_REPLACE, ballot)
+      }
+
+      val row = ContentValues()
+      row.put("election", election.toString())
+      database.update(
+          "elections", SQLiteDatabase.CONFLICT_NONE, row, "election_id = ?", arrayOf(electionId))
+    }
+  }
+}
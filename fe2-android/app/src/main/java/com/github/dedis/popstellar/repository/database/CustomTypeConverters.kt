@@ -3,6 +3,7 @@ package com.github.dedis.popstellar.repository.database
 import androidx.room.ProvidedTypeConverter
 import androidx.room.TypeConverter
 import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.network.method.message.data.election.Vote
 import com.github.dedis.popstellar.model.objects.Channel
 import com.github.dedis.popstellar.model.objects.Chirp
 import com.github.dedis.popstellar.model.objects.Election
@@ -52,6 +53,11 @@ class CustomTypeConverters(private val gson: Gson) {
     return gson.fromJson(value, Election::class.java)
   }
 
+  @TypeConverter
+  fun listOfVotesFromString(value: String): List<Vote> {
+    return gson.fromJson(value, object : TypeToken<List<Vote>>() {}.type)
+  }
+
   @TypeConverter
   fun rollcallFromString(value: String): RollCall? {
     return gson.fromJson(value, RollCall::class.java)
@@ -118,6 +124,11 @@ class CustomTypeConverters(private val gson: Gson) {
     return gson.toJson(election, Election::class.java)
   }
 
+  @TypeConverter
+  fun listOfVotesToString(votes: List<Vote>?): String {
+    return gson.toJson(votes, object : TypeToken<List<Vote>?>() {}.type)
+  }
+
   @TypeConverter
   fun rollcallToString(rollCall: RollCall?): String {
     return gson.toJson(rollCall, RollCall::class.java)
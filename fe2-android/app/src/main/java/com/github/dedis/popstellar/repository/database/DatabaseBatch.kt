@@ -0,0 +1,91 @@
+package com.github.dedis.popstellar.repository.database
+
+import io.reactivex.Completable
+import io.reactivex.android.schedulers.AndroidSchedulers
+import io.reactivex.disposables.CompositeDisposable
+import io.reactivex.schedulers.Schedulers
+import timber.log.Timber
+
+/**
+ * Groups the database writes of the repositories into a single Room transaction.
+ *
+ * Outside of a batch, repositories persist their entities asynchronously, one write at a time.
+ * When a large number of messages is handled at once (e.g. the result of a catchup), this means
+ * tens of thousands of single-row transactions. Inside a batch, the writes submitted on the
+ * handling thread are instead deferred and committed together once the batch is over.
+ */
+object DatabaseBatch {
+  private val TAG = DatabaseBatch::class.java.simpleName
+
+  private val pendingWrites = ThreadLocal<MutableList<Completable>?>()
+
+  /**
+   * Run the given block, deferring the database writes it submits.
+   *
+   * Nested batches are merged into the outermost one.
+   *
+   * The deferred writes are committed as soon as the block is over, whether the returned
+   * completable is subscribed to or not: the repositories already consider them persisted, so
+   * disposing the batch must not drop them.
+   *
+   * @param appDatabase database on which the transaction is run
+   * @param block code submitting the writes
+   * @return a completable completing once the deferred writes are committed in a single transaction
+   */
+  fun run(appDatabase: AppDatabase, block: () -> Unit): Completable {
+    if (pendingWrites.get() != null) {
+      block()
+      return Completable.complete()
+    }
+
+    val writes = ArrayList<Completable>()
+    pendingWrites.set(writes)
+    try {
+      block()
+    } finally {
+      pendingWrites.remove()
+    }
+
+    if (writes.isEmpty()) {
+      return Completable.complete()
+    }
+
+    val commit =
+        Completable.fromAction {
+              appDatabase.runInTransaction {
+                // A failed write is reported by its own error handler and must not roll back the
+                // others
+                writes.forEach { it.onErrorComplete().blockingAwait() }
+              }
+            }
+            .subscribeOn(Schedulers.io())
+            .cache()
+    commit.subscribe({}, { err: Throwable -> Timber.tag(TAG).e(err, "Error committing a batch") })
+    return commit
+  }
+
+  /**
+   * Submit a database write. It is deferred if a batch is running on the current thread, otherwise
+   * it is executed right away and asynchronously.
+   *
+   * The success and error handling of the write is expected to be attached to the given completable.
+   *
+   * @param disposables container of the write subscription when it is not deferred
+   * @param write the write to execute
+   */
+  fun submit(disposables: CompositeDisposable, write: Completable) {
+    val writes = pendingWrites.get()
+    if (writes != null) {
+      writes.add(write)
+      return
+    }
+
+    disposables.add(
+        write
+            .subscribeOn(Schedulers.io())
+            .observeOn(AndroidSchedulers.mainThread())
+            // Errors are already handled by the write itself
+            .onErrorComplete()
+            .subscribe())
+  }
+}
@@ -0,0 +1,27 @@
+package com.github.dedis.popstellar.repository.database.event.election
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import io.reactivex.Completable
+import io.reactivex.Single
+
+@Dao
+interface VoteDao {
+  /**
+   * Insert the ballot of a sender, replacing the previous one it cast in the same election.
+   *
+   * @param voteEntity ballot to insert
+   */
+  @Insert(onConflict = OnConflictStrategy.REPLACE) fun insert(voteEntity: VoteEntity): Completable
+
+  /**
+   * This function is a query execution to search for the votes cast in the elections of a lao.
+   *
+   * @param laoId identifier of the lao where to search the votes
+   * @return an emitter of a list of votes
+   */
+  @Query("SELECT * FROM votes WHERE lao_id = :laoId")
+  fun getVotesByLaoId(laoId: String): Single<List<VoteEntity>?>
+}
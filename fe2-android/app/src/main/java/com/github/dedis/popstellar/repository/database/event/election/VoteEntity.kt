@@ -0,0 +1,19 @@
+package com.github.dedis.popstellar.repository.database.event.election
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import com.github.dedis.popstellar.model.Immutable
+import com.github.dedis.popstellar.model.network.method.message.data.election.Vote
+import com.github.dedis.popstellar.model.objects.security.MessageID
+import com.github.dedis.popstellar.model.objects.security.PublicKey
+
+/** A row of the votes table, holding the last ballot cast by a sender in an election */
+@Entity(tableName = "votes", primaryKeys = ["election_id", "sender"])
+@Immutable
+class VoteEntity(
+    @field:ColumnInfo(name = "election_id") val electionId: String,
+    @field:ColumnInfo(name = "lao_id", index = true) val laoId: String,
+    @field:ColumnInfo(name = "sender") val sender: PublicKey,
+    @field:ColumnInfo(name = "message_id") val messageId: MessageID,
+    @field:ColumnInfo(name = "votes") val votes: List<Vote>
+)
@@ -0,0 +1,116 @@
+package com.github.dedis.popstellar.repository.database.message
+
+import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.objects.security.MessageID
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Cache of messages bounded by an estimation of the memory they use.
+ *
+ * The cache is split into independent LRU segments, each guarded by its own lock, so that threads
+ * handling different messages rarely contend. Each segment holds an equal share of the memory
+ * budget and evicts its least recently used messages when going over it.
+ *
+ * Values are either a [MessageGeneral] or [MessageGeneral.EMPTY] for a message whose content is
+ * not kept.
+ *
+ * @param maxBytes memory budget of the cache
+ * @param segmentCount number of independent segments
+ */
+class MessageCache(maxBytes: Long, segmentCount: Int = DEFAULT_SEGMENTS) {
+  private val segments = Array(segmentCount) { Segment(maxBytes / segmentCount) }
+
+  private val hits = AtomicLong()
+  private val misses = AtomicLong()
+  private val evictions = AtomicLong()
+
+  /** Snapshot of the cache counters */
+  val stats: Stats
+    get() = Stats(hits.get(), misses.get(), evictions.get(), segments.sumOf { it.weight() })
+
+  /**
+   * @param messageID identifier of the message
+   * @return the cached value, or null if the message is not in the cache
+   */
+  operator fun get(messageID: MessageID): Any? {
+    val value = segmentFor(messageID).get(messageID)
+    if (value == null) {
+      misses.incrementAndGet()
+    } else {
+      hits.incrementAndGet()
+    }
+    return value
+  }
+
+  /**
+   * Add a message to the cache, possibly evicting the least recently used ones.
+   *
+   * @param messageID identifier of the message
+   * @param value the message, or [MessageGeneral.EMPTY] if its content is not kept
+   */
+  fun put(messageID: MessageID, value: Any) {
+    val evicted = segmentFor(messageID).put(messageID, value, weigh(value))
+    if (evicted > 0) {
+      evictions.addAndGet(evicted.toLong())
+    }
+  }
+
+  private fun segmentFor(messageID: MessageID): Segment {
+    // Spread the bits of the hash, as only its lowest ones select the segment
+    val hash = messageID.hashCode()
+    return segments[((hash xor (hash ushr 16)) and Int.MAX_VALUE) % segments.size]
+  }
+
+  /** Counters of the cache, the weight being the estimated memory in bytes used by the cache */
+  data class Stats(val hits: Long, val misses: Long, val evictions: Long, val weight: Long)
+
+  private class Entry(val value: Any, val weight: Int)
+
+  private class Segment(private val maxWeight: Long) {
+    // Iterates from the least to the most recently accessed entry
+    private val entries = LinkedHashMap<MessageID, Entry>(16, 0.75f, true)
+    private var weight = 0L
+
+    @Synchronized
+    fun get(messageID: MessageID): Any? {
+      return entries[messageID]?.value
+    }
+
+    /** @return the number of evicted entries */
+    @Synchronized
+    fun put(messageID: MessageID, value: Any, valueWeight: Int): Int {
+      val previous = entries.put(messageID, Entry(value, valueWeight))
+      weight += valueWeight - (previous?.weight ?: 0)
+
+      var evicted = 0
+      val iterator = entries.values.iterator()
+      // The entry that was just added is kept even if it goes over the budget on its own
+      while (weight > maxWeight && entries.size > 1) {
+        weight -= iterator.next().weight
+        iterator.remove()
+        evicted++
+      }
+      return evicted
+    }
+
+    @Synchronized
+    fun weight(): Long {
+      return weight
+    }
+  }
+
+  companion object {
+    private const val DEFAULT_SEGMENTS = 8
+
+    /** Estimated memory used by a cache entry without its message data */
+    private const val ENTRY_OVERHEAD = 256
+
+    private fun weigh(value: Any): Int {
+      if (value !is MessageGeneral) {
+        return ENTRY_OVERHEAD
+      }
+      // The data is held both as raw bytes and as the decoded object
+      return ENTRY_OVERHEAD + 2 * value.dataEncoded.size
+    }
+  }
+}
@@ -15,6 +15,12 @@ interface MessageDao {
   @Query("SELECT * FROM messages WHERE message_id = :messageId")
   fun getMessageById(messageId: MessageID): MessageEntity?
 
-  @Query("SELECT * FROM messages LIMIT :n")
-  fun takeFirstNMessages(n: Int): Single<List<MessageEntity>?>
+  @Query("SELECT message_id FROM messages WHERE message_id IN (:messageIds)")
+  fun getPresentMessageIds(messageIds: List<MessageID>): List<MessageID>
+
+  @Query("SELECT message_id FROM messages") fun getAllMessageIds(): List<MessageID>
+
+  /** Rows get a new rowid when replaced, so it orders the messages by their last write */
+  @Query("SELECT * FROM messages ORDER BY rowid DESC LIMIT :n")
+  fun getLatestMessages(n: Int): Single<List<MessageEntity>?>
 }
@@ -0,0 +1,78 @@
+package com.github.dedis.popstellar.repository.database.message
+
+import com.github.dedis.popstellar.model.objects.security.MessageID
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * Bloom filter of the ids of the persisted messages.
+ *
+ * It answers whether a message id might have been persisted without any I/O operation: a negative
+ * answer is definite, while a positive one has to be confirmed by the database.
+ *
+ * The filter has a fixed size of [BITS] bits (128 KiB), which keeps the false positive rate below
+ * 1% up to about a hundred thousand messages. Past that, it degrades gracefully: more lookups reach
+ * the database, but no answer is ever wrong. It is safe to use from multiple threads.
+ */
+class MessageIdFilter {
+  private val bits = AtomicLongArray(BITS / Long.SIZE_BITS)
+
+  /**
+   * Add a message id to the filter.
+   *
+   * @param messageID identifier of the persisted message
+   */
+  fun put(messageID: MessageID) {
+    forEachBit(messageID) { index ->
+      val word = index ushr WORD_SHIFT
+      val mask = 1L shl index
+      var current = bits[word]
+      while (current and mask == 0L && !bits.compareAndSet(word, current, current or mask)) {
+        current = bits[word]
+      }
+    }
+  }
+
+  /**
+   * @param messageID identifier of the message
+   * @return false if the message was definitely never added, true if it might have been
+   */
+  fun mightContain(messageID: MessageID): Boolean {
+    forEachBit(messageID) { index ->
+      if (bits[index ushr WORD_SHIFT] and (1L shl index) == 0L) {
+        return false
+      }
+    }
+    return true
+  }
+
+  private inline fun forEachBit(messageID: MessageID, action: (Int) -> Unit) {
+    // Double hashing: the k indexes are derived from the two halves of a single 64 bits hash
+    val hash = fnv1a(messageID.bytesView)
+    val h1 = hash.toInt()
+    val h2 = (hash ushr Int.SIZE_BITS).toInt()
+    for (i in 0 until HASH_FUNCTIONS) {
+      action((h1 + i * h2) and (BITS - 1))
+    }
+  }
+
+  companion object {
+    /** Number of bits of the filter, it must be a power of two */
+    const val BITS = 1 shl 20
+
+    /** Number of bits set for each message id */
+    private const val HASH_FUNCTIONS = 7
+
+    private const val WORD_SHIFT = 6
+
+    private const val FNV_OFFSET_BASIS = -0x340d631b7bdddcdbL
+    private const val FNV_PRIME = 0x100000001b3L
+
+    private fun fnv1a(bytes: ByteArray): Long {
+      var hash = FNV_OFFSET_BASIS
+      for (b in bytes) {
+        hash = (hash xor (b.toLong() and 0xff)) * FNV_PRIME
+      }
+      return hash
+    }
+  }
+}
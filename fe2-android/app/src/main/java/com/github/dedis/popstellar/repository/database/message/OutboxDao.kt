@@ -0,0 +1,26 @@
+package com.github.dedis.popstellar.repository.database.message
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import com.github.dedis.popstellar.model.objects.security.MessageID
+
+/** Interface to query the table containing the messages waiting to be published */
+@Dao
+interface OutboxDao {
+  /** A message already queued keeps its place and its attempts */
+  @Insert(onConflict = OnConflictStrategy.IGNORE) fun insert(outboxEntity: OutboxEntity)
+
+  /** Rows keep their rowid, so it orders the messages by the time they were queued */
+  @Query("SELECT * FROM outbox ORDER BY rowid") fun getOutbox(): List<OutboxEntity>
+
+  @Query("SELECT EXISTS(SELECT 1 FROM outbox WHERE message_id = :messageId)")
+  fun contains(messageId: MessageID): Boolean
+
+  @Query("UPDATE outbox SET attempts = :attempts WHERE message_id = :messageId")
+  fun updateAttempts(messageId: MessageID, attempts: Int)
+
+  @Query("DELETE FROM outbox WHERE message_id IN (:messageIds)")
+  fun delete(messageIds: List<MessageID>)
+}
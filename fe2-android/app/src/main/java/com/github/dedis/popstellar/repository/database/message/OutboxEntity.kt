@@ -0,0 +1,18 @@
+package com.github.dedis.popstellar.repository.database.message
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+import com.github.dedis.popstellar.model.Immutable
+import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.objects.security.MessageID
+
+/** Signed message waiting to be published on a channel */
+@Entity(tableName = "outbox")
+@Immutable
+class OutboxEntity(
+    @field:PrimaryKey @field:ColumnInfo(name = "message_id") val messageId: MessageID,
+    @field:ColumnInfo(name = "channel") val channel: String,
+    @field:ColumnInfo(name = "message") val message: MessageGeneral,
+    @field:ColumnInfo(name = "attempts") val attempts: Int
+)
@@ -0,0 +1,22 @@
+package com.github.dedis.popstellar.repository.database.subscriptions
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import io.reactivex.Completable
+
+/** Interface to query the table containing the catchup mark of each channel */
+@Dao
+interface CatchupMarkDao {
+  @Insert(onConflict = OnConflictStrategy.REPLACE)
+  fun insert(catchupMarkEntity: CatchupMarkEntity): Completable
+
+  /**
+   * It selects from the table the catchup mark of a given channel.
+   *
+   * @param channel protocol representation of the channel
+   */
+  @Query("SELECT * FROM catchup_marks WHERE channel = :channel")
+  fun getCatchupMark(channel: String): CatchupMarkEntity?
+}
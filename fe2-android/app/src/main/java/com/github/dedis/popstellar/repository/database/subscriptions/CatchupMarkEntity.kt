@@ -0,0 +1,20 @@
+package com.github.dedis.popstellar.repository.database.subscriptions
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+import com.github.dedis.popstellar.model.Immutable
+import com.github.dedis.popstellar.model.objects.security.MessageID
+
+/**
+ * Number of messages at the start of the catchup of a channel that were already handled, see
+ * [com.github.dedis.popstellar.repository.remote.CatchupMark]
+ */
+@Entity(tableName = "catchup_marks")
+@Immutable
+class CatchupMarkEntity(
+    @field:ColumnInfo(name = "channel") @field:PrimaryKey val channel: String,
+    @field:ColumnInfo(name = "message_id") val messageId: MessageID,
+    @field:ColumnInfo(name = "message_count") val messageCount: Int,
+    @field:ColumnInfo(name = "digest") val digest: Long
+)
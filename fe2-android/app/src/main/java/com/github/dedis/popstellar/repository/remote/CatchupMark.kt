@@ -0,0 +1,69 @@
+package com.github.dedis.popstellar.repository.remote
+
+import com.github.dedis.popstellar.model.Immutable
+import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.objects.security.MessageID
+
+/**
+ * High-water mark of the catchups of a channel: the server sends the history of a channel in the
+ * same order at each catchup, so the messages already handled form a prefix of the next catchup.
+ *
+ * The mark remembers the length of that prefix, its last message and a digest of all its message
+ * ids. If the next catchup starts with the same messages, only the ones after the prefix have to be
+ * verified and handled. Otherwise, for instance if another server answered in a different order,
+ * the mark is not found and the whole catchup is handled.
+ *
+ * @param messageId id of the last message of the prefix
+ * @param messageCount number of messages in the prefix
+ * @param digest digest of the ids of the messages in the prefix, regardless of their order
+ */
+@Immutable
+data class CatchupMark(val messageId: MessageID, val messageCount: Int, val digest: Long) {
+
+  /**
+   * @param messages the messages of a catchup, in the order they were received
+   * @return the number of messages at the start of the catchup that were already handled, 0 if the
+   *   mark could not be found
+   */
+  fun handledCount(messages: List<MessageGeneral>): Int {
+    if (messageCount == 0 ||
+        messages.size < messageCount ||
+        messages[messageCount - 1].messageId != messageId ||
+        digest(messages, messageCount) != digest) {
+      return 0
+    }
+    return messageCount
+  }
+
+  companion object {
+    /**
+     * @param messages the messages of a catchup, in the order they were received
+     * @param handledCount number of messages at the start of the catchup that were handled
+     * @return the mark of the handled messages, or null if there is none
+     */
+    @JvmStatic
+    fun of(messages: List<MessageGeneral>, handledCount: Int): CatchupMark? {
+      if (handledCount == 0) {
+        return null
+      }
+      return CatchupMark(
+          messages[handledCount - 1].messageId, handledCount, digest(messages, handledCount))
+    }
+
+    private fun digest(messages: List<MessageGeneral>, count: Int): Long {
+      var digest = 0L
+      for (i in 0 until count) {
+        digest += mix(messages[i].messageId)
+      }
+      return digest
+    }
+
+    /** Spread the hash of a message id over 64 bits (finalizer of SplitMix64) */
+    private fun mix(messageID: MessageID): Long {
+      var z = messageID.hashCode().toLong() * -0x61c8864680b583ebL
+      z = (z xor (z ushr 30)) * -0x40a7b892e31b1a47L
+      z = (z xor (z ushr 27)) * -0x6b2fb644ecceee15L
+      return z xor (z ushr 31)
+    }
+  }
+}
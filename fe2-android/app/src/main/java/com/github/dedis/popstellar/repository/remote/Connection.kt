@@ -1,6 +1,7 @@
 package com.github.dedis.popstellar.repository.remote
 
 import com.github.dedis.popstellar.model.network.GenericMessage
+import com.github.dedis.popstellar.model.network.method.Broadcast
 import com.github.dedis.popstellar.model.network.method.Message
 import com.tinder.scarlet.Lifecycle
 import com.tinder.scarlet.ShutdownReason
@@ -9,43 +10,108 @@ import com.tinder.scarlet.WebSocket.Event.OnConnectionClosed
 import com.tinder.scarlet.WebSocket.Event.OnConnectionClosing
 import com.tinder.scarlet.WebSocket.Event.OnConnectionFailed
 import com.tinder.scarlet.WebSocket.Event.OnConnectionOpened
+import io.reactivex.BackpressureOverflowStrategy
+import io.reactivex.BackpressureStrategy
+import io.reactivex.Flowable
 import io.reactivex.Observable
 import io.reactivex.disposables.CompositeDisposable
 import io.reactivex.subjects.BehaviorSubject
+import io.reactivex.subjects.CompletableSubject
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
 import timber.log.Timber
 
-/** Represents a single websocket connection that can be closed */
+/**
+ * Represents a single websocket connection that can be closed.
+ *
+ * The incoming broadcasts are buffered until the subscribers request them. The buffer is bounded:
+ * when the subscribers cannot keep up, the oldest broadcasts are dropped. The broadcasts lost this
+ * way are fetched again by the next heartbeat or catchup of their channel.
+ *
+ * The other incoming messages, in particular the answers to the requests, are delivered on their
+ * own stream. They are never dropped, nor delayed by the broadcasts waiting to be handled.
+ *
+ * The websocket is only observed once the streams have subscribers, so that no message is consumed
+ * before someone listens to it.
+ */
 open class Connection {
-  // Create a new subject whose purpose is to dispatch incoming messages to all subscribers
-  private val messagesSubject: BehaviorSubject<GenericMessage>
+  // Incoming broadcasts, dispatched to all subscribers at the pace of the slowest one
+  private val broadcasts: Flowable<GenericMessage>
+  // Incoming messages that are not broadcasts, buffered without bound
+  private val controlMessages: Flowable<GenericMessage>
+  // Completed when the connection is closed, which completes the incoming messages
+  private val closed: CompletableSubject
+  // Number of broadcasts waiting in the buffer, and number of broadcasts dropped as it was full
+  private val queued: AtomicLong
+  private val dropped: AtomicLong
+  private val link: LinkCounters
   private val manualState: BehaviorSubject<Lifecycle.State>
   private val laoService: LAOService
   private val disposables: CompositeDisposable
+  private val connected: AtomicBoolean
 
-  constructor(url: String, laoService: LAOService, manualState: BehaviorSubject<Lifecycle.State>) {
+  /** Whether the websocket is currently open */
+  open val isConnected: Boolean
+    get() = connected.get()
+
+  /**
+   * @param url address of the server
+   * @param laoService websocket service of the server
+   * @param manualState lifecycle used to close the websocket
+   * @param bufferCapacity maximum number of incoming broadcasts waiting for the subscribers
+   */
+  constructor(
+      url: String,
+      laoService: LAOService,
+      manualState: BehaviorSubject<Lifecycle.State>,
+      bufferCapacity: Int = DEFAULT_BUFFER_CAPACITY
+  ) {
     this.laoService = laoService
     this.manualState = manualState
-    messagesSubject = BehaviorSubject.create()
     disposables = CompositeDisposable()
+    connected = AtomicBoolean(false)
+    closed = CompletableSubject.create()
+    queued = AtomicLong()
+    dropped = AtomicLong()
+    link = LinkCounters()
 
-    // Subscribe to the incoming messages of the websocket service
-    // and simply hand them to the subject
-    disposables.add(
+    // A single subscription to the websocket service serves both streams, it is made once they
+    // are subscribed to and disposed of once they are not anymore
+    val inbound =
         laoService
             .observeMessage()
+            .takeUntil(closed.toObservable<GenericMessage>())
             .doOnNext { msg: GenericMessage ->
               Timber.tag(TAG).d("Received a new message from remote: %s", msg)
+              link.framesReceived.incrementAndGet()
             }
-            .subscribe(
-                { t: GenericMessage -> messagesSubject.onNext(t) },
-                { t: Throwable -> messagesSubject.onError(t) }))
+            .share()
+    broadcasts =
+        inbound
+            .filter { msg: GenericMessage -> msg is Broadcast }
+            .doOnNext { queued.incrementAndGet() }
+            .toFlowable(BackpressureStrategy.MISSING)
+            .onBackpressureBuffer(
+                bufferCapacity.toLong(), { onOverflow() }, BackpressureOverflowStrategy.DROP_OLDEST)
+            .doOnNext { queued.decrementAndGet() }
+            .publish(DISPATCH_PREFETCH)
+            .refCount()
+    controlMessages =
+        inbound
+            .filter { msg: GenericMessage -> msg !is Broadcast }
+            .toFlowable(BackpressureStrategy.BUFFER)
+            .share()
 
-    // Add logs on connection state events
+    // Keep track of the connection state and add logs on its events
     disposables.add(
         laoService
             .observeWebsocket()
             .subscribe(
-                { event: WebSocket.Event -> logEvent(event, url) },
+                { event: WebSocket.Event ->
+                  updateState(event)
+                  logEvent(event, url)
+                },
                 { err: Throwable -> Timber.tag(TAG).d(err, "Error in connection %s", url) }))
   }
 
@@ -53,7 +119,37 @@ open class Connection {
     laoService = connection.laoService
     manualState = connection.manualState
     disposables = connection.disposables
-    messagesSubject = connection.messagesSubject
+    broadcasts = connection.broadcasts
+    controlMessages = connection.controlMessages
+    closed = connection.closed
+    queued = connection.queued
+    dropped = connection.dropped
+    link = connection.link
+    connected = connection.connected
+  }
+
+  private fun onOverflow() {
+    queued.decrementAndGet()
+    val count = dropped.incrementAndGet()
+    Timber.tag(TAG).w("Incoming buffer full, dropped the oldest message (%d so far)", count)
+  }
+
+  private fun updateState(event: WebSocket.Event) {
+    when (event) {
+      is OnConnectionOpened<*> -> {
+        connected.set(true)
+        link.onOpened(System.nanoTime())
+      }
+      is OnConnectionClosed,
+      is OnConnectionClosing,
+      is OnConnectionFailed -> {
+        connected.set(false)
+        link.onClosed(System.nanoTime())
+      }
+      else -> {
+        /* The other events don't change the state */
+      }
+    }
   }
 
   private fun logEvent(event: WebSocket.Event, url: String) {
@@ -81,11 +177,36 @@ open class Connection {
   }
 
   open fun sendMessage(msg: Message) {
+    link.framesSent.incrementAndGet()
     laoService.sendMessage(msg)
   }
 
-  open fun observeMessage(): Observable<GenericMessage> {
-    return messagesSubject
+  /** @return all the incoming messages, see [observeBroadcasts] and [observeControlMessages] */
+  open fun observeMessage(): Flowable<GenericMessage> {
+    return Flowable.merge(observeBroadcasts(), observeControlMessages())
+  }
+
+  /**
+   * @return the incoming broadcasts, the oldest ones are dropped when the subscribers cannot keep
+   *   up
+   */
+  open fun observeBroadcasts(): Flowable<GenericMessage> {
+    return broadcasts
+  }
+
+  /** @return the incoming messages that are not broadcasts, such as answers and heartbeats */
+  open fun observeControlMessages(): Flowable<GenericMessage> {
+    return controlMessages
+  }
+
+  /** @return the counters of the buffer of incoming broadcasts */
+  open fun inboundStats(): InboundStats {
+    return InboundStats(queued.get(), dropped.get())
+  }
+
+  /** @return the counters of the websocket */
+  open fun linkStats(): LinkStats {
+    return link.stats(System.nanoTime())
   }
 
   open fun observeConnectionEvents(): Observable<WebSocket.Event> {
@@ -93,14 +214,82 @@ open class Connection {
   }
 
   open fun close() {
-    // Dispose of any held resources and mark the message subject as complete
-    // (i.e. will not be used again)
-    messagesSubject.onComplete()
+    // Complete the incoming messages (i.e. they will not be used again) and dispose of any held
+    // resources
+    closed.onComplete()
     disposables.dispose()
     manualState.onNext(Lifecycle.State.Stopped.WithReason(ShutdownReason.GRACEFUL))
   }
 
+  /**
+   * Counters of the buffer of incoming broadcasts.
+   *
+   * @param queued number of broadcasts waiting for the subscribers
+   * @param dropped number of broadcasts dropped as the buffer was full
+   */
+  data class InboundStats(val queued: Long, val dropped: Long) {
+    operator fun plus(other: InboundStats): InboundStats {
+      return InboundStats(queued + other.queued, dropped + other.dropped)
+    }
+  }
+
+  /**
+   * Counters of the websocket.
+   *
+   * @param framesSent number of messages sent
+   * @param framesReceived number of messages received
+   * @param reconnects number of times the websocket was opened again after the first time
+   * @param connectedMillis total time the websocket was open
+   */
+  data class LinkStats(
+      val framesSent: Long,
+      val framesReceived: Long,
+      val reconnects: Long,
+      val connectedMillis: Long
+  )
+
+  private class LinkCounters {
+    val framesSent = AtomicLong()
+    val framesReceived = AtomicLong()
+    private var opened = 0L
+    private var openedAt: Long? = null
+    private var connectedNanos = 0L
+
+    @Synchronized
+    fun onOpened(now: Long) {
+      if (openedAt == null) {
+        opened++
+        openedAt = now
+      }
+    }
+
+    @Synchronized
+    fun onClosed(now: Long) {
+      openedAt?.let { connectedNanos += now - it }
+      openedAt = null
+    }
+
+    @Synchronized
+    fun stats(now: Long): LinkStats {
+      val current = openedAt?.let { now - it } ?: 0L
+      return LinkStats(
+          framesSent.get(),
+          framesReceived.get(),
+          (opened - 1).coerceAtLeast(0),
+          TimeUnit.NANOSECONDS.toMillis(connectedNanos + current))
+    }
+  }
+
   companion object {
     val TAG: String = Connection::class.java.simpleName
+
+    /** Default maximum number of incoming broadcasts waiting for the subscribers */
+    const val DEFAULT_BUFFER_CAPACITY = 4096
+
+    /**
+     * Number of messages taken from the buffer ahead of the subscribers requests, they are not
+     * counted as queued
+     */
+    const val DISPATCH_PREFETCH = 16
   }
 }
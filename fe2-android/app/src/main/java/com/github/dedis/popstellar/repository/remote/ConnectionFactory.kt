@@ -8,6 +8,7 @@ import com.tinder.scarlet.Scarlet
 import com.tinder.scarlet.Scarlet.Builder
 import com.tinder.scarlet.lifecycle.android.AndroidLifecycle.ofApplicationForeground
 import com.tinder.scarlet.messageadapter.gson.GsonMessageAdapter
+import com.tinder.scarlet.retry.BackoffStrategy
 import com.tinder.scarlet.streamadapter.rxjava2.RxJava2StreamAdapterFactory
 import com.tinder.scarlet.websocket.okhttp.newWebSocketFactory
 import io.reactivex.BackpressureStrategy
@@ -22,7 +23,9 @@ constructor(
     private val application: Application,
     private val schedulerProvider: SchedulerProvider,
     private val okHttpClient: OkHttpClient,
-    private val gson: Gson
+    private val gson: Gson,
+    private val backoffStrategy: BackoffStrategy,
+    private val trafficCounters: TrafficCounters
 ) {
   private fun createConnection(url: String): Connection {
     // Create a behavior subject that will be used to close or start the socket manually
@@ -33,7 +36,8 @@ constructor(
     val scarlet: Scarlet =
         Builder()
             .webSocketFactory(okHttpClient.newWebSocketFactory(url))
-            .addMessageAdapterFactory(GsonMessageAdapter.Factory(gson))
+            .addMessageAdapterFactory(
+                trafficCounters.messageAdapterFactory(GsonMessageAdapter.Factory(gson)))
             .addStreamAdapterFactory(RxJava2StreamAdapterFactory())
             .lifecycle(
                 ofApplicationForeground(application)
@@ -41,7 +45,7 @@ constructor(
                         FlowableLifecycleInt(
                             manualState.toFlowable(BackpressureStrategy.LATEST),
                             schedulerProvider.computation())))
-            // .backoffStrategy(new ExponentialBackoffStrategy())
+            .backoffStrategy(backoffStrategy)
             .build()
 
     // And return a bundled object of the service and the subject
@@ -49,6 +53,6 @@ constructor(
   }
 
   fun createMultiConnection(url: String): MultiConnection {
-    return MultiConnection({ createConnection(url) }, url)
+    return MultiConnection({ peerUrl: String -> createConnection(peerUrl) }, url)
   }
 }
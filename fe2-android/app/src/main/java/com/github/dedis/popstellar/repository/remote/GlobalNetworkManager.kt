@@ -17,7 +17,8 @@ constructor(
     private val messageHandler: MessageHandler,
     private val connectionFactory: ConnectionFactory,
     private val gson: Gson,
-    private val schedulerProvider: SchedulerProvider
+    private val schedulerProvider: SchedulerProvider,
+    private val transportMetrics: TransportMetrics
 ) : Disposable {
   private var networkManager: MessageSender? = null
   var currentUrl: String? = null
@@ -31,13 +32,15 @@ constructor(
   fun connect(url: String, subscriptions: Set<Channel> = HashSet()) {
     networkManager?.dispose()
 
-    networkManager =
+    val laoNetworkManager =
         LAONetworkManager(
             messageHandler,
             connectionFactory.createMultiConnection(url),
             gson,
             schedulerProvider,
             subscriptions)
+    networkManager = laoNetworkManager
+    transportMetrics.attach(laoNetworkManager)
     currentUrl = url
   }
 
@@ -50,6 +53,7 @@ constructor(
   override fun dispose() {
     networkManager?.dispose()
     networkManager = null
+    transportMetrics.attach(null)
   }
 
   override fun isDisposed(): Boolean {
@@ -3,21 +3,33 @@ package com.github.dedis.popstellar.repository.remote
 import androidx.annotation.VisibleForTesting
 import com.github.dedis.popstellar.model.network.GenericMessage
 import com.github.dedis.popstellar.model.network.answer.Answer
-import com.github.dedis.popstellar.model.network.answer.Error
 import com.github.dedis.popstellar.model.network.answer.ResultMessages
+import com.github.dedis.popstellar.model.network.answer.ResultMessagesByChannel
 import com.github.dedis.popstellar.model.network.method.Broadcast
 import com.github.dedis.popstellar.model.network.method.Catchup
+import com.github.dedis.popstellar.model.network.method.GetMessagesById
+import com.github.dedis.popstellar.model.network.method.Heartbeat
 import com.github.dedis.popstellar.model.network.method.Publish
-import com.github.dedis.popstellar.model.network.method.Query
 import com.github.dedis.popstellar.model.network.method.Subscribe
 import com.github.dedis.popstellar.model.network.method.Unsubscribe
 import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
 import com.github.dedis.popstellar.model.network.method.message.data.Data
+import com.github.dedis.popstellar.model.network.method.message.data.election.ElectionSetup
+import com.github.dedis.popstellar.model.network.method.message.data.lao.CreateLao
+import com.github.dedis.popstellar.model.network.method.message.data.meeting.CreateMeeting
+import com.github.dedis.popstellar.model.network.method.message.data.rollcall.CloseRollCall
+import com.github.dedis.popstellar.model.network.method.message.data.rollcall.CreateRollCall
+import com.github.dedis.popstellar.model.network.method.message.data.rollcall.OpenRollCall
 import com.github.dedis.popstellar.model.objects.Channel
 import com.github.dedis.popstellar.model.objects.PeerAddress
 import com.github.dedis.popstellar.model.objects.security.KeyPair
+import com.github.dedis.popstellar.model.objects.security.MessageID
+import com.github.dedis.popstellar.model.objects.security.SignatureBatch
+import com.github.dedis.popstellar.repository.database.message.OutboxEntity
 import com.github.dedis.popstellar.utility.error.DataHandlingException
 import com.github.dedis.popstellar.utility.error.JsonRPCErrorException
+import com.github.dedis.popstellar.utility.error.MissingDependencyException
+import com.github.dedis.popstellar.utility.error.MissingDependencyException.Companion.noClosedRollCallKey
 import com.github.dedis.popstellar.utility.error.UnknownElectionException
 import com.github.dedis.popstellar.utility.error.UnknownLaoException
 import com.github.dedis.popstellar.utility.error.UnknownRollCallException
@@ -26,11 +38,16 @@ import com.github.dedis.popstellar.utility.error.keys.NoRollCallException
 import com.github.dedis.popstellar.utility.handler.MessageHandler
 import com.github.dedis.popstellar.utility.scheduler.SchedulerProvider
 import com.google.gson.Gson
+import com.google.gson.JsonParseException
 import com.tinder.scarlet.WebSocket
+import io.reactivex.BackpressureStrategy
 import io.reactivex.Completable
+import io.reactivex.Flowable
 import io.reactivex.Observable
+import io.reactivex.Scheduler
 import io.reactivex.Single
 import io.reactivex.disposables.CompositeDisposable
+import io.reactivex.flowables.GroupedFlowable
 import io.reactivex.observers.TestObserver
 import io.reactivex.subjects.PublishSubject
 import io.reactivex.subjects.Subject
@@ -39,25 +56,58 @@ import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicInteger
 import timber.log.Timber
 
-/** This class handles the JSON-RPC layer of the protocol */
-class LAONetworkManager(
+/**
+ * This class handles the JSON-RPC layer of the protocol
+ *
+ * @param verificationBatchSize number of messages whose signatures are verified concurrently
+ */
+class LAONetworkManager
+@JvmOverloads
+constructor(
     private val messageHandler: MessageHandler,
     private val multiConnection: MultiConnection,
     private val gson: Gson,
     private val schedulerProvider: SchedulerProvider,
-    subscribedChannels: Set<Channel>
+    subscribedChannels: Set<Channel>,
+    private val verificationBatchSize: Int = VERIFICATION_BATCH_SIZE
 ) : MessageSender {
   private val requestCounter = AtomicInteger()
 
+  // Writes the requests on the connection and correlates their answers
+  private val pipeline =
+      RequestPipeline(
+          multiConnection,
+          schedulerProvider.io(),
+          schedulerProvider.computation(),
+          REPROCESSING_DELAY.toLong())
+
   // A subject that represents unprocessed messages
-  private val unprocessed: Subject<GenericMessage> = PublishSubject.create()
-  private val reprocessingCounter = ConcurrentHashMap<GenericMessage, Int>()
-  private val subscribedChannels: MutableSet<Channel> = HashSet(subscribedChannels)
+  private val unprocessed: Subject<GenericMessage> =
+      PublishSubject.create<GenericMessage>().toSerialized()
+  private val reprocessingCounter = ConcurrentHashMap<MessageID, Int>()
+
+  // Messages waiting for a missing dependency, and those whose dependency was just handled
+  private val parkingLot = MessageParkingLot()
+  private val released: Subject<GenericMessage> =
+      PublishSubject.create<GenericMessage>().toSerialized()
+  private val parkingTimers = CompositeDisposable()
+  // Updated by the concurrent resubscriptions while the heartbeats read it
+  private val subscribedChannels: MutableSet<Channel> =
+      ConcurrentHashMap.newKeySet<Channel>().apply { addAll(subscribedChannels) }
   private val disposables = CompositeDisposable()
 
+  // Messages announced by a heartbeat that are being fetched
+  private val fetchedMessages: MutableSet<MessageID> = ConcurrentHashMap.newKeySet()
+
+  // Signals that messages are waiting in the outbox
+  private val outboxTrigger: Subject<Unit> = PublishSubject.create<Unit>().toSerialized()
+
   init {
     // Start the incoming message processing
     processIncomingMessages()
+    processAnswers()
+    processHeartbeats()
+    processOutbox()
     // Start the routine aimed at resubscribing to channels when the connection is lost
     resubscribeToChannelOnReconnection()
   }
@@ -69,73 +119,202 @@ class LAONetworkManager(
             .subscribeOn(
                 schedulerProvider.io()) // Filter out events that are not related to a reconnection
             .filter { event: WebSocket.Event -> event is WebSocket.Event.OnConnectionOpened<*> }
-            // Subscribe to the stream and when a connection event is received, send a subscribe
-            // message for each channel we are supposed to be subscribed to.
+            // Send the messages queued while the connection was lost
+            .doOnNext { outboxTrigger.onNext(Unit) }
+            // When a connection event is received, resubscribe to each channel we are supposed to
+            // be subscribed to. A new reconnection cancels the resubscriptions still in progress.
+            .switchMapCompletable { resubscribe() }
             .subscribe(
-                {
-                  subscribedChannels.forEach { channel: Channel ->
-                    disposables.add(
-                        subscribe(channel)
-                            .subscribe(
-                                { Timber.tag(TAG).d("resubscription successful to : %s", channel) },
-                                { error: Throwable ->
-                                  Timber.tag(TAG).e(error, "error on resubscription to")
-                                }))
-                  }
-                },
+                { Timber.tag(TAG).d("Resubscription routine completed") },
                 { error: Throwable -> Timber.tag(TAG).e(error, "Error on resubscription") }))
   }
 
+  /**
+   * Subscribe again to all the channels, the most important ones first. Only a few subscriptions
+   * and their catchups are in flight at a time, so that a reconnection does not flood the server.
+   */
+  private fun resubscribe(): Completable {
+    return Observable.fromIterable(subscriptions.sortedBy { resubscriptionPriority(it) })
+        .flatMapCompletable(
+            { channel: Channel ->
+              subscribe(channel, schedulerProvider.io())
+                  .doOnComplete { Timber.tag(TAG).d("resubscription successful to : %s", channel) }
+                  .doOnError { error: Throwable ->
+                    Timber.tag(TAG).e(error, "error on resubscription to %s", channel)
+                  }
+                  .onErrorComplete()
+            },
+            false,
+            MAX_CONCURRENT_RESUBSCRIPTIONS)
+  }
+
   private fun processIncomingMessages() {
+    // The broadcasts are requested as they are handled, so that a burst waits in the bounded
+    // buffers of the connections instead of piling up in the operators
     disposables.add(
-        Observable.merge( // Normal message received over the wire
-                multiConnection
-                    .observeMessage(), // Packets that could not be processed (maybe due to a
-                // reordering), this is merged into incoming message, with a delay of 5 seconds to
-                // give
-                // priority to new messages.
-                unprocessed.delay(
-                    REPROCESSING_DELAY.toLong(), TimeUnit.SECONDS, schedulerProvider.computation()))
+        Flowable.merge( // Normal message received over the wire
+                multiConnection.observeBroadcasts(),
+                // Packets whose missing dependency was just handled
+                released.toFlowable(BackpressureStrategy.BUFFER),
+                // Packets that could not be processed for another reason, this is merged into
+                // incoming message, with a delay of 5 seconds to give priority to new messages.
+                unprocessed
+                    .delay(
+                        REPROCESSING_DELAY.toLong(),
+                        TimeUnit.SECONDS,
+                        schedulerProvider.computation())
+                    .toFlowable(BackpressureStrategy.BUFFER))
             .filter { obj: GenericMessage -> obj is Broadcast } // Filter the Broadcast
             .map { obj: GenericMessage -> obj as Broadcast }
-            .subscribeOn(schedulerProvider.newThread())
+            // Verify the signatures concurrently on the computation pool, keeping the order of the
+            // broadcasts, and drop the invalid ones before they reach the handlers. The broadcasts
+            // already handled are dropped first, without decoding nor verifying them. Telling them
+            // apart may query the database, so it is done on the io pool.
+            .concatMapEager(
+                { broadcast: Broadcast ->
+                  Flowable.fromCallable { broadcast }
+                      .filter { !messageHandler.isMessageHandled(it.message.messageId) }
+                      .subscribeOn(schedulerProvider.io())
+                      .observeOn(schedulerProvider.computation())
+                      .filter { verify(it.message) }
+                },
+                verificationBatchSize,
+                verificationBatchSize)
+            // Broadcasts of a same channel are handled in order, each lane on its own thread, while
+            // channels of different lanes are handled concurrently
+            .groupBy { broadcast: Broadcast -> dispatchLane(broadcast.channel) }
+            .flatMapCompletable { lane: GroupedFlowable<Int, Broadcast> ->
+              lane
+                  .observeOn(schedulerProvider.io())
+                  .doOnNext { broadcast: Broadcast -> handleBroadcast(broadcast) }
+                  .ignoreElements()
+            }
             .subscribe(
-                { broadcast: Broadcast -> handleBroadcast(broadcast) },
+                { Timber.tag(TAG).d("Incoming message processing completed") },
                 { error: Throwable -> Timber.tag(TAG).e(error, "Error on processing message") }))
   }
 
+  private fun dispatchLane(channel: Channel): Int {
+    return (channel.hashCode() and Int.MAX_VALUE) % DISPATCH_LANES
+  }
+
   override fun catchup(channel: Channel): Completable {
+    return catchup(channel, schedulerProvider.mainThread())
+  }
+
+  /**
+   * @param channel the channel to catch up on
+   * @param observeOn scheduler the completion is delivered on
+   */
+  private fun catchup(channel: Channel, observeOn: Scheduler): Completable {
     Timber.tag(TAG).d("sending a catchup to the channel %s", channel)
 
     val catchup = Catchup(channel, requestCounter.incrementAndGet())
-    return request(catchup)
+    return pipeline
+        .request(catchup, schedulerProvider.io())
         .map { obj: Answer -> (obj as ResultMessages).messages }
+        .flatMapCompletable { messages: List<MessageGeneral> -> handleCatchup(channel, messages) }
         .doOnError { error: Throwable -> Timber.tag(TAG).e(error, "Error in catchup") }
+        .observeOn(observeOn)
+  }
+
+  /**
+   * Handle the messages of a catchup, skipping those before the catchup mark of the channel as they
+   * were already handled, and move the mark after the handled messages.
+   */
+  private fun handleCatchup(channel: Channel, messages: List<MessageGeneral>): Completable {
+    val known = messageHandler.getCatchupMark(channel)?.handledCount(messages) ?: 0
+    val delta = messages.subList(known, messages.size)
+    // Messages after the mark may have been handled already, when received in a broadcast
+    val handled = messageHandler.getHandledMessages(delta.map { it.messageId })
+    Timber.tag(TAG)
+        .d(
+            "Received catchup response on %s, %d messages of which %d already handled",
+            channel,
+            messages.size,
+            known)
+
+    val failed = HashSet<MessageID>()
+    return verifyMessages(delta.filterNot { handled.contains(it.messageId) })
         .doOnSuccess { msgs: List<MessageGeneral> ->
-          Timber.tag(TAG).d("Received catchup response on %s, retrieved : %s", channel, msgs)
+          Timber.tag(TAG).d("Handling catchup messages on %s : %s", channel, msgs)
+        }
+        .flatMapCompletable { verified: List<MessageGeneral> ->
+          handleMessages(verified, channel, failed)
+        }
+        .doOnComplete {
+          // The mark stops before the first message that could not be handled (e.g. waiting for a
+          // dependency), so that it is handled again by the next catchup
+          val firstFailed = delta.indexOfFirst { failed.contains(it.messageId) }
+          val handledCount = known + if (firstFailed == -1) delta.size else firstFailed
+          messageHandler.updateCatchupMark(channel, messages, handledCount)
         }
-        .doOnSuccess { messages: List<MessageGeneral> -> handleMessages(messages, channel) }
-        .ignoreElement()
   }
 
   override fun publish(keyPair: KeyPair, channel: Channel, data: Data): Completable {
     return publish(channel, MessageGeneral(keyPair, data, gson))
   }
 
+  /**
+   * The messages that are still meaningful when sent late, see [OutboxPolicy], are queued in a
+   * persistent outbox and the returned completable completes once they are queued. They are sent in
+   * order, as soon as the connection allows it, until a server accepts or rejects them.
+   *
+   * The other messages are published right away and the completable completes once a server
+   * accepted them.
+   */
   override fun publish(channel: Channel, msg: MessageGeneral): Completable {
+    if (!OutboxPolicy.isDeferrable(msg.data)) {
+      return sendPublish(channel, msg, schedulerProvider.mainThread())
+    }
+
+    Timber.tag(TAG).d("queuing a publish %s to the channel %s", msg.data.javaClass, channel)
+    return messageHandler
+        .addToOutbox(channel, msg)
+        .subscribeOn(schedulerProvider.io())
+        .doOnSuccess { queued: Boolean ->
+          if (queued) {
+            outboxTrigger.onNext(Unit)
+          } else {
+            Timber.tag(TAG).d("%s cancelled out with a queued message", msg.messageId)
+          }
+        }
+        .ignoreElement()
+        .observeOn(schedulerProvider.mainThread())
+  }
+
+  /**
+   * @param channel the channel to publish on
+   * @param msg the message to publish
+   * @param observeOn scheduler the completion is delivered on
+   */
+  private fun sendPublish(
+      channel: Channel,
+      msg: MessageGeneral,
+      observeOn: Scheduler
+  ): Completable {
     Timber.tag(TAG).d("sending a publish %s to the channel %s", msg.data.javaClass, channel)
 
     val publish = Publish(channel, requestCounter.incrementAndGet(), msg)
-    return request(publish).ignoreElement().doOnComplete {
+    return pipeline.request(publish, observeOn).ignoreElement().doOnComplete {
       Timber.tag(TAG).d("Successfully published %s", msg)
     }
   }
 
   override fun subscribe(channel: Channel): Completable {
+    return subscribe(channel, schedulerProvider.mainThread())
+  }
+
+  /**
+   * @param channel the channel to subscribe to
+   * @param observeOn scheduler the completion is delivered on
+   */
+  private fun subscribe(channel: Channel, observeOn: Scheduler): Completable {
     Timber.tag(TAG).d("sending a subscribe on the channel %s", channel)
 
     val subscribe = Subscribe(channel, requestCounter.incrementAndGet())
-    return request(subscribe) // This is used when reconnecting after a lost connection
+    return pipeline
+        .request(subscribe, schedulerProvider.io())
         .doOnSuccess {
           Timber.tag(TAG).d("Adding %s to subscriptions", channel)
           subscribedChannels.add(channel)
@@ -144,7 +323,7 @@ class LAONetworkManager(
         // Catchup already sent messages after the subscription to the channel is complete
         // This allows for the completion of the returned completable only when both subscribe
         // and catchup are completed
-        .flatMapCompletable { catchup(channel) }
+        .flatMapCompletable { catchup(channel, observeOn) }
         .doOnComplete {
           Timber.tag(TAG).d("Successfully subscribed and catchup to channel %s", channel)
         }
@@ -153,7 +332,8 @@ class LAONetworkManager(
   override fun unsubscribe(channel: Channel): Completable {
     Timber.tag(TAG).d("sending an unsubscribe on the channel %s", channel)
     val unsubscribe = Unsubscribe(channel, requestCounter.incrementAndGet())
-    return request(unsubscribe) // This is used when reconnecting after a lost connection
+    return pipeline
+        .request(unsubscribe, schedulerProvider.mainThread())
         .doOnSuccess {
           Timber.tag(TAG).d("Removing %s from subscriptions", channel)
           subscribedChannels.remove(channel)
@@ -177,6 +357,9 @@ class LAONetworkManager(
     disposables.clear()
     // Start the incoming message processing for all the new connections
     processIncomingMessages()
+    processAnswers()
+    processHeartbeats()
+    processOutbox()
     // Start the routine aimed at resubscribing to channels when the connection is lost
     resubscribeToChannelOnReconnection()
   }
@@ -184,13 +367,15 @@ class LAONetworkManager(
   private fun handleBroadcast(broadcast: Broadcast) {
     fun handleError(e: Exception) {
       Timber.tag(TAG).e(e, "Error while handling received message, will try to reprocess it later")
-      reprocessMessage(broadcast)
+      reprocessMessage(broadcast, e)
     }
 
     Timber.tag(TAG).d("handling broadcast msg : %s", broadcast)
 
     try {
       messageHandler.handleMessage(this, broadcast.channel, broadcast.message)
+      reprocessingCounter.remove(broadcast.message.messageId)
+      releaseDependents(broadcast.channel, broadcast.message)
     } catch (e: Exception) {
       when (e) {
         is DataHandlingException,
@@ -204,91 +389,365 @@ class LAONetworkManager(
     }
   }
 
-  private fun handleMessages(messages: List<MessageGeneral>, channel: Channel) {
-    fun handleError(e: Exception) {
-      Timber.tag(TAG).e(e, "Error while handling received catchup message")
+  /**
+   * Verify the signatures of a list of messages, in batches processed concurrently on the
+   * computation pool.
+   *
+   * @return the messages whose signatures are valid, in their original order
+   */
+  private fun verifyMessages(messages: List<MessageGeneral>): Single<List<MessageGeneral>> {
+    return Observable.fromIterable(messages)
+        .buffer(verificationBatchSize)
+        .concatMapEager { batch: List<MessageGeneral> ->
+          Observable.fromCallable { verifyBatch(batch) }
+              .subscribeOn(schedulerProvider.computation())
+        }
+        .flatMapIterable { batch: List<MessageGeneral> -> batch }
+        .toList()
+  }
+
+  /** @return the messages of the batch whose signatures are valid, in their original order */
+  private fun verifyBatch(messages: List<MessageGeneral>): List<MessageGeneral> {
+    val signatures = SignatureBatch()
+    // Number of signatures of each message, 0 if its data is invalid
+    val counts =
+        messages.map { message ->
+          try {
+            message.addSignaturesTo(signatures)
+          } catch (e: JsonParseException) {
+            Timber.tag(TAG).w(e, "Dropping message %s with invalid data", message.messageId)
+            0
+          }
+        }
+    val valid = signatures.verify()
+
+    var first = 0
+    return messages.filterIndexed { index, message ->
+      val count = counts[index]
+      val isValid = count > 0 && (first until first + count).all { valid[it] }
+      if (count > 0 && !isValid) {
+        Timber.tag(TAG).w("Dropping message %s with an invalid signature", message.messageId)
+      }
+      first += count
+      isValid
     }
+  }
 
-    for (msg in messages) {
-      try {
-        messageHandler.handleMessage(this, channel, msg)
-      } catch (e: Exception) {
-        when (e) {
-          is DataHandlingException,
-          is UnknownLaoException,
-          is UnknownRollCallException,
-          is NoRollCallException,
-          is UnknownElectionException,
-          is UnknownWitnessMessageException -> handleError(e)
-          else -> throw e
+  private fun verify(message: MessageGeneral): Boolean {
+    val valid =
+        try {
+          message.verify()
+        } catch (e: JsonParseException) {
+          // The data is decoded on first access, which may happen while verifying the message
+          Timber.tag(TAG).w(e, "Dropping message %s with invalid data", message.messageId)
+          return false
+        }
+    if (!valid) {
+      Timber.tag(TAG).w("Dropping message %s with an invalid signature", message.messageId)
+    }
+    return valid
+  }
+
+  /**
+   * Handle the messages retrieved by a catchup as a single batch.
+   *
+   * @param failed filled with the ids of the messages that could not be handled, including those
+   *   parked until their dependency is handled
+   * @return a completable committing the handled messages to the database
+   */
+  private fun handleMessages(
+      messages: List<MessageGeneral>,
+      channel: Channel,
+      failed: MutableSet<MessageID>
+  ): Completable {
+    return messageHandler
+        .handleMessages(this, channel, messages) { message: MessageGeneral, e: Exception ->
+          when (e) {
+            is DataHandlingException,
+            is UnknownLaoException,
+            is UnknownRollCallException,
+            is NoRollCallException,
+            is UnknownElectionException,
+            is UnknownWitnessMessageException -> {
+              Timber.tag(TAG).e(e, "Error while handling received catchup message")
+              failed.add(message.messageId)
+              // Catchups may be received out of order, so the message is handled again later
+              if (e is MissingDependencyException) {
+                reprocessMessage(Broadcast(channel, message), e)
+              }
+            }
+            else -> throw e
+          }
+        }
+        .doOnComplete {
+          messages
+              .filterNot { failed.contains(it.messageId) }
+              .forEach { releaseDependents(channel, it) }
         }
+  }
+
+  /**
+   * Release the messages parked because they depend on an object introduced by a message that was
+   * just handled.
+   *
+   * @param channel the channel on which the message was received
+   * @param message the message that was handled
+   */
+  private fun releaseDependents(channel: Channel, message: MessageGeneral) {
+    val keys = ArrayList<String>()
+    keys.add(message.messageId.encoded)
+    when (val data = message.data) {
+      is CreateLao -> keys.add(data.id)
+      is CreateRollCall -> keys.add(data.id)
+      is OpenRollCall -> keys.add(data.updateId)
+      is CloseRollCall -> {
+        keys.add(data.updateId)
+        keys.add(noClosedRollCallKey(channel.extractLaoId()))
       }
+      is ElectionSetup -> keys.add(data.id)
+      is CreateMeeting -> keys.add(data.id)
+    }
+
+    keys
+        .flatMap { parkingLot.release(it) }
+        .forEach {
+          Timber.tag(TAG).d("Releasing message %s", it.message.messageId)
+          released.onNext(it)
+        }
+  }
+
+  /**
+   * Compare the message ids announced by the heartbeats of the servers with the messages handled,
+   * and fetch the missing ones. This repairs the broadcasts missed on the subscribed channels
+   * without catching up on the whole channels.
+   */
+  private fun processHeartbeats() {
+    disposables.add(
+        multiConnection
+            .observeControlMessages()
+            .filter { obj: GenericMessage -> obj is Heartbeat }
+            .map { obj: GenericMessage -> obj as Heartbeat }
+            .observeOn(schedulerProvider.io())
+            .flatMapCompletable { heartbeat: Heartbeat -> synchronize(heartbeat) }
+            .subscribe(
+                { Timber.tag(TAG).d("Heartbeat processing completed") },
+                { error: Throwable -> Timber.tag(TAG).e(error, "Error on processing heartbeats") }))
+  }
+
+  private fun synchronize(heartbeat: Heartbeat): Completable {
+    val missing = ArrayList<Pair<Channel, MessageID>>()
+    heartbeat.messageIds
+        .filterKeys { subscribedChannels.contains(it) }
+        .forEach { (channel, messageIds) ->
+          messageHandler
+              .getUnknownMessages(messageIds)
+              // Skip the messages already being fetched after another heartbeat
+              .filter { fetchedMessages.add(it) }
+              .forEach { missing.add(channel to it) }
+        }
+
+    if (missing.isEmpty()) {
+      return Completable.complete()
     }
+    Timber.tag(TAG).d("Fetching %d messages announced by a heartbeat", missing.size)
+
+    return Observable.fromIterable(missing.chunked(MAX_FETCHED_MESSAGES))
+        .concatMapCompletable { batch: List<Pair<Channel, MessageID>> ->
+          fetchMessages(batch.groupBy({ it.first }, { it.second })).doFinally {
+            batch.forEach { fetchedMessages.remove(it.second) }
+          }
+        }
   }
 
-  private fun request(query: Query): Single<Answer> {
-    return multiConnection
-        .observeMessage() // Observe incoming messages
-        // Send the message upon subscription the the incoming messages. That way we are
-        // certain the reply will be processed and the message is only sent when an observer
-        // subscribes to the request answer.
-        .doOnSubscribe { multiConnection.sendMessage(query) }
-        .filter { obj: GenericMessage -> obj is Answer } // Filter for Answers
-        .map { obj: GenericMessage ->
-          obj as Answer
-        } // This specific request has an id, only let the related Answer pass
-        .filter { answer: Answer -> answer.id == query.requestId }
-        .doOnNext { answer: Answer ->
-          Timber.tag(TAG).d("request id: %s", answer.id)
-        } // Transform from an Observable to a Single
-        // This Means that we expect a result before the source is disposed and an error
-        // will be produced if no value is received.
-        .firstOrError() // If we receive an error, transform the flow to a Failure
-        .flatMap { answer: Answer ->
-          if (answer is Error) {
-            return@flatMap Single.error<Answer>(JsonRPCErrorException(answer))
+  /**
+   * Retrieve messages given their ids and handle them.
+   *
+   * @param messageIds ids of the messages to fetch, by channel
+   */
+  private fun fetchMessages(messageIds: Map<Channel, List<MessageID>>): Completable {
+    val query = GetMessagesById(messageIds, requestCounter.incrementAndGet())
+    return pipeline
+        .request(query, schedulerProvider.io())
+        .map { obj: Answer -> (obj as? ResultMessagesByChannel)?.messages ?: emptyMap() }
+        .flatMapCompletable { messages: Map<Channel, List<MessageGeneral>> ->
+          // Only the channels that were asked for are handled
+          Observable.fromIterable(messages.filterKeys { messageIds.containsKey(it) }.entries)
+              .concatMapCompletable { (channel, channelMessages) ->
+                verifyMessages(channelMessages).flatMapCompletable { verified ->
+                  handleMessages(verified, channel, HashSet())
+                }
+              }
+        }
+        .doOnError { error: Throwable ->
+          Timber.tag(TAG).e(error, "Error fetching the messages %s", messageIds)
+        }
+        // The messages are announced again by the next heartbeats
+        .onErrorComplete()
+  }
+
+  private fun processOutbox() {
+    disposables.add(
+        outboxTrigger
+            // Draining the outbox once covers all the signals received in the meantime
+            .toFlowable(BackpressureStrategy.LATEST)
+            .concatMapCompletable({ drainOutbox() }, 1)
+            .subscribe(
+                { Timber.tag(TAG).d("Outbox processing completed") },
+                { error: Throwable -> Timber.tag(TAG).e(error, "Error on processing the outbox") }))
+  }
+
+  /**
+   * Publish the queued messages in order, until the outbox is empty or a publish fails for a reason
+   * that is likely to affect the next ones as well, such as the connection being lost.
+   *
+   * Nothing is sent while no server is connected, the outbox is drained again once a connection
+   * opens.
+   */
+  private fun drainOutbox(): Completable {
+    return Completable.defer {
+          val queued = if (multiConnection.isConnected) messageHandler.getOutbox() else emptyList()
+          if (queued.isEmpty()) {
+            Completable.complete()
           } else {
-            return@flatMap Single.just<Answer>(answer)
+            Observable.fromIterable(queued)
+                .concatMapCompletable { entry: OutboxEntity -> publishQueued(entry) }
+                // Messages may have been queued in the meantime
+                .andThen(drainOutbox())
           }
         }
         .subscribeOn(schedulerProvider.io())
-        .observeOn(
-            schedulerProvider
-                .mainThread()) // Add a timeout to automatically dispose of the flow and end with a
-        // failure
-        .timeout(REPROCESSING_DELAY.toLong(), TimeUnit.SECONDS)
-        .cache()
+        .doOnError { error: Throwable ->
+          Timber.tag(TAG).d(error, "Stopped sending the queued messages")
+        }
+        .onErrorComplete()
+  }
+
+  /**
+   * Publish a queued message, unless it was superseded since the outbox was read. While it is being
+   * sent, the messages queued do not cancel out with it, as a server may accept it anyway.
+   */
+  private fun publishQueued(entry: OutboxEntity): Completable {
+    return Completable.defer {
+      if (!messageHandler.startSendingFromOutbox(entry.messageId)) {
+        Timber.tag(TAG).d("Queued message %s was superseded", entry.messageId)
+        Completable.complete()
+      } else {
+        sendQueued(entry).doFinally { messageHandler.stopSendingFromOutbox(entry.messageId) }
+      }
+    }
+  }
+
+  /**
+   * Publish a queued message and remove it from the outbox once a server accepted it. The message
+   * is signed, so sending it again after a lost answer is harmless: it keeps the same id.
+   */
+  private fun sendQueued(entry: OutboxEntity): Completable {
+    return sendPublish(Channel.fromString(entry.channel), entry.message, schedulerProvider.io())
+        .andThen(Completable.defer { messageHandler.removeFromOutbox(entry.messageId) })
+        .onErrorResumeNext { error: Throwable ->
+          val attempts = entry.attempts + 1
+          when {
+            // The server rejected the message, sending it again would not help
+            error is JsonRPCErrorException -> {
+              Timber.tag(TAG).e(error, "Queued message %s was rejected", entry.messageId)
+              messageHandler.removeFromOutbox(entry.messageId)
+            }
+            // Only the attempts made while connected count, the message waits for the connection
+            !multiConnection.isConnected -> Completable.error(error)
+            attempts >= MAX_PUBLISH_ATTEMPTS -> {
+              Timber.tag(TAG).e(error, "Giving up on queued message %s", entry.messageId)
+              messageHandler.removeFromOutbox(entry.messageId)
+            }
+            else ->
+                messageHandler
+                    .setOutboxAttempts(entry.messageId, attempts)
+                    .andThen(Completable.error(error))
+          }
+        }
+  }
+
+  /**
+   * Correlate the answers received with the pending requests. A single subscription serves every
+   * request, so that the cost of an answer does not depend on the number of requests in flight.
+   */
+  private fun processAnswers() {
+    disposables.add(
+        multiConnection
+            .observeControlMessages()
+            .filter { obj: GenericMessage -> obj is Answer }
+            .map { obj: GenericMessage -> obj as Answer }
+            .subscribe(
+                { answer: Answer -> pipeline.onAnswer(answer) },
+                { error: Throwable -> Timber.tag(TAG).e(error, "Error on processing answers") }))
   }
 
   /**
    * This function distinguishes an unrecoverable failure according to the number of reprocessing
    * attempts.
    *
+   * Messages missing a known dependency are parked until it is handled, the others are retried
+   * after a delay.
+   *
    * @param message Message failed to be handled to be reprocessed
+   * @param error the reason why the message could not be handled
    */
-  private fun reprocessMessage(message: GenericMessage) {
+  private fun reprocessMessage(message: Broadcast, error: Exception) {
+    val messageId = message.message.messageId
     // Check that the message hasn't already reprocessed more than the threshold of dropout
-    val count = reprocessingCounter.getOrDefault(message, 0)
-    if (count < MAX_REPROCESSING) {
-      // Increase the counter and reprocess
-      reprocessingCounter[message] = count + 1
-      unprocessed.onNext(message)
-    } else {
+    val count = reprocessingCounter.getOrDefault(messageId, 0)
+    if (count >= MAX_REPROCESSING) {
       Timber.tag(TAG).d("Message %s has been reprocessed too many times, it's now dropped", message)
       // Discard the message
-      reprocessingCounter.remove(message)
+      reprocessingCounter.remove(messageId)
+      return
+    }
+
+    // Increase the counter and reprocess
+    reprocessingCounter[messageId] = count + 1
+    val dependencyKey = (error as? MissingDependencyException)?.dependencyKey
+    if (dependencyKey == null) {
+      unprocessed.onNext(message)
+      return
     }
+
+    // Park the message until its dependency is handled. If the dependency is not handled in time
+    // (or was handled while the message was being parked), it is retried as any other message.
+    parkingLot.park(dependencyKey, message)
+    parkingTimers.add(
+        Completable.timer(
+                REPROCESSING_DELAY.toLong(), TimeUnit.SECONDS, schedulerProvider.computation())
+            .subscribe {
+              if (parkingLot.remove(dependencyKey, message)) {
+                released.onNext(message)
+              }
+            })
   }
 
   override fun dispose() {
     multiConnection.close()
     disposables.dispose()
+    parkingTimers.dispose()
   }
 
   override fun isDisposed(): Boolean {
     return disposables.isDisposed
   }
 
+  /** @return the gauges of the requests sent on the connection */
+  fun requestStats(): RequestPipeline.Stats {
+    return pipeline.stats()
+  }
+
+  /** @return the metrics of the connection, see [TransportMetrics] */
+  fun networkStats(): TransportMetrics.NetworkStats {
+    return TransportMetrics.NetworkStats(
+        multiConnection.peerLinkStats(),
+        multiConnection.inboundStats(),
+        pipeline.stats(),
+        pipeline.roundTripStats(),
+        subscriptions.size)
+  }
+
   @VisibleForTesting
   fun testUnprocessed(): TestObserver<GenericMessage?> {
     return unprocessed.test()
@@ -300,5 +759,43 @@ class LAONetworkManager(
     /** Constants to tune the reprocessing of unhandled messages */
     const val MAX_REPROCESSING = 5
     const val REPROCESSING_DELAY = 5
+
+    /** Number of threads on which the channels are spread to handle their broadcasts */
+    private val DISPATCH_LANES = Runtime.getRuntime().availableProcessors().coerceAtLeast(2)
+
+    /** Default number of messages whose signatures are verified concurrently */
+    const val VERIFICATION_BATCH_SIZE = 64
+
+    /** Maximum number of messages fetched by a single get_messages_by_id */
+    private const val MAX_FETCHED_MESSAGES = 100
+
+    /** Number of times a queued message is sent before giving up on it */
+    const val MAX_PUBLISH_ATTEMPTS = 5
+
+    /** Number of channels resubscribed to concurrently after a reconnection */
+    private const val MAX_CONCURRENT_RESUBSCRIPTIONS = 4
+
+    /** Sub-channels of a LAO that are not elections */
+    private val LAO_SUB_CHANNELS = setOf("social", "coin", "consensus")
+
+    /**
+     * The LAO channel is resubscribed to first as the others depend on it, then the elections that
+     * need to be up to date to vote, then the other channels and finally the social media.
+     */
+    private fun resubscriptionPriority(channel: Channel): Int {
+      if (channel.isLaoChannel) {
+        return 0
+      }
+      if (channel == Channel.ROOT) {
+        return 2
+      }
+      // The second segment is either an election id or the name of a LAO sub-channel
+      val segment = channel.extractElectionId()
+      return when {
+        segment == "social" -> 3
+        channel.isElectionChannel && !LAO_SUB_CHANNELS.contains(segment) -> 1
+        else -> 2
+      }
+    }
   }
 }
@@ -0,0 +1,81 @@
+package com.github.dedis.popstellar.repository.remote
+
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * Distribution of durations, counted in fixed buckets so that recording a sample does not allocate
+ * nor lock.
+ *
+ * The buckets are bounded by [BOUNDS_MILLIS], the last one counting all the longer samples.
+ */
+class LatencyHistogram {
+  private val counts = AtomicLongArray(BOUNDS_MILLIS.size + 1)
+  private val totalNanos = AtomicLong()
+
+  /** @param nanos duration to record, in nanoseconds */
+  fun record(nanos: Long) {
+    val millis = TimeUnit.NANOSECONDS.toMillis(nanos)
+    var bucket = BOUNDS_MILLIS.indexOfFirst { millis < it }
+    if (bucket == -1) {
+      bucket = BOUNDS_MILLIS.size
+    }
+    counts.incrementAndGet(bucket)
+    totalNanos.addAndGet(nanos)
+  }
+
+  /** @return the current distribution */
+  fun snapshot(): Snapshot {
+    return Snapshot(LongArray(counts.length()) { counts.get(it) }.toList(), totalNanos.get())
+  }
+
+  /**
+   * Distribution of the recorded durations.
+   *
+   * @param counts number of samples in each bucket, see [BOUNDS_MILLIS]
+   * @param totalNanos sum of the samples, in nanoseconds
+   */
+  data class Snapshot(val counts: List<Long>, val totalNanos: Long) {
+    /** Number of samples */
+    val count: Long
+      get() = counts.sum()
+
+    /** Average of the samples in milliseconds, 0 if there is none */
+    val meanMillis: Double
+      get() = if (count == 0L) 0.0 else totalNanos.toDouble() / count / NANOS_PER_MILLI
+
+    /**
+     * @param percentile percentile to compute, between 0 and 100
+     * @return the upper bound in milliseconds of the bucket holding the percentile, 0 if there is
+     *   no sample, or [Long.MAX_VALUE] if it is in the last bucket
+     */
+    fun percentileMillis(percentile: Double): Long {
+      val threshold = Math.ceil(count * percentile / 100)
+      var seen = 0L
+      for ((bucket, bucketCount) in counts.withIndex()) {
+        seen += bucketCount
+        if (seen > 0 && seen >= threshold) {
+          return BOUNDS_MILLIS.getOrElse(bucket) { Long.MAX_VALUE }
+        }
+      }
+      return 0
+    }
+
+    override fun toString(): String {
+      return String.format(
+          "n=%d mean=%.1fms p50<%dms p99<%dms",
+          count,
+          meanMillis,
+          percentileMillis(50.0),
+          percentileMillis(99.0))
+    }
+  }
+
+  companion object {
+    /** Upper bounds of the buckets, in milliseconds */
+    val BOUNDS_MILLIS = longArrayOf(1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000)
+
+    private val NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1).toDouble()
+  }
+}
@@ -0,0 +1,54 @@
+package com.github.dedis.popstellar.repository.remote
+
+import com.github.dedis.popstellar.model.network.method.Broadcast
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Broadcasts that could not be handled because they depend on an object unknown to the app. They
+ * are parked under the key of that dependency until the message introducing it is handled.
+ *
+ * See [com.github.dedis.popstellar.utility.error.MissingDependencyException]
+ */
+class MessageParkingLot {
+  private val parked = ConcurrentHashMap<String, MutableList<Broadcast>>()
+
+  /** Number of broadcasts currently parked */
+  val size: Int
+    get() = parked.values.sumOf { it.size }
+
+  /**
+   * Park a broadcast until its dependency is released.
+   *
+   * @param dependencyKey key of the missing dependency
+   * @param broadcast the broadcast to park
+   */
+  fun park(dependencyKey: String, broadcast: Broadcast) {
+    parked.compute(dependencyKey) { _, broadcasts ->
+      (broadcasts ?: ArrayList()).apply { add(broadcast) }
+    }
+  }
+
+  /**
+   * Release the broadcasts waiting for a dependency.
+   *
+   * @param dependencyKey key of the dependency that was handled
+   * @return the released broadcasts, in the order they were parked
+   */
+  fun release(dependencyKey: String): List<Broadcast> {
+    return parked.remove(dependencyKey) ?: emptyList()
+  }
+
+  /**
+   * Remove a broadcast that waited too long for its dependency.
+   *
+   * @return true if the broadcast was still parked, false if it was released in the meantime
+   */
+  fun remove(dependencyKey: String, broadcast: Broadcast): Boolean {
+    var removed = false
+    parked.computeIfPresent(dependencyKey) { _, broadcasts ->
+      removed = broadcasts.remove(broadcast)
+      broadcasts.ifEmpty { null }
+    }
+    return removed
+  }
+}
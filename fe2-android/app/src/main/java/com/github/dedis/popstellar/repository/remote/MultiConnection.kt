@@ -1,32 +1,91 @@
 package com.github.dedis.popstellar.repository.remote
 
 import com.github.dedis.popstellar.model.network.GenericMessage
+import com.github.dedis.popstellar.model.network.answer.Answer
+import com.github.dedis.popstellar.model.network.answer.Error
+import com.github.dedis.popstellar.model.network.method.Broadcast
+import com.github.dedis.popstellar.model.network.method.Catchup
+import com.github.dedis.popstellar.model.network.method.GetMessagesById
 import com.github.dedis.popstellar.model.network.method.Message
+import com.github.dedis.popstellar.model.network.method.Publish
+import com.github.dedis.popstellar.model.network.method.Query
 import com.github.dedis.popstellar.model.objects.PeerAddress
+import com.github.dedis.popstellar.model.objects.security.MessageID
 import com.tinder.scarlet.WebSocket
+import io.reactivex.Flowable
 import io.reactivex.Observable
 import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
 import java.util.function.Consumer
 import java.util.function.Function
 import java.util.stream.Collectors
+import timber.log.Timber
 
 /**
  * This class extends Connection to represent a set of Connections to multiple servers.
  *
- * The superclass works as main connection to the first server, the others are instantiated in the
- * connectionMap.
+ * The superclass works as main connection to the first server, which is kept in the connectionMap
+ * along with the connections to the other servers.
+ *
+ * The messages of all the servers are merged, and a broadcast received from several servers is
+ * only delivered once.
+ *
+ * Queries are routed according to the health of the servers, see [PeerRouter]: a read, that is a
+ * catchup or a get_messages_by_id, is sent to the best server only and retried on the next one if
+ * it fails, a publish is sent to the [publishQuorum] best servers, the other queries are sent to
+ * all of them so that every server keeps delivering the broadcasts of the subscribed channels.
  */
-class MultiConnection(
+class MultiConnection
+private constructor(
     /** Caller method for the connectionFactory to instantiate connections */
     private val connectionProvider: Function<String, Connection>,
-    url: String
-) :
-    Connection(
-        // Instantiate the first connection to the main server
-        connectionProvider.apply(url)) {
-  /** Map a PeerAddress (url for now) to its connection */
+    url: String,
+    mainConnection: Connection,
+    /** Number of servers a publish is sent to */
+    private val publishQuorum: Int
+) : Connection(mainConnection) {
+
+  @JvmOverloads
+  constructor(
+      connectionProvider: Function<String, Connection>,
+      url: String,
+      publishQuorum: Int = DEFAULT_PUBLISH_QUORUM
+  ) : this(
+      connectionProvider,
+      url,
+      // Instantiate the first connection to the main server
+      connectionProvider.apply(url),
+      publishQuorum)
+
+  /** Map a PeerAddress (url for now) to its connection, including the main server */
   private val connectionMap: ConcurrentHashMap<PeerAddress, Connection> = ConcurrentHashMap()
 
+  private val mainPeer = PeerAddress(url)
+
+  private val router = PeerRouter()
+
+  /** Reads and publishes waiting for an answer, by request id */
+  private val routedQueries = ConcurrentHashMap<Int, RoutedQuery>()
+
+  /** Ids of the broadcasts delivered last, used to drop the copies sent by the other servers */
+  private val recentBroadcasts = RecentMessageIds(DEDUPLICATION_WINDOW)
+
+  private val peerCounters = ConcurrentHashMap<PeerAddress, PeerCounters>()
+
+  /**
+   * Merged streams of all the connections, shared so that each frame is counted only once. The
+   * broadcasts and the other messages are kept apart, see [Connection].
+   */
+  @Volatile private var mergedBroadcasts: Flowable<GenericMessage>
+  @Volatile private var mergedControlMessages: Flowable<GenericMessage>
+
+  init {
+    addPeer(mainPeer, mainConnection)
+    mergedBroadcasts = buildMessages { obj: Connection -> obj.observeBroadcasts() }
+    mergedControlMessages = buildMessages { obj: Connection -> obj.observeControlMessages() }
+  }
+
   /**
    * Function called upon the GreetLao, it extends the connection for all the new peers.
    *
@@ -38,7 +97,7 @@ class MultiConnection(
     val newPeers =
         peerAddressList
             .stream()
-            .filter { peer: PeerAddress -> !connectionMap.containsKey(peer) }
+            .filter { peer: PeerAddress -> peer != mainPeer && !connectionMap.containsKey(peer) }
             .collect(Collectors.toList())
 
     if (newPeers.isEmpty()) {
@@ -46,25 +105,32 @@ class MultiConnection(
     }
 
     newPeers.forEach(
-        Consumer { p: PeerAddress -> connectionMap[p] = connectionProvider.apply(p.address) })
+        Consumer { p: PeerAddress -> addPeer(p, connectionProvider.apply(p.address)) })
+    mergedBroadcasts = buildMessages { obj: Connection -> obj.observeBroadcasts() }
+    mergedControlMessages = buildMessages { obj: Connection -> obj.observeControlMessages() }
     return true
   }
 
   /**
    * Function to observe messages on the connections.
    *
-   * @return an Observable of GenericMessage received on the connections
+   * The connections are observed concurrently. Only the peers connected when subscribing are
+   * observed, so the caller has to subscribe again after [connectToPeers] extended the connection.
+   *
+   * @return a Flowable of GenericMessage received on the connections
    */
-  override fun observeMessage(): Observable<GenericMessage> {
-    return super.observeMessage()
-        .concatWith(
-            connectionMap.values
-                .stream()
-                .map { obj: Connection -> obj.observeMessage() }
-                .reduce { obj: Observable<GenericMessage>, other: Observable<GenericMessage> ->
-                  obj.concatWith(other)
-                }
-                .orElse(Observable.empty()))
+  override fun observeMessage(): Flowable<GenericMessage> {
+    return Flowable.merge(mergedBroadcasts, mergedControlMessages)
+  }
+
+  /** Same as [observeMessage], for the broadcasts only */
+  override fun observeBroadcasts(): Flowable<GenericMessage> {
+    return mergedBroadcasts
+  }
+
+  /** Same as [observeMessage], for the messages that are not broadcasts */
+  override fun observeControlMessages(): Flowable<GenericMessage> {
+    return mergedControlMessages
   }
 
   /**
@@ -73,24 +139,197 @@ class MultiConnection(
    * @return an Observable of Events happening on the connection
    */
   override fun observeConnectionEvents(): Observable<WebSocket.Event> {
-    return super.observeConnectionEvents()
-        .concatWith(
-            connectionMap.values
-                .stream()
-                .map { obj: Connection -> obj.observeConnectionEvents() }
-                .reduce { obj: Observable<WebSocket.Event>, other: Observable<WebSocket.Event> ->
-                  obj.concatWith(other)
-                }
-                .orElse(Observable.empty()))
+    return Observable.merge(
+        connectionMap.values.map { obj: Connection -> obj.observeConnectionEvents() })
   }
 
+  /** Whether the websocket of at least one of the servers is currently open */
+  override val isConnected: Boolean
+    get() = connectionMap.values.any { obj: Connection -> obj.isConnected }
+
   override fun sendMessage(msg: Message) {
-    super.sendMessage(msg)
-    connectionMap.values.forEach(Consumer { peer: Connection -> peer.sendMessage(msg) })
+    when (msg) {
+      is Catchup,
+      is GetMessagesById -> route(msg as Query, listOfNotNull(router.best()))
+      is Publish -> route(msg, router.best(publishQuorum))
+      else -> connectionMap.keys.forEach(Consumer { peer: PeerAddress -> send(peer, msg) })
+    }
+  }
+
+  /** @return the counters of the buffers of incoming messages, summed over all the connections */
+  override fun inboundStats(): Connection.InboundStats {
+    return connectionMap.values
+        .map { obj: Connection -> obj.inboundStats() }
+        .fold(Connection.InboundStats(0, 0), Connection.InboundStats::plus)
   }
 
   override fun close() {
-    super.close()
     connectionMap.values.forEach(Consumer { obj: Connection -> obj.close() })
   }
+
+  /** @return the delivery counters of each peer that sent at least one message */
+  fun deliveryStats(): Map<PeerAddress, DeliveryStats> {
+    return peerCounters.mapValues { (_, counters) ->
+      DeliveryStats(counters.received.get(), counters.duplicates.get())
+    }
+  }
+
+  /** @return the counters of the websocket of each peer */
+  fun peerLinkStats(): Map<PeerAddress, Connection.LinkStats> {
+    return connectionMap.mapValues { (_, connection) -> connection.linkStats() }
+  }
+
+  /** @return the routing counters of each peer */
+  fun routingStats(): Map<PeerAddress, PeerRouter.RoutingStats> {
+    return router.stats()
+  }
+
+  private fun addPeer(peer: PeerAddress, connection: Connection) {
+    connectionMap[peer] = connection
+    router.addPeer(peer) { connection.isConnected }
+  }
+
+  private fun route(query: Query, targets: List<PeerAddress>) {
+    // Forget the queries that were never answered
+    val now = router.now()
+    routedQueries.values.removeIf { it.isExpired(now) }
+
+    routedQueries[query.requestId] = RoutedQuery(query, targets, now)
+    targets.forEach { send(it, query) }
+  }
+
+  private fun send(peer: PeerAddress, msg: Message) {
+    if (msg is Query) {
+      router.onSent(peer, msg.requestId)
+    }
+    connectionMap[peer]?.sendMessage(msg)
+  }
+
+  private fun buildMessages(
+      select: (Connection) -> Flowable<GenericMessage>
+  ): Flowable<GenericMessage> {
+    val streams =
+        connectionMap.entries.map { (peer, connection) ->
+          select(connection).filter { msg: GenericMessage -> accept(peer, msg) }
+        }
+    return Flowable.merge(streams).share()
+  }
+
+  /** @return true if the message received from the peer should be delivered to the subscribers */
+  private fun accept(peer: PeerAddress, msg: GenericMessage): Boolean {
+    val counters = peerCounters.computeIfAbsent(peer) { PeerCounters() }
+    counters.received.incrementAndGet()
+    return when (msg) {
+      is Broadcast -> {
+        if (!recentBroadcasts.add(msg.message.messageId)) {
+          counters.duplicates.incrementAndGet()
+          Timber.tag(TAG).d("Dropping broadcast %s already received", msg.message.messageId)
+          false
+        } else {
+          true
+        }
+      }
+      is Answer -> {
+        router.onAnswer(peer, msg)
+        acceptAnswer(peer, msg)
+      }
+      else -> true
+    }
+  }
+
+  /**
+   * An error answer to a routed query is only delivered once all the servers it was sent to
+   * failed, and a failed read is first retried on the next best server.
+   */
+  private fun acceptAnswer(peer: PeerAddress, answer: Answer): Boolean {
+    val routed = routedQueries[answer.id] ?: return true
+    if (answer !is Error) {
+      routedQueries.remove(answer.id)
+      return true
+    }
+
+    val retry = routed.onError(peer)
+    if (retry != null) {
+      Timber.tag(TAG).d("Query %d failed on %s, retrying on %s", answer.id, peer, retry)
+      send(retry, routed.query)
+      return false
+    }
+    if (routed.isPending()) {
+      return false
+    }
+    routedQueries.remove(answer.id)
+    return true
+  }
+
+  private inner class RoutedQuery(
+      val query: Query,
+      targets: List<PeerAddress>,
+      private val sentAt: Long
+  ) {
+    private val tried = HashSet(targets)
+    private val awaiting = HashSet(targets)
+
+    fun isExpired(now: Long): Boolean {
+      return now - sentAt > TimeUnit.MILLISECONDS.toNanos(PeerRouter.ANSWER_TIMEOUT_MILLIS)
+    }
+
+    /** @return the peer the query should be retried on, if any */
+    @Synchronized
+    fun onError(peer: PeerAddress): PeerAddress? {
+      if (!awaiting.remove(peer) || (query !is Catchup && query !is GetMessagesById)) {
+        return null
+      }
+      val next = router.best(tried) ?: return null
+      tried.add(next)
+      awaiting.add(next)
+      return next
+    }
+
+    @Synchronized
+    fun isPending(): Boolean {
+      return awaiting.isNotEmpty()
+    }
+  }
+
+  /**
+   * Delivery counters of a peer.
+   *
+   * @param received number of messages received from the peer
+   * @param duplicates number of broadcasts dropped as another server delivered them first
+   */
+  data class DeliveryStats(val received: Long, val duplicates: Long) {
+    /** Number of messages of the peer that were handed to the subscribers */
+    val delivered: Long
+      get() = received - duplicates
+  }
+
+  private class PeerCounters {
+    val received = AtomicLong()
+    val duplicates = AtomicLong()
+  }
+
+  /** Bounded set of message ids, forgetting the oldest ids first */
+  private class RecentMessageIds(private val capacity: Int) {
+    private val ids =
+        object : LinkedHashMap<MessageID, Unit>() {
+          override fun removeEldestEntry(eldest: MutableMap.MutableEntry<MessageID, Unit>?) =
+              size > capacity
+        }
+
+    /** @return true if the id was not already in the set */
+    @Synchronized
+    fun add(messageID: MessageID): Boolean {
+      return ids.put(messageID, Unit) == null
+    }
+  }
+
+  companion object {
+    private val TAG = MultiConnection::class.java.simpleName
+
+    /** Number of broadcast ids remembered to detect the copies sent by the other servers */
+    private const val DEDUPLICATION_WINDOW = 1024
+
+    /** Default number of servers a publish is sent to */
+    const val DEFAULT_PUBLISH_QUORUM = 2
+  }
 }
@@ -0,0 +1,81 @@
+package com.github.dedis.popstellar.repository.remote
+
+import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.network.method.message.data.Data
+import com.github.dedis.popstellar.model.network.method.message.data.digitalcash.PostTransactionCoin
+import com.github.dedis.popstellar.model.network.method.message.data.election.CastVote
+import com.github.dedis.popstellar.model.network.method.message.data.socialmedia.AddChirp
+import com.github.dedis.popstellar.model.network.method.message.data.socialmedia.AddReaction
+import com.github.dedis.popstellar.model.network.method.message.data.socialmedia.DeleteChirp
+import com.github.dedis.popstellar.model.network.method.message.data.socialmedia.DeleteReaction
+import com.github.dedis.popstellar.model.objects.security.MessageID
+
+/**
+ * Rules of the outbox, which keeps the publishes of the user until a server accepted them.
+ *
+ * Only the messages that are still meaningful when sent late are queued: chirps, reactions, votes
+ * and coin transactions. A queued message made useless by a newer one is dropped before being
+ * sent, such as a reaction deleted before it was published.
+ */
+object OutboxPolicy {
+
+  /**
+   * @param data content of a message to publish
+   * @return true if the message can be queued until a server accepts it, false if it should be
+   *   published right away or fail
+   */
+  @JvmStatic
+  fun isDeferrable(data: Data): Boolean {
+    return when (data) {
+      is AddChirp,
+      is DeleteChirp,
+      is AddReaction,
+      is DeleteReaction,
+      is CastVote,
+      is PostTransactionCoin -> true
+      else -> false
+    }
+  }
+
+  /**
+   * @param pending the messages already queued, in order
+   * @param message the message being queued
+   * @return the ids of the messages that do not need to be sent anymore once the message is
+   *   queued, which may include the message itself
+   */
+  @JvmStatic
+  fun superseded(pending: List<MessageGeneral>, message: MessageGeneral): Set<MessageID> {
+    val superseded = HashSet<MessageID>()
+    when (val data = message.data) {
+      // Deleting a reaction or a chirp that was never sent cancels both messages
+      is DeleteReaction -> {
+        if (pending.any { it.messageId == data.reactionID && it.data is AddReaction }) {
+          superseded.add(data.reactionID)
+          superseded.add(message.messageId)
+        }
+      }
+      is DeleteChirp -> {
+        if (pending.any { it.messageId == data.chirpId && it.data is AddChirp }) {
+          superseded.add(data.chirpId)
+          superseded.add(message.messageId)
+          // The reactions to the chirp would be rejected anyway
+          pending
+              .filter { (it.data as? AddReaction)?.chirpId == data.chirpId }
+              .forEach { superseded.add(it.messageId) }
+        }
+      }
+      // Only the last vote of a voter in an election counts
+      is CastVote -> {
+        pending
+            .filter {
+              it.sender == message.sender && (it.data as? CastVote)?.electionId == data.electionId
+            }
+            .forEach { superseded.add(it.messageId) }
+      }
+      else -> {
+        /* The other messages are never superseded */
+      }
+    }
+    return superseded
+  }
+}
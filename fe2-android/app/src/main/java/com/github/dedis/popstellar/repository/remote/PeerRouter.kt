@@ -0,0 +1,164 @@
+package com.github.dedis.popstellar.repository.remote
+
+import com.github.dedis.popstellar.model.network.answer.Answer
+import com.github.dedis.popstellar.model.network.answer.Error
+import com.github.dedis.popstellar.model.objects.PeerAddress
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.TimeUnit
+
+/**
+ * Keeps track of the round-trip time and the error rate of the queries sent to each peer, to pick
+ * the peers a query should be routed to.
+ *
+ * The peers are ranked by health first: a peer is healthy if its connection is open and most of
+ * its recent queries succeeded. Healthy peers are then ranked by their round-trip time, the peers
+ * that were never measured coming first so that they get measured. Queries left unanswered for
+ * more than [ANSWER_TIMEOUT_MILLIS] count as errors.
+ *
+ * @param clock source of the current time, in nanoseconds
+ */
+class PeerRouter(private val clock: () -> Long = System::nanoTime) {
+  /** Peers in the order they were added, which breaks the ties between equally ranked peers */
+  private val peers = CopyOnWriteArrayList<PeerAddress>()
+  private val health = ConcurrentHashMap<PeerAddress, PeerHealth>()
+
+  /** @return the current time, in nanoseconds */
+  fun now(): Long {
+    return clock()
+  }
+
+  /**
+   * Add a peer queries can be routed to.
+   *
+   * @param peer address of the peer
+   * @param isConnected tells whether the connection to the peer is open
+   */
+  fun addPeer(peer: PeerAddress, isConnected: () -> Boolean) {
+    if (health.putIfAbsent(peer, PeerHealth(isConnected)) == null) {
+      peers.add(peer)
+    }
+  }
+
+  /**
+   * Record that a query was sent to a peer.
+   *
+   * @param peer address of the peer
+   * @param requestId id of the query
+   */
+  fun onSent(peer: PeerAddress, requestId: Int) {
+    health[peer]?.onSent(requestId, clock())
+  }
+
+  /**
+   * Record the answer of a peer to one of its queries.
+   *
+   * @param peer address of the peer
+   * @param answer the answer received from the peer
+   */
+  fun onAnswer(peer: PeerAddress, answer: Answer) {
+    health[peer]?.onAnswer(answer.id, answer is Error, clock())
+  }
+
+  /**
+   * @param exclude peers that should not be picked
+   * @return the best ranked peer not excluded, or null if there is none
+   */
+  fun best(exclude: Collection<PeerAddress> = emptySet()): PeerAddress? {
+    return rank().firstOrNull { !exclude.contains(it) }
+  }
+
+  /**
+   * @param count number of peers to pick
+   * @return the [count] best ranked peers, or all of them if there are fewer
+   */
+  fun best(count: Int): List<PeerAddress> {
+    return rank().take(count)
+  }
+
+  /** @return the routing counters of each peer */
+  fun stats(): Map<PeerAddress, RoutingStats> {
+    val now = clock()
+    return health.mapValues { (_, peerHealth) -> peerHealth.stats(now) }
+  }
+
+  private fun rank(): List<PeerAddress> {
+    // Take a snapshot first, as the counters change while sorting
+    val now = clock()
+    val snapshot = peers.associateWith { health.getValue(it).stats(now) }
+    return peers.sortedWith(
+        compareBy(
+            { !snapshot.getValue(it).isHealthy },
+            { snapshot.getValue(it).roundTripMillis }))
+  }
+
+  /**
+   * Routing counters of a peer.
+   *
+   * @param roundTripMillis moving average of the round-trip time, 0 if it was never measured
+   * @param errorRate moving average of the ratio of queries that failed or were not answered
+   * @param connected whether the connection to the peer is open
+   */
+  data class RoutingStats(
+      val roundTripMillis: Double,
+      val errorRate: Double,
+      val connected: Boolean
+  ) {
+    val isHealthy: Boolean
+      get() = connected && errorRate < MAX_ERROR_RATE
+  }
+
+  private class PeerHealth(private val isConnected: () -> Boolean) {
+    /** Time at which each unanswered query was sent */
+    private val sent = HashMap<Int, Long>()
+    private var roundTripNanos = 0.0
+    private var errorRate = 0.0
+
+    @Synchronized
+    fun onSent(requestId: Int, now: Long) {
+      expire(now)
+      sent[requestId] = now
+    }
+
+    @Synchronized
+    fun onAnswer(requestId: Int, isError: Boolean, now: Long) {
+      val sentAt = sent.remove(requestId) ?: return
+      val roundTrip = (now - sentAt).toDouble()
+      roundTripNanos =
+          if (roundTripNanos == 0.0) roundTrip else average(roundTripNanos, roundTrip)
+      errorRate = average(errorRate, if (isError) 1.0 else 0.0)
+    }
+
+    @Synchronized
+    fun stats(now: Long): RoutingStats {
+      expire(now)
+      return RoutingStats(
+          roundTripNanos / TimeUnit.MILLISECONDS.toNanos(1), errorRate, isConnected())
+    }
+
+    private fun expire(now: Long) {
+      val iterator = sent.values.iterator()
+      while (iterator.hasNext()) {
+        if (now - iterator.next() > TimeUnit.MILLISECONDS.toNanos(ANSWER_TIMEOUT_MILLIS)) {
+          iterator.remove()
+          errorRate = average(errorRate, 1.0)
+        }
+      }
+    }
+
+    private fun average(current: Double, sample: Double): Double {
+      return current + SMOOTHING * (sample - current)
+    }
+  }
+
+  companion object {
+    /** Time after which an unanswered query counts as an error */
+    const val ANSWER_TIMEOUT_MILLIS = 5000L
+
+    /** Error rate from which a peer is considered unhealthy */
+    private const val MAX_ERROR_RATE = 0.5
+
+    /** Weight of the last sample in the moving averages */
+    private const val SMOOTHING = 0.2
+  }
+}
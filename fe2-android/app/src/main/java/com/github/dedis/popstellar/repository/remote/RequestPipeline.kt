@@ -0,0 +1,151 @@
+package com.github.dedis.popstellar.repository.remote
+
+import com.github.dedis.popstellar.model.network.answer.Answer
+import com.github.dedis.popstellar.model.network.answer.Error
+import com.github.dedis.popstellar.model.network.method.Query
+import com.github.dedis.popstellar.utility.error.JsonRPCErrorException
+import io.reactivex.Scheduler
+import io.reactivex.Single
+import io.reactivex.subjects.SingleSubject
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import timber.log.Timber
+
+/**
+ * Sends the queries over a connection and correlates the answers with them.
+ *
+ * The queries are written on the connection by a single writer, one batch at a time: the queries
+ * issued while a batch is being written are written by the same drain, without scheduling a new
+ * task per query. The answers are delivered on the scheduler chosen by the caller of each request.
+ *
+ * @param connection the connection the queries are written on
+ * @param writeScheduler scheduler the queries are written on
+ * @param timeoutScheduler scheduler the request timeouts run on
+ * @param timeoutSeconds time after which a request without answer fails
+ * @param clock source of the current time, in nanoseconds
+ */
+class RequestPipeline(
+    private val connection: Connection,
+    private val writeScheduler: Scheduler,
+    private val timeoutScheduler: Scheduler,
+    private val timeoutSeconds: Long,
+    private val clock: () -> Long = System::nanoTime
+) {
+  // Requests waiting for their answer, by request id
+  private val pendingRequests = ConcurrentHashMap<Int, PendingRequest>()
+
+  // Time between writing a query and receiving its answer, by method
+  private val roundTrips = ConcurrentHashMap<String, LatencyHistogram>()
+
+  // Queries waiting to be written, and number of drains requested while one is running
+  private val outbound = ConcurrentLinkedQueue<Query>()
+  private val queued = AtomicInteger()
+  private val drainRequests = AtomicInteger()
+
+  /** @return the current values of the gauges of the pipeline */
+  fun stats(): Stats {
+    return Stats(pendingRequests.size, queued.get())
+  }
+
+  /** @return the distribution of the round-trip time of the answered requests, by method */
+  fun roundTripStats(): Map<String, LatencyHistogram.Snapshot> {
+    return roundTrips.mapValues { (_, histogram) -> histogram.snapshot() }
+  }
+
+  /**
+   * Send a query and wait for its answer.
+   *
+   * The query is sent each time the returned single is subscribed to, and fails with a
+   * [JsonRPCErrorException] if the answer is an error, or with a timeout if there is no answer.
+   *
+   * @param query the query to send
+   * @param observeOn scheduler the answer is delivered on
+   * @return a single emitting the answer to the query
+   */
+  fun request(query: Query, observeOn: Scheduler): Single<Answer> {
+    return Single.defer {
+          // Register the request before sending it, so that its answer cannot be missed
+          val answer = SingleSubject.create<Answer>()
+          pendingRequests[query.requestId] = PendingRequest(query.method, answer)
+          enqueue(query)
+          answer
+        }
+        .flatMap { answer: Answer ->
+          if (answer is Error) {
+            Single.error(JsonRPCErrorException(answer))
+          } else {
+            Single.just(answer)
+          }
+        }
+        .timeout(timeoutSeconds, TimeUnit.SECONDS, timeoutScheduler)
+        // Forget the request if it timed out or was disposed of
+        .doFinally { pendingRequests.remove(query.requestId) }
+        .observeOn(observeOn)
+  }
+
+  /**
+   * Complete the pending request the answer relates to.
+   *
+   * @param answer answer received over the wire
+   */
+  fun onAnswer(answer: Answer) {
+    Timber.tag(TAG).d("request id: %s", answer.id)
+    val request = pendingRequests.remove(answer.id)
+    if (request == null) {
+      // The request may have timed out or been answered by another server already
+      Timber.tag(TAG).d("No pending request with id %s", answer.id)
+      return
+    }
+    request.writtenAt?.let { writtenAt ->
+      roundTrips
+          .computeIfAbsent(request.method) { LatencyHistogram() }
+          .record(clock() - writtenAt)
+    }
+    request.answer.onSuccess(answer)
+  }
+
+  private fun enqueue(query: Query) {
+    outbound.offer(query)
+    queued.incrementAndGet()
+    // Only schedule a drain if none is running, the running one writes the query otherwise
+    if (drainRequests.getAndIncrement() == 0) {
+      writeScheduler.scheduleDirect { drain() }
+    }
+  }
+
+  private fun drain() {
+    var missed = 1
+    do {
+      var query = outbound.poll()
+      while (query != null) {
+        queued.decrementAndGet()
+        pendingRequests[query.requestId]?.writtenAt = clock()
+        try {
+          connection.sendMessage(query)
+        } catch (e: Exception) {
+          Timber.tag(TAG).e(e, "Error sending the query %d", query.requestId)
+        }
+        query = outbound.poll()
+      }
+      missed = drainRequests.addAndGet(-missed)
+    } while (missed != 0)
+  }
+
+  /**
+   * Gauges of the pipeline.
+   *
+   * @param inFlight number of requests sent and waiting for their answer
+   * @param queued number of queries waiting to be written on the connection
+   */
+  data class Stats(val inFlight: Int, val queued: Int)
+
+  private class PendingRequest(val method: String, val answer: SingleSubject<Answer>) {
+    @Volatile var writtenAt: Long? = null
+  }
+
+  companion object {
+    private val TAG = RequestPipeline::class.java.simpleName
+  }
+}
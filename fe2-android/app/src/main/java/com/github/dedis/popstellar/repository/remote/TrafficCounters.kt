@@ -0,0 +1,183 @@
+package com.github.dedis.popstellar.repository.remote
+
+import com.tinder.scarlet.Message
+import com.tinder.scarlet.MessageAdapter
+import java.io.FilterInputStream
+import java.io.FilterOutputStream
+import java.io.InputStream
+import java.io.OutputStream
+import java.lang.reflect.Type
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.net.Socket
+import java.util.concurrent.atomic.AtomicLong
+import javax.inject.Inject
+import javax.inject.Singleton
+import javax.net.SocketFactory
+import okio.utf8Size
+
+/**
+ * Counts the bytes exchanged with the servers, before and after the websocket compression.
+ *
+ * The payload bytes are the JSON messages, counted by the message adapter of the websockets. The
+ * wire bytes are counted on the sockets, they include the compression negotiated with the server
+ * (permessage-deflate), the websocket framing and, for secure connections, the TLS records.
+ *
+ * The message adapter also measures the time spent decoding the JSON messages received.
+ */
+@Singleton
+class TrafficCounters @Inject constructor() {
+  private val payloadSent = AtomicLong()
+  private val payloadReceived = AtomicLong()
+  private val wireSent = AtomicLong()
+  private val wireReceived = AtomicLong()
+  private val decodeTime = LatencyHistogram()
+  private val countingSocketFactory: SocketFactory = CountingSocketFactory()
+
+  /** @return the current values of the counters */
+  fun stats(): TrafficStats {
+    return TrafficStats(
+        payloadSent.get(), payloadReceived.get(), wireSent.get(), wireReceived.get())
+  }
+
+  /** @return the distribution of the time spent decoding the messages received */
+  fun decodeStats(): LatencyHistogram.Snapshot {
+    return decodeTime.snapshot()
+  }
+
+  /**
+   * @param delegate factory of the adapters converting the messages
+   * @return a factory of adapters counting the size of the messages converted by the delegate
+   */
+  fun messageAdapterFactory(delegate: MessageAdapter.Factory): MessageAdapter.Factory {
+    return object : MessageAdapter.Factory {
+      override fun create(type: Type, annotations: Array<Annotation>): MessageAdapter<*> {
+        @Suppress("UNCHECKED_CAST")
+        return CountingMessageAdapter(delegate.create(type, annotations) as MessageAdapter<Any?>)
+      }
+    }
+  }
+
+  /** @return a factory of sockets counting the bytes read and written on them */
+  fun socketFactory(): SocketFactory {
+    return countingSocketFactory
+  }
+
+  /**
+   * Traffic exchanged with the servers.
+   *
+   * @param payloadSent bytes of the messages sent
+   * @param payloadReceived bytes of the messages received
+   * @param wireSent bytes written on the sockets
+   * @param wireReceived bytes read from the sockets
+   */
+  data class TrafficStats(
+      val payloadSent: Long,
+      val payloadReceived: Long,
+      val wireSent: Long,
+      val wireReceived: Long
+  ) {
+    /** Ratio of the bytes received on the wire to the bytes of the messages, 0 if none */
+    val receivedRatio: Double
+      get() = if (payloadReceived == 0L) 0.0 else wireReceived.toDouble() / payloadReceived
+  }
+
+  private inner class CountingMessageAdapter(private val delegate: MessageAdapter<Any?>) :
+      MessageAdapter<Any?> {
+    override fun fromMessage(message: Message): Any? {
+      payloadReceived.addAndGet(sizeOf(message))
+      val start = System.nanoTime()
+      try {
+        return delegate.fromMessage(message)
+      } finally {
+        decodeTime.record(System.nanoTime() - start)
+      }
+    }
+
+    override fun toMessage(data: Any?): Message {
+      return delegate.toMessage(data).also { payloadSent.addAndGet(sizeOf(it)) }
+    }
+
+    private fun sizeOf(message: Message): Long {
+      return when (message) {
+        is Message.Text -> message.value.utf8Size()
+        is Message.Bytes -> message.value.size.toLong()
+      }
+    }
+  }
+
+  private inner class CountingSocketFactory : SocketFactory() {
+    override fun createSocket(): Socket {
+      return CountingSocket()
+    }
+
+    override fun createSocket(host: String, port: Int): Socket {
+      return CountingSocket().apply { connect(InetSocketAddress(host, port)) }
+    }
+
+    override fun createSocket(
+        host: String,
+        port: Int,
+        localHost: InetAddress,
+        localPort: Int
+    ): Socket {
+      return CountingSocket().apply {
+        bind(InetSocketAddress(localHost, localPort))
+        connect(InetSocketAddress(host, port))
+      }
+    }
+
+    override fun createSocket(host: InetAddress, port: Int): Socket {
+      return CountingSocket().apply { connect(InetSocketAddress(host, port)) }
+    }
+
+    override fun createSocket(
+        address: InetAddress,
+        port: Int,
+        localAddress: InetAddress,
+        localPort: Int
+    ): Socket {
+      return CountingSocket().apply {
+        bind(InetSocketAddress(localAddress, localPort))
+        connect(InetSocketAddress(address, port))
+      }
+    }
+  }
+
+  private inner class CountingSocket : Socket() {
+    private var input: InputStream? = null
+    private var output: OutputStream? = null
+
+    @Synchronized
+    override fun getInputStream(): InputStream {
+      return input ?: CountingInputStream(super.getInputStream()).also { input = it }
+    }
+
+    @Synchronized
+    override fun getOutputStream(): OutputStream {
+      return output ?: CountingOutputStream(super.getOutputStream()).also { output = it }
+    }
+  }
+
+  private inner class CountingInputStream(input: InputStream) : FilterInputStream(input) {
+    override fun read(): Int {
+      return super.read().also { if (it >= 0) wireReceived.incrementAndGet() }
+    }
+
+    override fun read(b: ByteArray, off: Int, len: Int): Int {
+      return super.read(b, off, len).also { if (it > 0) wireReceived.addAndGet(it.toLong()) }
+    }
+  }
+
+  private inner class CountingOutputStream(output: OutputStream) : FilterOutputStream(output) {
+    override fun write(b: Int) {
+      out.write(b)
+      wireSent.incrementAndGet()
+    }
+
+    override fun write(b: ByteArray, off: Int, len: Int) {
+      out.write(b, off, len)
+      wireSent.addAndGet(len.toLong())
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package com.github.dedis.popstellar.repository.remote
+
+import com.github.dedis.popstellar.model.objects.PeerAddress
+import com.github.dedis.popstellar.utility.scheduler.SchedulerProvider
+import io.reactivex.Observable
+import java.util.concurrent.TimeUnit
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Registry of the metrics of the connection to the servers: the traffic, the time spent decoding
+ * the messages, the counters of each websocket and the round-trip time of the requests.
+ *
+ * The metrics are gathered from their sources when a snapshot is taken, so that recording them
+ * stays as cheap as incrementing a counter. A debug screen can observe the snapshots, and logging
+ * their [Snapshot.report] forwards them to the remote logging server when it is enabled.
+ */
+@Singleton
+class TransportMetrics
+@Inject
+constructor(
+    private val trafficCounters: TrafficCounters,
+    private val schedulerProvider: SchedulerProvider
+) {
+  @Volatile private var networkManager: LAONetworkManager? = null
+
+  /**
+   * Set the network manager whose connection is measured.
+   *
+   * @param networkManager the current network manager, null if there is none
+   */
+  fun attach(networkManager: LAONetworkManager?) {
+    this.networkManager = networkManager
+  }
+
+  /** @return the current values of the metrics */
+  fun snapshot(): Snapshot {
+    return Snapshot(
+        trafficCounters.stats(), trafficCounters.decodeStats(), networkManager?.networkStats())
+  }
+
+  /**
+   * @param period time between two snapshots
+   * @param unit unit of the period
+   * @return an Observable emitting a snapshot right away, then once every period
+   */
+  fun observe(period: Long, unit: TimeUnit): Observable<Snapshot> {
+    return Observable.interval(0, period, unit, schedulerProvider.computation()).map {
+      snapshot()
+    }
+  }
+
+  /**
+   * Metrics of the connection to the servers.
+   *
+   * @param traffic bytes exchanged with all the servers
+   * @param decodeTime time spent decoding the messages received
+   * @param network metrics of the current connection, null if there is none
+   */
+  data class Snapshot(
+      val traffic: TrafficCounters.TrafficStats,
+      val decodeTime: LatencyHistogram.Snapshot,
+      val network: NetworkStats?
+  ) {
+    /** @return the metrics as human readable lines */
+    fun report(): String {
+      val lines = ArrayList<String>()
+      lines.add(
+          "traffic: payload ${traffic.payloadSent}B out / ${traffic.payloadReceived}B in, " +
+              "wire ${traffic.wireSent}B out / ${traffic.wireReceived}B in")
+      lines.add("decode: $decodeTime")
+      network?.let { stats ->
+        lines.add(
+            "subscriptions: ${stats.subscriptions}, requests in flight: " +
+                "${stats.requests.inFlight}, queued: ${stats.requests.queued}, " +
+                "inbound queued: ${stats.inbound.queued}, dropped: ${stats.inbound.dropped}")
+        stats.roundTrips.forEach { (method, roundTrip) -> lines.add("rtt $method: $roundTrip") }
+        stats.peers.forEach { (peer, link) ->
+          lines.add(
+              "${peer.address}: ${link.framesSent} frames out / ${link.framesReceived} in, " +
+                  "${link.reconnects} reconnects, connected ${link.connectedMillis}ms")
+        }
+      }
+      return lines.joinToString("\n")
+    }
+  }
+
+  /**
+   * Metrics of a connection to the servers.
+   *
+   * @param peers counters of the websocket of each server
+   * @param inbound counters of the buffers of incoming messages of all the servers
+   * @param requests gauges of the requests
+   * @param roundTrips round-trip time of the requests, by method
+   * @param subscriptions number of channels subscribed to
+   */
+  data class NetworkStats(
+      val peers: Map<PeerAddress, Connection.LinkStats>,
+      val inbound: Connection.InboundStats,
+      val requests: RequestPipeline.Stats,
+      val roundTrips: Map<String, LatencyHistogram.Snapshot>,
+      val subscriptions: Int
+  )
+}
@@ -31,6 +31,7 @@ import com.github.dedis.popstellar.utility.error.ErrorUtils.logAndShow
 import com.github.dedis.popstellar.utility.error.UnknownLaoException
 import com.github.dedis.popstellar.utility.error.keys.KeyException
 import com.github.dedis.popstellar.utility.error.keys.NoRollCallException
+import com.github.dedis.popstellar.utility.scheduler.SchedulerProvider
 import com.github.dedis.popstellar.utility.security.KeyManager
 import com.google.gson.Gson
 import dagger.hilt.android.lifecycle.HiltViewModel
@@ -59,7 +60,8 @@ constructor(
     private val witnessingRepo: WitnessingRepository,
     private val networkManager: GlobalNetworkManager,
     private val gson: Gson,
-    private val keyManager: KeyManager
+    private val keyManager: KeyManager,
+    private val schedulerProvider: SchedulerProvider
 ) : AndroidViewModel(application) {
   var laoId: String? = null
 
@@ -166,6 +168,8 @@ constructor(
 
     // Find correct keypair
     return Single.fromCallable { if (coinBase) keyManager.mainKeyPair else validToken }
+        // Building and signing a transaction to many receivers takes too long for the main thread
+        .subscribeOn(schedulerProvider.computation())
         .flatMapCompletable { keyPair: KeyPair ->
           val postTxn = createPostTransaction(keyPair, receiverValues, lockTime, coinBase)
           val msg = MessageGeneral(keyPair, postTxn, gson)
@@ -175,6 +179,7 @@ constructor(
             Timber.tag(TAG).d("Successfully sent post transaction message : %s", postTxn)
           }
         }
+        .observeOn(schedulerProvider.mainThread())
   }
 
   @Throws(GeneralSecurityException::class)
@@ -0,0 +1,22 @@
+package com.github.dedis.popstellar.utility.error
+
+/**
+ * An exception indicating that a message cannot be handled yet because it refers to an object that
+ * is not known to the app (yet). The message can be handled again once the message introducing
+ * that object has been handled.
+ */
+interface MissingDependencyException {
+  /**
+   * Key of the missing object: its identifier, or a key built by [noClosedRollCallKey]. Null if
+   * the missing object could not be identified.
+   */
+  val dependencyKey: String?
+
+  companion object {
+    /** @return the key of the dependency on a closed roll call in the given lao */
+    @JvmStatic
+    fun noClosedRollCallKey(laoId: String): String {
+      return "$laoId/closed_roll_call"
+    }
+  }
+}
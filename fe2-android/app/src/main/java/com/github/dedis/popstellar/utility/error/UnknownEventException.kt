@@ -1,4 +1,6 @@
 package com.github.dedis.popstellar.utility.error
 
 abstract class UnknownEventException protected constructor(eventType: String, id: String) :
-    GenericException("$eventType with id $id is unknown.")
+    GenericException("$eventType with id $id is unknown."), MissingDependencyException {
+  override val dependencyKey: String? = id
+}
@@ -3,10 +3,16 @@ package com.github.dedis.popstellar.utility.error
 import com.github.dedis.popstellar.R
 
 /** An exception that indicates the lao with the specified id is not known to the app */
-class UnknownLaoException : GenericException {
-  constructor(laoId: String) : super("Lao with id $laoId is unknown")
+class UnknownLaoException : GenericException, MissingDependencyException {
+  override val dependencyKey: String?
 
-  constructor() : super("Could not find a valid Lao")
+  constructor(laoId: String) : super("Lao with id $laoId is unknown") {
+    dependencyKey = laoId
+  }
+
+  constructor() : super("Could not find a valid Lao") {
+    dependencyKey = null
+  }
 
   override val userMessage: Int
     get() = R.string.unknown_lao_exception
@@ -4,7 +4,10 @@ import com.github.dedis.popstellar.R
 import com.github.dedis.popstellar.model.objects.security.MessageID
 
 class UnknownWitnessMessageException(id: MessageID) :
-    GenericException("Witness message with id " + id.encoded + " is unknown") {
+    GenericException("Witness message with id " + id.encoded + " is unknown"),
+    MissingDependencyException {
+  override val dependencyKey: String? = id.encoded
+
   override val userMessage: Int
     get() = R.string.unknown_witness_message_exception
 
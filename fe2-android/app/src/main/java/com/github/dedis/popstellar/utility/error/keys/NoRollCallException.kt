@@ -3,9 +3,14 @@ package com.github.dedis.popstellar.utility.error.keys
 import com.github.dedis.popstellar.R
 import com.github.dedis.popstellar.model.objects.Lao
 import com.github.dedis.popstellar.model.objects.view.LaoView
+import com.github.dedis.popstellar.utility.error.MissingDependencyException
+import com.github.dedis.popstellar.utility.error.MissingDependencyException.Companion.noClosedRollCallKey
 
 /** Exception thrown when a rollcall is expected to be found in an LAO and none exist */
-class NoRollCallException(laoId: String) : KeyException("No RollCall exist in the LAO : $laoId") {
+class NoRollCallException(laoId: String) :
+    KeyException("No RollCall exist in the LAO : $laoId"), MissingDependencyException {
+  override val dependencyKey: String? = noClosedRollCallKey(laoId)
+
   constructor(lao: Lao) : this(lao.id)
 
   constructor(laoView: LaoView) : this(laoView.id)
@@ -5,7 +5,10 @@ import com.github.dedis.popstellar.model.network.method.message.data.Action
 import com.github.dedis.popstellar.model.network.method.message.data.DataRegistry
 import com.github.dedis.popstellar.model.network.method.message.data.Objects
 import com.github.dedis.popstellar.model.objects.Channel
+import com.github.dedis.popstellar.model.objects.security.MessageID
 import com.github.dedis.popstellar.repository.MessageRepository
+import com.github.dedis.popstellar.repository.database.message.OutboxEntity
+import com.github.dedis.popstellar.repository.remote.CatchupMark
 import com.github.dedis.popstellar.repository.remote.MessageSender
 import com.github.dedis.popstellar.utility.error.DataHandlingException
 import com.github.dedis.popstellar.utility.error.UnknownElectionException
@@ -14,6 +17,8 @@ import com.github.dedis.popstellar.utility.error.UnknownRollCallException
 import com.github.dedis.popstellar.utility.error.UnknownWitnessMessageException
 import com.github.dedis.popstellar.utility.error.keys.NoRollCallException
 import com.github.dedis.popstellar.utility.handler.data.HandlerContext
+import io.reactivex.Completable
+import io.reactivex.Single
 import javax.inject.Inject
 import javax.inject.Singleton
 import timber.log.Timber
@@ -39,6 +44,166 @@ constructor(private val messageRepo: MessageRepository, private val registry: Da
       NoRollCallException::class,
       UnknownWitnessMessageException::class)
   fun handleMessage(messageSender: MessageSender, channel: Channel, message: MessageGeneral) {
+    handle(messageSender, channel, message) { messageId -> isMessageHandled(messageId) }
+  }
+
+  /**
+   * Send a batch of messages, such as the result of a catchup, to the corresponding handlers.
+   *
+   * The messages already handled in the past are filtered out with a single lookup of the
+   * repository, and the writes issued by the handlers are committed in a single transaction.
+   *
+   * @param messageSender the service used to send messages to the backend
+   * @param channel the channel on which the messages were received
+   * @param messages the messages that were received, in the order they should be handled
+   * @param onError called with each message that could not be handled and the error raised, the
+   *   handling of the following messages goes on unless it throws
+   * @return a completable completing once the batch is committed to the database
+   */
+  fun handleMessages(
+      messageSender: MessageSender,
+      channel: Channel,
+      messages: List<MessageGeneral>,
+      onError: (MessageGeneral, Exception) -> Unit
+  ): Completable {
+    val present = messageRepo.getHandledMessages(messages.map { it.messageId })
+    // Messages may be duplicated within the batch as well
+    val handled = HashSet<MessageID>()
+
+    return messageRepo.batch {
+      for (message in messages) {
+        try {
+          handle(messageSender, channel, message) { messageId ->
+            present.contains(messageId) || !handled.add(messageId)
+          }
+        } catch (e: Exception) {
+          onError(message, e)
+        }
+      }
+    }
+  }
+
+  /**
+   * @param messageID identifier of a received message
+   * @return true if the message was already handled, which is known without decoding its data
+   */
+  fun isMessageHandled(messageID: MessageID): Boolean {
+    return messageRepo.isEphemeral(messageID) || messageRepo.isMessagePresent(messageID, true)
+  }
+
+  /**
+   * @param messageIDs identifiers of received messages
+   * @return the identifiers of the messages that were already handled
+   */
+  fun getHandledMessages(messageIDs: Collection<MessageID>): Set<MessageID> {
+    return messageRepo.getHandledMessages(messageIDs)
+  }
+
+  /**
+   * @param messageIDs identifiers of messages announced by a server
+   * @return the identifiers of the messages that were never handled, in the given order
+   */
+  fun getUnknownMessages(messageIDs: Collection<MessageID>): List<MessageID> {
+    return messageRepo.getUnknownMessages(messageIDs)
+  }
+
+  /**
+   * @param channel the channel caught up on
+   * @return the mark of the catchup messages of the channel handled so far, or null if there is
+   *   none
+   */
+  fun getCatchupMark(channel: Channel): CatchupMark? {
+    return messageRepo.getCatchupMark(channel)
+  }
+
+  /**
+   * Move the catchup mark of a channel after the messages of a catchup that were handled.
+   *
+   * @param channel the channel caught up on
+   * @param messages the messages of the catchup, in the order they were received
+   * @param handledCount number of messages at the start of the catchup that were handled
+   */
+  fun updateCatchupMark(channel: Channel, messages: List<MessageGeneral>, handledCount: Int) {
+    val mark = CatchupMark.of(messages, handledCount) ?: return
+    // The ephemeral messages are lost on restart, they have to be handled again then. This does
+    // not decode the data of the messages skipped as they were already handled.
+    val toPersist = messages.subList(0, handledCount).none { messageRepo.isEphemeral(it.messageId) }
+    messageRepo.setCatchupMark(channel, mark, toPersist)
+  }
+
+  /** @return the messages waiting to be published, in the order they were queued */
+  fun getOutbox(): List<OutboxEntity> {
+    return messageRepo.getOutbox()
+  }
+
+  /**
+   * Queue a message until a server accepts it.
+   *
+   * @param channel the channel to publish the message on
+   * @param message the signed message to publish
+   * @return a single emitting true if the message was queued, false if it does not need to be sent
+   */
+  fun addToOutbox(channel: Channel, message: MessageGeneral): Single<Boolean> {
+    return messageRepo.addToOutbox(channel, message)
+  }
+
+  /**
+   * Mark a queued message as being sent, so that it is not superseded anymore.
+   *
+   * @param messageID identifier of the queued message
+   * @return false if the message was superseded in the meantime and must not be sent
+   */
+  fun startSendingFromOutbox(messageID: MessageID): Boolean {
+    return messageRepo.startSendingFromOutbox(messageID)
+  }
+
+  /**
+   * Mark a queued message as not being sent anymore.
+   *
+   * @param messageID identifier of the queued message
+   */
+  fun stopSendingFromOutbox(messageID: MessageID) {
+    messageRepo.stopSendingFromOutbox(messageID)
+  }
+
+  /**
+   * Record a failed attempt to publish a queued message.
+   *
+   * @param messageID identifier of the queued message
+   * @param attempts number of attempts so far
+   */
+  fun setOutboxAttempts(messageID: MessageID, attempts: Int): Completable {
+    return messageRepo.setOutboxAttempts(messageID, attempts)
+  }
+
+  /**
+   * Remove a message from the outbox.
+   *
+   * @param messageID identifier of the queued message
+   */
+  fun removeFromOutbox(messageID: MessageID): Completable {
+    return messageRepo.removeFromOutbox(messageID)
+  }
+
+  @Throws(
+      DataHandlingException::class,
+      UnknownLaoException::class,
+      UnknownRollCallException::class,
+      UnknownElectionException::class,
+      NoRollCallException::class,
+      UnknownWitnessMessageException::class)
+  private inline fun handle(
+      messageSender: MessageSender,
+      channel: Channel,
+      message: MessageGeneral,
+      isMessagePresent: (MessageID) -> Boolean
+  ) {
+    // Drop the messages already handled before decoding their data
+    if (isMessagePresent(message.messageId)) {
+      Timber.tag(TAG).d("The message %s has already been handled in the past", message.messageId)
+      return
+    }
+
     val data = message.data
 
     val dataObj = Objects.find(data.`object`)
@@ -50,14 +215,6 @@ constructor(private val messageRepo: MessageRepository, private val registry: Da
     val toPersist = dataObj.hasToBePersisted()
     val toBeStored = dataAction.isStoreNeededByAction
 
-    if (messageRepo.isMessagePresent(message.messageId, toPersist)) {
-      Timber.tag(TAG)
-          .d(
-              "The message with class %s has already been handled in the past",
-              data.javaClass.simpleName)
-      return
-    }
-
     Timber.tag(TAG).d("Handling incoming message, data with class: %s", data.javaClass.simpleName)
     registry.handle(
         HandlerContext(message.messageId, message.sender, channel, messageSender),
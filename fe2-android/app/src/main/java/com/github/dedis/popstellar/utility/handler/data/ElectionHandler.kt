@@ -200,7 +200,7 @@ constructor(
     // Verify the vote was created before the end of the election or the election is not closed yet
     if (election.endTimestamp >= castVote.creation || election.state != EventState.CLOSED) {
       // Retrieve previous cast vote message stored for the given sender
-      val previousMessageId = election.messageMap[senderPk]
+      val previousMessageId = election.getLastVoteMessage(senderPk)
 
       // No previous message, we always handle it
       if (previousMessageId == null) {
@@ -252,13 +252,8 @@ constructor(
       senderPk: PublicKey,
       election: Election
   ) {
-    val updated =
-        election
-            .builder()
-            .updateMessageMap(senderPk, messageId)
-            .updateVotes(senderPk, castVote.votes)
-            .build()
-    electionRepository.updateElection(updated)
+    // The vote is appended to the election's ledger, no need to copy the previous votes
+    electionRepository.addVotes(election, senderPk, messageId, castVote.votes)
   }
 
   private fun computeResults(
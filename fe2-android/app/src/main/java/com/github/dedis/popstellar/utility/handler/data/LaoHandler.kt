@@ -10,6 +10,7 @@ import com.github.dedis.popstellar.model.objects.Server
 import com.github.dedis.popstellar.model.objects.WitnessMessage
 import com.github.dedis.popstellar.model.objects.security.MessageID
 import com.github.dedis.popstellar.model.objects.security.PublicKey
+import com.github.dedis.popstellar.model.objects.security.SignatureBatch
 import com.github.dedis.popstellar.model.objects.view.LaoView
 import com.github.dedis.popstellar.repository.ConsensusRepository
 import com.github.dedis.popstellar.repository.LAORepository
@@ -146,10 +147,13 @@ constructor(
     }
 
     Timber.tag(TAG).d("Verifying signatures")
+    val signatures = SignatureBatch()
     for (pair in stateLao.modificationSignatures) {
-      if (!pair.witness.verify(pair.signature, stateLao.modificationId)) {
-        throw InvalidSignatureException(stateLao, pair.signature)
-      }
+      signatures.add(pair.witness, pair.signature, stateLao.modificationId)
+    }
+    val invalid = signatures.firstInvalid()
+    if (invalid != -1) {
+      throw InvalidSignatureException(stateLao, stateLao.modificationSignatures[invalid].signature)
     }
     Timber.tag(TAG).d("Success to verify state lao signatures")
 
@@ -1,15 +1,27 @@
 package com.github.dedis.popstellar.utility.security
 
+import java.nio.ByteBuffer
+import java.nio.CharBuffer
+import java.nio.charset.CodingErrorAction
 import java.nio.charset.StandardCharsets
 import java.security.MessageDigest
 import java.security.NoSuchAlgorithmException
 import java.util.Base64
 import timber.log.Timber
 
-/** SHA256 Hashing Class */
+/**
+ * SHA256 Hashing Class
+ *
+ * The ids of the protocol are hashed for each validated message, the digest and the buffers are
+ * thus created once per thread and reused by all the hashes computed on that thread.
+ */
 object HashSHA256 {
   val TAG: String = HashSHA256::class.java.simpleName
 
+  private const val ALGORITHM = "SHA-256"
+
+  private val ENGINE = ThreadLocal.withInitial { Engine() }
+
   /**
    * Hash some objects using SHA256. Concatenate the object's string representation following the
    * protocol's directive. Then hash the obtained string
@@ -23,23 +35,91 @@ object HashSHA256 {
   fun hash(vararg strs: String?): String {
     require(strs.isNotEmpty()) { "cannot hash an empty/null array" }
 
-    try {
-      val digest = MessageDigest.getInstance("SHA-256")
-
-      for (str in strs) {
-        require(!str.isNullOrEmpty()) { "cannot hash an empty/null string" }
+    val engine = engine()
+    for (str in strs) {
+      require(!str.isNullOrEmpty()) { "cannot hash an empty/null string" }
+      engine.update(str)
+    }
+    return Base64.getUrlEncoder().encodeToString(engine.digest())
+  }
 
-        val buf = str.toByteArray(StandardCharsets.UTF_8)
-        val length = buf.size.toString()
-        digest.update(length.toByteArray(StandardCharsets.UTF_8))
-        digest.update(buf)
-      }
+  /**
+   * Hash some bytes using SHA256, as they are
+   *
+   * @param data the bytes to hash
+   * @return the hash
+   * @throws UnsupportedOperationException if SHA-256 MessageDigest is unavailable
+   */
+  @JvmStatic
+  fun digest(data: ByteArray): ByteArray {
+    val engine = engine()
+    engine.update(data)
+    return engine.digest()
+  }
 
-      val digestBuf = digest.digest()
-      return Base64.getUrlEncoder().encodeToString(digestBuf)
+  private fun engine(): Engine {
+    return try {
+      ENGINE.get().also { it.reset() }
     } catch (e: NoSuchAlgorithmException) {
       Timber.tag(TAG).e(e, "failed to hash")
       throw UnsupportedOperationException("failed to retrieve SHA-256 instance", e)
     }
   }
+
+  /** Digest and buffers of a thread, the strings are encoded without allocating arrays */
+  private class Engine {
+    private val digest = MessageDigest.getInstance(ALGORITHM)
+    // Same replacements as String.toByteArray
+    private val encoder =
+        StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE)
+    private var buffer = ByteBuffer.allocate(INITIAL_CAPACITY)
+    private val digits = ByteArray(MAX_DIGITS)
+
+    fun reset() {
+      digest.reset()
+    }
+
+    /** Hash the length of the utf-8 encoded string, in decimal, followed by the string */
+    fun update(str: String) {
+      val maxLength = (str.length * encoder.maxBytesPerChar()).toInt()
+      if (buffer.capacity() < maxLength) {
+        buffer = ByteBuffer.allocate(maxLength)
+      }
+
+      buffer.clear()
+      encoder.reset()
+      encoder.encode(CharBuffer.wrap(str), buffer, true)
+      encoder.flush(buffer)
+      buffer.flip()
+
+      updateLength(buffer.remaining())
+      digest.update(buffer)
+    }
+
+    fun update(data: ByteArray) {
+      digest.update(data)
+    }
+
+    fun digest(): ByteArray {
+      return digest.digest()
+    }
+
+    private fun updateLength(length: Int) {
+      var remaining = length
+      var start = MAX_DIGITS
+      do {
+        digits[--start] = ('0'.code + remaining % 10).toByte()
+        remaining /= 10
+      } while (remaining > 0)
+      digest.update(digits, start, MAX_DIGITS - start)
+    }
+
+    companion object {
+      private const val INITIAL_CAPACITY = 256
+      // Number of digits of Int.MAX_VALUE
+      private const val MAX_DIGITS = 10
+    }
+  }
 }
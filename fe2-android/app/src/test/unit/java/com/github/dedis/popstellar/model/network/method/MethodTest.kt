@@ -12,6 +12,8 @@ class MethodTest {
     Assert.assertEquals(Publish::class.java, Method.PUBLISH.dataClass)
     Assert.assertEquals(Broadcast::class.java, Method.MESSAGE.dataClass)
     Assert.assertEquals(Catchup::class.java, Method.CATCHUP.dataClass)
+    Assert.assertEquals(Heartbeat::class.java, Method.HEARTBEAT.dataClass)
+    Assert.assertEquals(GetMessagesById::class.java, Method.GET_MESSAGES_BY_ID.dataClass)
   }
 
   @Test
@@ -21,6 +23,8 @@ class MethodTest {
     Assert.assertTrue(Method.PUBLISH.expectResult())
     Assert.assertFalse(Method.MESSAGE.expectResult())
     Assert.assertTrue(Method.CATCHUP.expectResult())
+    Assert.assertFalse(Method.HEARTBEAT.expectResult())
+    Assert.assertTrue(Method.GET_MESSAGES_BY_ID.expectResult())
   }
 
   @Test
@@ -11,6 +11,7 @@ import com.github.dedis.popstellar.model.objects.security.KeyPair
 import com.github.dedis.popstellar.model.objects.security.MessageID
 import com.github.dedis.popstellar.model.objects.security.PublicKey
 import com.github.dedis.popstellar.model.objects.security.Signature
+import com.github.dedis.popstellar.model.objects.security.SignatureBatch
 import com.github.dedis.popstellar.model.objects.security.privatekey.PlainPrivateKey
 import net.i2p.crypto.eddsa.Utils
 import org.hamcrest.CoreMatchers
@@ -94,6 +95,53 @@ class MessageGeneralTest {
     MatcherAssert.assertThat(msg.verify(), CoreMatchers.`is`(false))
   }
 
+  @Test
+  fun addSignaturesToBatchMatchesVerify() {
+    val valid = MessageGeneral(KEY_PAIR, DATA, GSON)
+    val invalid = MessageGeneral(
+      KEY_PAIR.publicKey,
+      DATA_ENCODED,
+      DATA,
+      Signature("UB6xpjpUGN5VtmWAw1T3npHxiZfKaXzx3ny5PXl_qF4"),
+      MESSAGE_ID,
+      WITNESS_SIGNATURES
+    )
+    val batch = SignatureBatch()
+
+    Assert.assertEquals(1, valid.addSignaturesTo(batch))
+    Assert.assertEquals(1, invalid.addSignaturesTo(batch))
+    Assert.assertArrayEquals(booleanArrayOf(true, false), batch.verify())
+  }
+
+  @Test
+  fun dataIsDecodedOnFirstAccessOnly() {
+    var decodings = 0
+    val msg = MessageGeneral(
+      KEY_PAIR.publicKey,
+      DATA_ENCODED,
+      {
+        decodings++
+        DATA
+      },
+      SIGNATURE,
+      MESSAGE_ID,
+      WITNESS_SIGNATURES
+    )
+    val same = MessageGeneral(
+      KEY_PAIR.publicKey, DATA_ENCODED, DATA, SIGNATURE, MESSAGE_ID, WITNESS_SIGNATURES
+    )
+
+    // Neither the comparison nor the logging of the message decode its data
+    Assert.assertEquals(same, msg)
+    Assert.assertEquals(same.hashCode(), msg.hashCode())
+    msg.toString()
+    Assert.assertEquals(0, decodings)
+
+    Assert.assertEquals(DATA, msg.data)
+    Assert.assertEquals(DATA, msg.data)
+    Assert.assertEquals(1, decodings)
+  }
+
   @Test
   fun toStringTest() {
     val msg = MessageGeneral(
@@ -0,0 +1,68 @@
+package com.github.dedis.popstellar.model.network.serializer
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.github.dedis.popstellar.model.network.JsonTestUtils.loadFile
+import com.github.dedis.popstellar.model.network.serializer.JsonUtils.verifyJson
+import com.github.dedis.popstellar.model.network.serializer.JsonUtils.verifyOutboundJson
+import com.google.gson.JsonParseException
+import com.google.gson.JsonParser
+import org.junit.Assert
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+class JsonValidationPolicyTest {
+
+  @Test
+  fun fullPolicyAlwaysValidatesOutbound() {
+    for (i in 0 until JsonValidationPolicy.SAMPLING_RATE) {
+      Assert.assertTrue(JsonValidationPolicy.FULL.shouldValidateOutbound())
+    }
+  }
+
+  @Test
+  fun inboundOnlyPolicyNeverValidatesOutbound() {
+    for (i in 0 until JsonValidationPolicy.SAMPLING_RATE) {
+      Assert.assertFalse(JsonValidationPolicy.INBOUND_ONLY.shouldValidateOutbound())
+    }
+  }
+
+  @Test
+  fun sampledPolicyValidatesOneOutboundMessagePerSample() {
+    val validated =
+      (0 until JsonValidationPolicy.SAMPLING_RATE).count {
+        JsonValidationPolicy.SAMPLED.shouldValidateOutbound()
+      }
+    Assert.assertEquals(1, validated)
+  }
+
+  @Test
+  fun treeValidationMatchesStringValidation() {
+    val json = loadFile(PATH_DIR + "lao_create.json")
+    verifyJson(JsonUtils.DATA_SCHEMA, json)
+    verifyJson(JsonUtils.DATA_SCHEMA, JsonParser.parseString(json))
+  }
+
+  @Test
+  fun treeValidationRejectsInvalidJson() {
+    val json = loadFile(PATH_DIR + "wrong_lao_create_additional_params.json")
+    Assert.assertThrows(JsonParseException::class.java) { verifyJson(JsonUtils.DATA_SCHEMA, json) }
+    Assert.assertThrows(JsonParseException::class.java) {
+      verifyJson(JsonUtils.DATA_SCHEMA, JsonParser.parseString(json))
+    }
+  }
+
+  @Test
+  fun inboundOnlyPolicySkipsInvalidOutboundJson() {
+    val json = loadFile(PATH_DIR + "wrong_lao_create_additional_params.json")
+    verifyOutboundJson(
+      JsonValidationPolicy.INBOUND_ONLY,
+      JsonUtils.DATA_SCHEMA,
+      JsonParser.parseString(json)
+    )
+  }
+
+  companion object {
+    private const val PATH_DIR = "protocol/examples/messageData/lao_create/"
+  }
+}
@@ -0,0 +1,70 @@
+package com.github.dedis.popstellar.model.network.serializer.network
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.github.dedis.popstellar.model.network.GenericMessage
+import com.github.dedis.popstellar.model.network.JsonTestUtils.GSON
+import com.github.dedis.popstellar.model.network.JsonTestUtils.loadFile
+import com.github.dedis.popstellar.model.network.method.Broadcast
+import com.github.dedis.popstellar.model.objects.security.Base64URLData
+import com.google.gson.JsonObject
+import com.google.gson.JsonParseException
+import com.google.gson.JsonParser
+import java.nio.charset.StandardCharsets
+import org.junit.Assert
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+class JsonGenericMessageStreamFactoryTest {
+
+  @Test
+  fun broadcastIsStreamedDownToItsData() {
+    val json = loadFile(PATH_DIR + "broadcast.json")
+    val message = GSON.fromJson(json, GenericMessage::class.java)
+
+    Assert.assertTrue(message is Broadcast)
+    val broadcast = message as Broadcast
+    Assert.assertNotNull(broadcast.message.data)
+    Assert.assertEquals(JsonParser.parseString(json), JsonParser.parseString(GSON.toJson(message)))
+  }
+
+  @Test
+  fun streamedBroadcastMatchesTreeFallback() {
+    val json = loadFile(PATH_DIR + "broadcast.json")
+    val original = JsonParser.parseString(json).asJsonObject
+
+    // Putting the params before the method forces the fallback on the tree based deserializer
+    val reordered = JsonObject()
+    reordered.add("params", original["params"])
+    original.entrySet().filter { it.key != "params" }.forEach { reordered.add(it.key, it.value) }
+
+    val streamed = GSON.fromJson(json, GenericMessage::class.java) as Broadcast
+    val fallback = GSON.fromJson(reordered.toString(), GenericMessage::class.java) as Broadcast
+    Assert.assertEquals(streamed, fallback)
+    Assert.assertEquals(streamed.message.data, fallback.message.data)
+  }
+
+  @Test
+  fun invalidDataIsOnlyRejectedWhenAccessed() {
+    val json = JsonParser.parseString(loadFile(PATH_DIR + "broadcast.json")).asJsonObject
+    val invalidData = Base64URLData("{\"object\":\"lao\"}".toByteArray(StandardCharsets.UTF_8))
+    json["params"].asJsonObject["message"].asJsonObject.addProperty("data", invalidData.encoded)
+
+    val broadcast = GSON.fromJson(json.toString(), GenericMessage::class.java) as Broadcast
+
+    Assert.assertEquals(invalidData, broadcast.message.dataEncoded)
+    Assert.assertThrows(JsonParseException::class.java) { broadcast.message.data }
+  }
+
+  @Test
+  fun broadcastWithoutMessageIsRejected() {
+    val json = loadFile(PATH_DIR + "wrong_broadcast_missing_message.json")
+    Assert.assertThrows(JsonParseException::class.java) {
+      GSON.fromJson(json, GenericMessage::class.java)
+    }
+  }
+
+  companion object {
+    private const val PATH_DIR = "protocol/examples/query/broadcast/"
+  }
+}
@@ -0,0 +1,77 @@
+package com.github.dedis.popstellar.model.network.serializer.network
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.github.dedis.popstellar.model.network.GenericMessage
+import com.github.dedis.popstellar.model.network.JsonTestUtils.GSON
+import com.github.dedis.popstellar.model.network.JsonTestUtils.loadFile
+import com.github.dedis.popstellar.model.network.answer.ResultMessagesByChannel
+import com.github.dedis.popstellar.model.network.method.GetMessagesById
+import com.github.dedis.popstellar.model.network.method.Heartbeat
+import com.github.dedis.popstellar.model.network.method.Message
+import com.github.dedis.popstellar.model.objects.Channel
+import com.github.dedis.popstellar.model.objects.security.MessageID
+import com.google.gson.JsonParser
+import org.junit.Assert
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+class JsonMessageIdsSerializerTest {
+
+  @Test
+  fun heartbeatRoundTrip() {
+    val json = loadFile(QUERY_DIR + "heartbeat/heartbeat.json")
+    val message = GSON.fromJson(json, GenericMessage::class.java)
+
+    Assert.assertTrue(message is Heartbeat)
+    val heartbeat = message as Heartbeat
+    Assert.assertEquals(
+      listOf(MessageID("DCBX48EuNO6q-Sr42ONqsj7opKiNeXyRzrjqTbZ_aMI=")),
+      heartbeat.messageIds[SOCIAL_CHANNEL]
+    )
+    Assert.assertEquals(2, heartbeat.messageIds[ELECTION_CHANNEL]!!.size)
+    Assert.assertEquals(
+      JsonParser.parseString(json),
+      JsonParser.parseString(GSON.toJson(message, Message::class.java))
+    )
+  }
+
+  @Test
+  fun getMessagesByIdRoundTrip() {
+    val json = loadFile(QUERY_DIR + "get_messages_by_id/get_messages_by_id.json")
+    val message = GSON.fromJson(json, GenericMessage::class.java)
+
+    Assert.assertTrue(message is GetMessagesById)
+    val query = message as GetMessagesById
+    Assert.assertEquals(6, query.requestId)
+    Assert.assertEquals(setOf(SOCIAL_CHANNEL, ELECTION_CHANNEL), query.messageIds.keys)
+    Assert.assertEquals(
+      JsonParser.parseString(json),
+      JsonParser.parseString(GSON.toJson(message, Message::class.java))
+    )
+  }
+
+  @Test
+  fun messagesByChannelAnswerIsDeserialized() {
+    val json = loadFile("protocol/examples/answer/get_messages_by_id_ans.json")
+    val message = GSON.fromJson(json, GenericMessage::class.java)
+
+    Assert.assertTrue(message is ResultMessagesByChannel)
+    val result = message as ResultMessagesByChannel
+    Assert.assertEquals(6, result.id)
+    Assert.assertEquals(1, result.messages[SOCIAL_CHANNEL]!!.size)
+    Assert.assertEquals(2, result.messages[ELECTION_CHANNEL]!!.size)
+  }
+
+  companion object {
+    private const val QUERY_DIR = "protocol/examples/query/"
+    private val SOCIAL_CHANNEL =
+      Channel.fromString(
+        "/root/nLghr9_P406lfkMjaNWqyohLxOiGlQee8zad4qAfj18=/social/8qlv4aUT5-tBodKp4RszY284CFYVaoDZK6XKiw9isSw="
+      )
+    private val ELECTION_CHANNEL =
+      Channel.fromString(
+        "/root/nLghr9_P406lfkMjaNWqyohLxOiGlQee8zad4qAfj18=/HnXDyvSSron676Icmvcjk5zXvGLkPJ1fVOaWOxItzBE="
+      )
+  }
+}
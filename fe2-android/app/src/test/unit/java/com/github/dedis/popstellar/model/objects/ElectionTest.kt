@@ -8,6 +8,7 @@ import com.github.dedis.popstellar.model.objects.Election.ElectionBuilder
 import com.github.dedis.popstellar.model.objects.event.EventType
 import com.github.dedis.popstellar.model.objects.security.Base64URLData
 import com.github.dedis.popstellar.model.objects.security.elGamal.ElectionKeyPair.Companion.generateKeyPair
+import com.github.dedis.popstellar.testutils.Base64DataUtils
 import java.time.Instant
 import org.hamcrest.CoreMatchers
 import org.hamcrest.MatcherAssert
@@ -75,4 +76,38 @@ class ElectionTest {
   fun typeTest() {
     Assert.assertEquals(EventType.ELECTION, election.type)
   }
+
+  @Test
+  fun addingVotesLeavesThePreviousVersionsUnchanged() {
+    val sender1 = Base64DataUtils.generatePublicKey()
+    val sender2 = Base64DataUtils.generatePublicKey()
+    val sender3 = Base64DataUtils.generatePublicKey()
+    val messageId = Base64DataUtils.generateMessageID()
+
+    val withOneVote = election.builder().updateVotes(sender1, messageId, plainVotes).build()
+    val withTwoVotes = withOneVote.builder().updateVotes(sender2, messageId, plainVotes).build()
+    // Built from an older version, it must not see the vote of sender2
+    val branch = withOneVote.builder().updateVotes(sender3, messageId, plainVotes).build()
+
+    Assert.assertTrue(election.votesBySender.isEmpty())
+    Assert.assertEquals(setOf(sender1), withOneVote.votesBySender.keys)
+    Assert.assertEquals(setOf(sender1, sender2), withTwoVotes.votesBySender.keys)
+    Assert.assertEquals(setOf(sender1, sender3), branch.votesBySender.keys)
+    Assert.assertNull(withOneVote.getLastVoteMessage(sender2))
+    Assert.assertEquals(messageId, withTwoVotes.getLastVoteMessage(sender2))
+  }
+
+  @Test
+  fun addingEncryptedVotesToAnOpenBallotElectionFails() {
+    val builder =
+      election
+        .builder()
+        .updateVotes(
+          Base64DataUtils.generatePublicKey(),
+          Base64DataUtils.generateMessageID(),
+          election.encrypt(plainVotes)
+        )
+
+    Assert.assertThrows(IllegalArgumentException::class.java) { builder.build() }
+  }
 }
@@ -53,6 +53,36 @@ class Base64URLDataTest {
     Assert.assertNotEquals(data, signature)
   }
 
+  @Test
+  fun bytesCannotBeModifiedFromOutside() {
+    val source = DATA_1.copyOf()
+    val data = Base64URLData(source)
+    source[0] = 0
+    data.data[1] = 0
+
+    Assert.assertArrayEquals(DATA_1, data.data)
+    Assert.assertEquals(Base64URLData(DATA_1).hashCode(), data.hashCode())
+    Assert.assertEquals(ENCODED_1, data.encoded)
+  }
+
+  @Test
+  fun readOnlyBufferViewsTheBytes() {
+    val buffer = Base64URLData(DATA_1).asReadOnlyBuffer()
+
+    Assert.assertTrue(buffer.isReadOnly)
+    Assert.assertEquals(DATA_1.size, buffer.remaining())
+    val bytes = ByteArray(buffer.remaining())
+    buffer.get(bytes)
+    Assert.assertArrayEquals(DATA_1, bytes)
+  }
+
+  @Test
+  fun encodedIsComputedOnce() {
+    val data = Base64URLData(DATA_1)
+
+    Assert.assertSame(data.encoded, data.encoded)
+  }
+
   @Test
   fun toStringShowsExpectedValue() {
     val data = Base64URLData(DATA_1)
@@ -50,6 +50,12 @@ class KeyPairTest {
     Assert.assertEquals("SGnNfF533PBEUMYPMqBSQY83z5U=", pk.computeHash())
   }
 
+  @Test
+  fun pubKeyHashIsComputedOnce() {
+    val pk = PublicKey("J9fBzJV70Jk5c-i3277Uq4CmeL4t53WDfUghaK0HpeM=")
+    Assert.assertSame(pk.computeHash(), pk.computeHash())
+  }
+
   companion object {
     private val SIGNATURE = Signature("U0lHTkFUVVJF")
     private val DATA = Base64URLData("REFUQQ==")
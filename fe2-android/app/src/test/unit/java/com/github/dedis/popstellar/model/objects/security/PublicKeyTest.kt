@@ -0,0 +1,37 @@
+package com.github.dedis.popstellar.model.objects.security
+
+import com.github.dedis.popstellar.testutils.Base64DataUtils
+import org.junit.Assert
+import org.junit.Test
+
+class PublicKeyTest {
+  @Test
+  fun equalKeysAreInterned() {
+    val key = PublicKey.of(ENCODED)
+
+    Assert.assertSame(key, PublicKey.of(ENCODED))
+    Assert.assertSame(key, PublicKey.of(PublicKey(ENCODED).data))
+    Assert.assertNotSame(key, PublicKey.of(Base64DataUtils.generatePublicKey().encoded))
+  }
+
+  @Test
+  fun keysOfTheWrongLengthAreRejected() {
+    Assert.assertThrows(IllegalArgumentException::class.java) { PublicKey("") }
+    Assert.assertThrows(IllegalArgumentException::class.java) { PublicKey.of("REFUQQ==") }
+  }
+
+  @Test
+  fun internedKeyVerifiesSignatures() {
+    val keyPair = Base64DataUtils.generateKeyPair()
+    val data = Base64URLData("REFUQQ==")
+    val signature = keyPair.sign(data)
+    val key = PublicKey.of(keyPair.publicKey.encoded)
+
+    Assert.assertTrue(key.verify(signature, data))
+    Assert.assertFalse(key.verify(signature, Base64URLData("T1RIRVI=")))
+  }
+
+  companion object {
+    private const val ENCODED = "J9fBzJV70Jk5c-i3277Uq4CmeL4t53WDfUghaK0HpeM="
+  }
+}
@@ -0,0 +1,45 @@
+package com.github.dedis.popstellar.model.objects.security
+
+import com.github.dedis.popstellar.testutils.Base64DataUtils
+import org.junit.Assert
+import org.junit.Test
+
+class SignatureBatchTest {
+  @Test
+  fun eachSignatureHasItsOwnResult() {
+    val batch = SignatureBatch()
+    batch.add(KEY_PAIR.publicKey, SIGNATURE, DATA)
+    batch.add(KEY_PAIR.publicKey, SIGNATURE, OTHER_DATA)
+    batch.add(OTHER_KEY_PAIR.publicKey, SIGNATURE, DATA)
+    batch.add(KEY_PAIR.publicKey, SIGNATURE, DATA)
+
+    Assert.assertEquals(4, batch.size)
+    Assert.assertArrayEquals(booleanArrayOf(true, false, false, true), batch.verify())
+    Assert.assertEquals(1, batch.firstInvalid())
+    Assert.assertFalse(batch.verifyAll())
+  }
+
+  @Test
+  fun batchOfValidSignaturesIsValid() {
+    val batch = SignatureBatch()
+    batch.add(KEY_PAIR.publicKey, SIGNATURE, DATA)
+    batch.add(OTHER_KEY_PAIR.publicKey, OTHER_KEY_PAIR.sign(OTHER_DATA), OTHER_DATA)
+
+    Assert.assertTrue(batch.verifyAll())
+  }
+
+  @Test
+  fun emptyBatchIsValid() {
+    Assert.assertEquals(0, SignatureBatch().verify().size)
+    Assert.assertEquals(-1, SignatureBatch().firstInvalid())
+    Assert.assertTrue(SignatureBatch().verifyAll())
+  }
+
+  companion object {
+    private val KEY_PAIR = Base64DataUtils.generateKeyPair()
+    private val OTHER_KEY_PAIR = Base64DataUtils.generateKeyPair()
+    private val DATA = Base64URLData("REFUQQ==")
+    private val OTHER_DATA = Base64URLData("T1RIRVI=")
+    private val SIGNATURE = KEY_PAIR.sign(DATA)
+  }
+}
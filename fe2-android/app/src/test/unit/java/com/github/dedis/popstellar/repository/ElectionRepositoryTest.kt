@@ -4,17 +4,23 @@ import android.app.Application
 import androidx.test.core.app.ApplicationProvider
 import androidx.test.ext.junit.runners.AndroidJUnit4
 import com.github.dedis.popstellar.model.network.method.message.data.election.ElectionVersion
+import com.github.dedis.popstellar.model.network.method.message.data.election.PlainVote
+import com.github.dedis.popstellar.model.objects.Election
 import com.github.dedis.popstellar.model.objects.Election.ElectionBuilder
 import com.github.dedis.popstellar.model.objects.Lao.Companion.generateLaoId
 import com.github.dedis.popstellar.model.objects.event.EventState
 import com.github.dedis.popstellar.repository.database.AppDatabase
 import com.github.dedis.popstellar.repository.database.event.election.ElectionDao
+import com.github.dedis.popstellar.repository.database.event.election.VoteDao
 import com.github.dedis.popstellar.testutils.Base64DataUtils
 import com.github.dedis.popstellar.testutils.MockitoKotlinHelpers
 import com.github.dedis.popstellar.testutils.ObservableUtils
 import com.github.dedis.popstellar.utility.error.UnknownElectionException
 import io.reactivex.Completable
 import io.reactivex.Single
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
 import org.hamcrest.MatcherAssert
 import org.hamcrest.Matchers
 import org.junit.Assert
@@ -35,6 +41,8 @@ class ElectionRepositoryTest {
   @Mock private lateinit var appDatabase: AppDatabase
 
   @Mock private lateinit var electionDao: ElectionDao
+
+  @Mock private lateinit var voteDao: VoteDao
   private lateinit var repo: ElectionRepository
 
   @JvmField @Rule(order = 0) val mockitoRule: MockitoRule = MockitoJUnit.rule()
@@ -42,12 +50,16 @@ class ElectionRepositoryTest {
   @Before
   fun setup() {
     Mockito.`when`(appDatabase.electionDao()).thenReturn(electionDao)
+    Mockito.`when`(appDatabase.voteDao()).thenReturn(voteDao)
     repo = ElectionRepository(appDatabase, application)
 
     Mockito.`when`(electionDao.getElectionsByLaoId(ArgumentMatchers.anyString()))
       .thenReturn(Single.just(emptyList()))
     Mockito.`when`(electionDao.insert(MockitoKotlinHelpers.any()))
       .thenReturn(Completable.complete())
+    Mockito.`when`(voteDao.getVotesByLaoId(ArgumentMatchers.anyString()))
+      .thenReturn(Single.just(emptyList()))
+    Mockito.`when`(voteDao.insert(MockitoKotlinHelpers.any())).thenReturn(Completable.complete())
   }
 
   @Test
@@ -87,6 +99,68 @@ class ElectionRepositoryTest {
     )
   }
 
+  @Test
+  @Throws(UnknownElectionException::class)
+  fun addingVotesDispatchesANewVersionOfTheElection() {
+    val election =
+      ElectionBuilder(LAO_ID, 100321024, "Election with votes")
+        .setElectionVersion(ElectionVersion.OPEN_BALLOT)
+        .build()
+    repo.updateElection(election)
+    val electionObserver = repo.getElectionObservable(LAO_ID, election.id).test()
+
+    val sender = Base64DataUtils.generatePublicKey()
+    val messageId = Base64DataUtils.generateMessageID()
+    val questionId = Election.generateElectionQuestionId(election.id, "Question")
+    val votes = listOf(PlainVote(questionId, 1, false, null, election.id))
+    repo.addVotes(election, sender, messageId, votes)
+
+    // A new version of the election is dispatched, the previous one is left untouched
+    val stored = repo.getElection(LAO_ID, election.id)
+    ObservableUtils.assertCurrentValueIs(electionObserver, stored)
+    Assert.assertEquals(votes, stored.votesBySender[sender])
+    Assert.assertEquals(messageId, stored.messageMap[sender])
+    Assert.assertTrue(election.votesBySender.isEmpty())
+
+    // Only the vote is persisted, the election is not rewritten
+    Mockito.verify(voteDao).insert(MockitoKotlinHelpers.any())
+    Mockito.verify(electionDao, Mockito.times(1)).insert(MockitoKotlinHelpers.any())
+  }
+
+  @Test
+  fun electionsOfTwoChannelsOfALaoAreUpdatedConcurrently() {
+    val laoId = generateLaoId(Base64DataUtils.generatePublicKey(), 100321004, "Concurrent lao")
+    val lanes = 2
+    val electionsPerLane = 200
+    val elections =
+      (0 until lanes * electionsPerLane).map {
+        ElectionBuilder(laoId, 100321014L + it, "Election $it")
+          .setElectionVersion(ElectionVersion.OPEN_BALLOT)
+          .build()
+      }
+    val start = CountDownLatch(1)
+    val executor = Executors.newFixedThreadPool(lanes)
+
+    // Each lane handles the elections of its own channels, as the network manager does
+    val futures =
+      (0 until lanes).map { lane ->
+        executor.submit {
+          start.await()
+          elections.drop(lane * electionsPerLane).take(electionsPerLane).forEach {
+            repo.updateElection(it)
+          }
+        }
+      }
+    start.countDown()
+    futures.forEach { it.get(10, TimeUnit.SECONDS) }
+    executor.shutdown()
+
+    // No update is lost and the last set emitted holds all the elections
+    val observer = repo.getElectionsObservableInLao(laoId).test()
+    ObservableUtils.assertCurrentValueIs(observer, elections.toSet())
+    elections.forEach { Assert.assertEquals(it, repo.getElection(laoId, it.id)) }
+  }
+
   @Test
   fun retrievingAnInvalidElectionThrowsAnException() {
     Assert.assertThrows(UnknownElectionException::class.java) {
@@ -15,6 +15,7 @@ import com.github.dedis.popstellar.repository.database.AppDatabase
 import com.github.dedis.popstellar.repository.database.digitalcash.HashDao
 import com.github.dedis.popstellar.repository.database.digitalcash.TransactionDao
 import com.github.dedis.popstellar.repository.database.event.election.ElectionDao
+import com.github.dedis.popstellar.repository.database.event.election.VoteDao
 import com.github.dedis.popstellar.repository.database.event.meeting.MeetingDao
 import com.github.dedis.popstellar.repository.database.event.rollcall.RollCallDao
 import com.github.dedis.popstellar.repository.database.witnessing.PendingDao
@@ -51,6 +52,7 @@ class WitnessingRepositoryTest {
   @Mock private lateinit var transactionDao: TransactionDao
   @Mock private lateinit var hashDao: HashDao
   @Mock private lateinit var electionDao: ElectionDao
+  @Mock private lateinit var voteDao: VoteDao
   @Mock private lateinit var meetingDao: MeetingDao
 
   private lateinit var witnessingRepository: WitnessingRepository
@@ -69,6 +71,7 @@ class WitnessingRepositoryTest {
     Mockito.`when`(appDatabase.pendingDao()).thenReturn(pendingDao)
     Mockito.`when`(appDatabase.rollCallDao()).thenReturn(rollCallDao)
     Mockito.`when`(appDatabase.electionDao()).thenReturn(electionDao)
+    Mockito.`when`(appDatabase.voteDao()).thenReturn(voteDao)
     Mockito.`when`(appDatabase.meetingDao()).thenReturn(meetingDao)
     Mockito.`when`(appDatabase.transactionDao()).thenReturn(transactionDao)
     Mockito.`when`(appDatabase.hashDao()).thenReturn(hashDao)
@@ -118,6 +121,8 @@ class WitnessingRepositoryTest {
       .thenReturn(Single.just(emptyList()))
     Mockito.`when`(electionDao.insert(MockitoKotlinHelpers.any()))
       .thenReturn(Completable.complete())
+    Mockito.`when`(voteDao.getVotesByLaoId(ArgumentMatchers.anyString()))
+      .thenReturn(Single.just(emptyList()))
 
     Mockito.`when`(meetingDao.insert(MockitoKotlinHelpers.any())).thenReturn(Completable.complete())
     Mockito.`when`(meetingDao.getMeetingsByLaoId(ArgumentMatchers.anyString()))
@@ -0,0 +1,148 @@
+package com.github.dedis.popstellar.repository.database
+
+import androidx.sqlite.db.SupportSQLiteDatabase
+import androidx.sqlite.db.SupportSQLiteOpenHelper
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.github.dedis.popstellar.di.DataRegistryModule
+import com.github.dedis.popstellar.di.JsonModule
+import com.github.dedis.popstellar.model.network.method.message.data.election.ElectionVersion
+import com.github.dedis.popstellar.model.network.method.message.data.election.PlainVote
+import com.github.dedis.popstellar.model.network.method.message.data.election.Vote
+import com.github.dedis.popstellar.model.objects.Election
+import com.github.dedis.popstellar.model.objects.Election.ElectionBuilder
+import com.github.dedis.popstellar.model.objects.Lao.Companion.generateLaoId
+import com.github.dedis.popstellar.testutils.Base64DataUtils
+import com.google.gson.JsonArray
+import com.google.gson.JsonObject
+import com.google.gson.JsonParser
+import com.google.gson.JsonPrimitive
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+class AppDatabaseMigrationsTest {
+  private lateinit var helper: SupportSQLiteOpenHelper
+  private lateinit var database: SupportSQLiteDatabase
+
+  @Before
+  fun before() {
+    // In-memory database holding the elections table as it was in version 4
+    val configuration =
+      SupportSQLiteOpenHelper.Configuration.builder(ApplicationProvider.getApplicationContext())
+        .name(null)
+        .callback(
+          object : SupportSQLiteOpenHelper.Callback(4) {
+            override fun onCreate(db: SupportSQLiteDatabase) {
+              db.execSQL(
+                "CREATE TABLE IF NOT EXISTS `elections` (`election_id` TEXT NOT NULL, `lao_id` TEXT NOT NULL, `election` TEXT NOT NULL, PRIMARY KEY(`election_id`))"
+              )
+            }
+
+            override fun onUpgrade(db: SupportSQLiteDatabase, oldVersion: Int, newVersion: Int) {
+              // Never upgraded
+            }
+          }
+        )
+        .build()
+    helper = FrameworkSQLiteOpenHelperFactory().create(configuration)
+    database = helper.writableDatabase
+  }
+
+  @After
+  fun close() {
+    helper.close()
+  }
+
+  @Test
+  fun votesAreMovedOutOfTheElections() {
+    // Election serialized with its votes, as it was stored before version 5
+    val legacyElection = JsonParser.parseString(CONVERTERS.electionToString(ELECTION)).asJsonObject
+    val ballot = JsonArray()
+    VOTES.forEach { ballot.add(GSON.toJsonTree(it, Vote::class.java)) }
+    legacyElection.add("votesBySender", JsonObject().apply { add(SENDER.encoded, ballot) })
+    legacyElection.add(
+      "messageMap",
+      JsonObject().apply { add(SENDER.encoded, JsonPrimitive(MESSAGE_ID.encoded)) }
+    )
+    database.execSQL(
+      "INSERT INTO elections (election_id, lao_id, election) VALUES (?, ?, ?)",
+      arrayOf(ELECTION.id, LAO_ID, legacyElection.toString())
+    )
+
+    AppDatabaseMigrations.MIGRATION_4_5.migrate(database)
+
+    database.query("SELECT election_id, lao_id, sender, message_id, votes FROM votes").use {
+      Assert.assertEquals(1, it.count)
+      it.moveToFirst()
+      Assert.assertEquals(ELECTION.id, it.getString(0))
+      Assert.assertEquals(LAO_ID, it.getString(1))
+      Assert.assertEquals(SENDER, CONVERTERS.publicKeyFromString(it.getString(2)))
+      Assert.assertEquals(MESSAGE_ID, CONVERTERS.messageIDFromString(it.getString(3)))
+      Assert.assertEquals(VOTES, CONVERTERS.listOfVotesFromString(it.getString(4)))
+    }
+    database.query("SELECT election FROM elections").use {
+      it.moveToFirst()
+      val election = JsonParser.parseString(it.getString(0)).asJsonObject
+      Assert.assertFalse(election.has("votesBySender"))
+      Assert.assertFalse(election.has("messageMap"))
+      Assert.assertEquals(ELECTION, CONVERTERS.electionFromString(it.getString(0)))
+    }
+  }
+
+  @Test
+  fun electionsWithoutVotesAreKept() {
+    database.execSQL(
+      "INSERT INTO elections (election_id, lao_id, election) VALUES (?, ?, ?)",
+      arrayOf(ELECTION.id, LAO_ID, CONVERTERS.electionToString(ELECTION))
+    )
+
+    AppDatabaseMigrations.MIGRATION_4_5.migrate(database)
+
+    database.query("SELECT * FROM votes").use { Assert.assertEquals(0, it.count) }
+    database.query("SELECT election FROM elections").use {
+      it.moveToFirst()
+      Assert.assertEquals(ELECTION, CONVERTERS.electionFromString(it.getString(0)))
+    }
+  }
+
+  @Test
+  fun migrationsFromVersion4CreateTheNewTables() {
+    AppDatabaseMigrations.ALL.forEach { it.migrate(database) }
+
+    database.query("SELECT name FROM sqlite_master WHERE type = 'table'").use {
+      val tables = HashSet<String>()
+      while (it.moveToNext()) {
+        tables.add(it.getString(0))
+      }
+      Assert.assertTrue(tables.containsAll(listOf("votes", "catchup_marks", "outbox")))
+    }
+  }
+
+  companion object {
+    private val GSON = JsonModule.provideGson(DataRegistryModule.provideDataRegistryForGson())
+    private val CONVERTERS = CustomTypeConverters(GSON)
+
+    private val LAO_ID = generateLaoId(Base64DataUtils.generatePublicKey(), 1000, "Lao")
+    private val ELECTION =
+      ElectionBuilder(LAO_ID, 1010, "Election")
+        .setElectionVersion(ElectionVersion.OPEN_BALLOT)
+        .build()
+    private val SENDER = Base64DataUtils.generatePublicKey()
+    private val MESSAGE_ID = Base64DataUtils.generateMessageID()
+    private val VOTES: List<Vote> =
+      listOf(
+        PlainVote(
+          Election.generateElectionQuestionId(ELECTION.id, "Question"),
+          1,
+          false,
+          null,
+          ELECTION.id
+        )
+      )
+  }
+}
@@ -0,0 +1,62 @@
+package com.github.dedis.popstellar.repository.database
+
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.github.dedis.popstellar.di.AppDatabaseModuleHelper.getAppDatabase
+import io.reactivex.Completable
+import io.reactivex.disposables.CompositeDisposable
+import io.reactivex.plugins.RxJavaPlugins
+import io.reactivex.schedulers.Schedulers
+import java.util.concurrent.atomic.AtomicInteger
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+class DatabaseBatchTest {
+  private lateinit var appDatabase: AppDatabase
+
+  @Before
+  fun before() {
+    RxJavaPlugins.setIoSchedulerHandler { Schedulers.trampoline() }
+    appDatabase = getAppDatabase(ApplicationProvider.getApplicationContext())
+  }
+
+  @After
+  fun close() {
+    appDatabase.close()
+    RxJavaPlugins.reset()
+  }
+
+  @Test
+  fun writesAreDeferredUntilTheEndOfTheBatch() {
+    val written = AtomicInteger()
+    val write = Completable.fromAction { written.incrementAndGet() }
+
+    val batch =
+      DatabaseBatch.run(appDatabase) {
+        DatabaseBatch.submit(CompositeDisposable(), write)
+        DatabaseBatch.submit(CompositeDisposable(), write)
+        Assert.assertEquals(0, written.get())
+      }
+    batch.test().assertComplete()
+
+    Assert.assertEquals(2, written.get())
+  }
+
+  @Test
+  fun writesAreCommittedWhenTheBatchIsDisposed() {
+    val written = AtomicInteger()
+    val write = Completable.fromAction { written.incrementAndGet() }
+
+    // The repositories consider the messages persisted once the batch is over
+    DatabaseBatch.run(appDatabase) { DatabaseBatch.submit(CompositeDisposable(), write) }
+      .subscribe()
+      .dispose()
+    DatabaseBatch.run(appDatabase) { DatabaseBatch.submit(CompositeDisposable(), write) }
+
+    Assert.assertEquals(2, written.get())
+  }
+}
@@ -0,0 +1,44 @@
+package com.github.dedis.popstellar.repository.database
+
+import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.repository.database.message.MessageCache
+import com.github.dedis.popstellar.testutils.Base64DataUtils
+import org.junit.Assert
+import org.junit.Test
+
+class MessageCacheTest {
+
+  @Test
+  fun countsHitsAndMisses() {
+    val cache = MessageCache(1024 * 1024)
+    val messageID = Base64DataUtils.generateMessageID()
+
+    Assert.assertNull(cache[messageID])
+    cache.put(messageID, MessageGeneral.EMPTY)
+    Assert.assertSame(MessageGeneral.EMPTY, cache[messageID])
+
+    val stats = cache.stats
+    Assert.assertEquals(1, stats.hits)
+    Assert.assertEquals(1, stats.misses)
+    Assert.assertEquals(0, stats.evictions)
+  }
+
+  @Test
+  fun evictsLeastRecentlyUsedOverBudget() {
+    // A single segment holding only a few entries
+    val cache = MessageCache(1024, 1)
+    val messageIds = (0 until 10).map { Base64DataUtils.generateMessageID() }
+
+    messageIds.forEach {
+      cache.put(it, MessageGeneral.EMPTY)
+      // Keep accessing the first message so that it is never the least recently used
+      cache[messageIds[0]]
+    }
+
+    Assert.assertNotNull(cache[messageIds[0]])
+    Assert.assertNotNull(cache[messageIds[9]])
+    Assert.assertNull(cache[messageIds[1]])
+    Assert.assertTrue(cache.stats.evictions > 0)
+    Assert.assertTrue(cache.stats.weight <= 1024)
+  }
+}
@@ -60,6 +60,21 @@ class MessageDatabaseTest {
     Assert.assertEquals(message, messageDao.getMessageById(messageID))
   }
 
+  @Test
+  fun getPresentAndAllMessageIdsTest() {
+    val messageID = Base64DataUtils.generateMessageID()
+    val absentID = Base64DataUtils.generateMessageID()
+    val testObserver = messageDao.insert(MessageEntity(messageID, null)).test()
+    testObserver.awaitTerminalEvent()
+    testObserver.assertComplete()
+
+    Assert.assertEquals(
+      listOf(messageID),
+      messageDao.getPresentMessageIds(listOf(messageID, absentID))
+    )
+    Assert.assertEquals(listOf(messageID), messageDao.getAllMessageIds())
+  }
+
   @Test
   fun insertWithSameIdReplaceTest() {
     val messageID = Base64DataUtils.generateMessageID()
@@ -72,13 +87,13 @@ class MessageDatabaseTest {
     testObserver2.assertComplete()
 
     // Check that there's only 1 element
-    messageDao.takeFirstNMessages(2).test().assertValue { messageEntities: List<MessageEntity> ->
+    messageDao.getLatestMessages(2).test().assertValue { messageEntities: List<MessageEntity> ->
       (messageEntities.size == 1 && messageEntities[0].messageId == messageID)
     }
   }
 
   @Test
-  fun retrieveFirstNMessagesTest() {
+  fun retrieveLatestMessagesTest() {
     val messageID1 = Base64DataUtils.generateMessageID()
     val messageID2 = Base64DataUtils.generateMessageID()
     val messageID3 = Base64DataUtils.generateMessageID()
@@ -94,11 +109,11 @@ class MessageDatabaseTest {
     testObserver.awaitTerminalEvent()
     testObserver.assertComplete()
 
-    messageDao.takeFirstNMessages(3).test().assertValue { messageEntities: List<MessageEntity> ->
-      (messageEntities.size == 3 &&
-        messageEntities[0].messageId == messageID1 &&
-        messageEntities[1].messageId == messageID2 &&
-        messageEntities[2].messageId == messageID3)
+    // The messages written last come first
+    messageDao.getLatestMessages(2).test().assertValue { messageEntities: List<MessageEntity> ->
+      (messageEntities.size == 2 &&
+        messageEntities[0].messageId == messageID3 &&
+        messageEntities[1].messageId == messageID2)
     }
   }
 }
@@ -0,0 +1,34 @@
+package com.github.dedis.popstellar.repository.database
+
+import com.github.dedis.popstellar.repository.database.message.MessageIdFilter
+import com.github.dedis.popstellar.testutils.Base64DataUtils
+import org.junit.Assert
+import org.junit.Test
+
+class MessageIdFilterTest {
+
+  @Test
+  fun addedIdsAreAlwaysFound() {
+    val filter = MessageIdFilter()
+    val messageIds = (0 until 1000).map { Base64DataUtils.generateMessageID() }
+    messageIds.forEach { filter.put(it) }
+
+    messageIds.forEach { Assert.assertTrue(filter.mightContain(it)) }
+  }
+
+  @Test
+  fun emptyFilterContainsNothing() {
+    Assert.assertFalse(MessageIdFilter().mightContain(Base64DataUtils.generateMessageID()))
+  }
+
+  @Test
+  fun falsePositivesAreRare() {
+    val filter = MessageIdFilter()
+    repeat(10000) { filter.put(Base64DataUtils.generateMessageID()) }
+
+    val falsePositives = (0 until 10000).count {
+      filter.mightContain(Base64DataUtils.generateMessageID())
+    }
+    Assert.assertTrue("$falsePositives false positives", falsePositives < 100)
+  }
+}
@@ -0,0 +1,43 @@
+package com.github.dedis.popstellar.repository.remote
+
+import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.network.method.message.data.lao.CreateLao
+import com.github.dedis.popstellar.testutils.Base64DataUtils
+import com.google.gson.Gson
+import org.junit.Assert
+import org.junit.Test
+
+class CatchupMarkTest {
+  @Test
+  fun markIsFoundInACatchupStartingWithTheSameMessages() {
+    val mark = CatchupMark.of(MESSAGES.subList(0, 2), 2)!!
+
+    Assert.assertEquals(2, mark.handledCount(MESSAGES))
+    Assert.assertEquals(2, mark.handledCount(MESSAGES.subList(0, 2)))
+  }
+
+  @Test
+  fun markIsNotFoundInADifferentCatchup() {
+    val mark = CatchupMark.of(MESSAGES, 2)!!
+
+    // Too short
+    Assert.assertEquals(0, mark.handledCount(MESSAGES.subList(0, 1)))
+    // Another order
+    Assert.assertEquals(0, mark.handledCount(listOf(MESSAGES[1], MESSAGES[0], MESSAGES[2])))
+    // Same last message but another message before it
+    Assert.assertEquals(0, mark.handledCount(listOf(MESSAGES[2], MESSAGES[1], MESSAGES[0])))
+  }
+
+  @Test
+  fun noMarkWithoutHandledMessages() {
+    Assert.assertNull(CatchupMark.of(MESSAGES, 0))
+  }
+
+  companion object {
+    private val KEY_PAIR = Base64DataUtils.generateKeyPair()
+    private val MESSAGES =
+      listOf("a", "b", "c").map {
+        MessageGeneral(KEY_PAIR, CreateLao(it, KEY_PAIR.publicKey, ArrayList()), Gson())
+      }
+  }
+}
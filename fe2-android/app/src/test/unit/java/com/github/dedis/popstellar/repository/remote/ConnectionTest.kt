@@ -1,16 +1,25 @@
 package com.github.dedis.popstellar.repository.remote
 
 import com.github.dedis.popstellar.model.network.GenericMessage
+import com.github.dedis.popstellar.model.network.answer.Error
+import com.github.dedis.popstellar.model.network.answer.ErrorCode
 import com.github.dedis.popstellar.model.network.answer.Result
+import com.github.dedis.popstellar.model.network.method.Broadcast
+import com.github.dedis.popstellar.model.network.method.Catchup
 import com.github.dedis.popstellar.model.network.method.Message
 import com.github.dedis.popstellar.model.network.method.Subscribe
+import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.network.method.message.data.rollcall.CreateRollCall
 import com.github.dedis.popstellar.model.objects.Channel
 import com.github.dedis.popstellar.model.objects.PeerAddress
+import com.github.dedis.popstellar.testutils.Base64DataUtils
+import com.google.gson.Gson
 import com.tinder.scarlet.Lifecycle
 import com.tinder.scarlet.ShutdownReason
 import com.tinder.scarlet.WebSocket
 import io.reactivex.Observable
 import io.reactivex.subjects.BehaviorSubject
+import io.reactivex.subjects.PublishSubject
 import java.util.function.Function
 import org.junit.Assert
 import org.junit.Test
@@ -47,13 +56,15 @@ class ConnectionTest {
 
     // Create connection and retrieve events
     val connection = Connection(URL, service, manualState)
-    val connectionMessages = connection.observeMessage()
+    val connectionMessages = connection.observeMessage().test()
     // Publish message to the pipeline
     val message: GenericMessage = Result(5)
     messages.onNext(message)
 
     // Make sure the event was receive
-    connectionMessages.test().assertValueCount(1).assertValue(message)
+    connectionMessages.assertValueCount(1).assertValue(message)
+    // A late subscriber does not see the messages received before
+    connection.observeMessage().test().assertNoValues()
     Mockito.verify(service).observeMessage()
     Mockito.verify(service, Mockito.atLeastOnce()).observeWebsocket()
     Mockito.verifyNoMoreInteractions(service)
@@ -83,6 +94,102 @@ class ConnectionTest {
     Mockito.verifyNoMoreInteractions(service)
   }
 
+  @Test
+  fun slowSubscribersMakeTheBufferDropTheOldestBroadcasts() {
+    val service = Mockito.mock(LAOService::class.java)
+    val messages = BehaviorSubject.create<GenericMessage>()
+
+    Mockito.`when`(service.observeMessage()).thenReturn(messages)
+    Mockito.`when`(service.observeWebsocket()).thenReturn(BehaviorSubject.create())
+
+    val manualState: BehaviorSubject<Lifecycle.State> = BehaviorSubject.create()
+    val connection = Connection(URL, service, manualState, 4)
+    // The subscriber does not request anything yet
+    val subscriber = connection.observeBroadcasts().test(0)
+
+    // The first broadcasts are prefetched for the subscriber, the next ones fill the buffer
+    val count = Connection.DISPATCH_PREFETCH + 4 + 3
+    for (i in 0 until count) {
+      messages.onNext(broadcast(i))
+    }
+    Assert.assertEquals(Connection.InboundStats(4, 3), connection.inboundStats())
+
+    subscriber.requestMore(count.toLong())
+    subscriber.assertValueCount(count - 3)
+    // The 3 oldest buffered broadcasts were dropped
+    Assert.assertEquals(
+      broadcast(Connection.DISPATCH_PREFETCH + 3).channel,
+      (subscriber.values()[Connection.DISPATCH_PREFETCH] as Broadcast).channel
+    )
+    Assert.assertEquals(Connection.InboundStats(0, 3), connection.inboundStats())
+  }
+
+  @Test
+  fun answersAreNeitherDroppedNorDelayedByTheBroadcasts() {
+    val service = Mockito.mock(LAOService::class.java)
+    val messages = BehaviorSubject.create<GenericMessage>()
+
+    Mockito.`when`(service.observeMessage()).thenReturn(messages)
+    Mockito.`when`(service.observeWebsocket()).thenReturn(BehaviorSubject.create())
+
+    val connection = Connection(URL, service, BehaviorSubject.create(), 4)
+    // The broadcasts are not requested, as if their handling was lagging behind
+    connection.observeBroadcasts().test(0)
+    val answers = connection.observeControlMessages().test()
+
+    val count = Connection.DISPATCH_PREFETCH + 4 + 3
+    for (i in 0 until count) {
+      messages.onNext(broadcast(i))
+      messages.onNext(Result(i))
+    }
+
+    answers.assertValueCount(count)
+    Assert.assertEquals(Connection.InboundStats(4, 3), connection.inboundStats())
+  }
+
+  @Test
+  fun websocketIsOnlyObservedOnceSubscribed() {
+    val service = Mockito.mock(LAOService::class.java)
+    val messages = PublishSubject.create<GenericMessage>()
+
+    Mockito.`when`(service.observeMessage()).thenReturn(messages)
+    Mockito.`when`(service.observeWebsocket()).thenReturn(BehaviorSubject.create())
+
+    val connection = Connection(URL, service, BehaviorSubject.create())
+    // No message can be consumed before someone listens to it
+    Assert.assertFalse(messages.hasObservers())
+
+    val observer = connection.observeMessage().test()
+    Assert.assertTrue(messages.hasObservers())
+    val result = Result(1)
+    messages.onNext(result)
+    observer.assertValues(result)
+  }
+
+  @Test
+  fun linkStatsCountFramesAndReconnects() {
+    val service = Mockito.mock(LAOService::class.java)
+    val messages = BehaviorSubject.create<GenericMessage>()
+    val events: BehaviorSubject<WebSocket.Event> = BehaviorSubject.create()
+
+    Mockito.`when`(service.observeMessage()).thenReturn(messages)
+    Mockito.`when`(service.observeWebsocket()).thenReturn(events)
+
+    val connection = Connection(URL, service, BehaviorSubject.create())
+    events.onNext(WebSocket.Event.OnConnectionOpened("Fake WebSocket"))
+    events.onNext(WebSocket.Event.OnConnectionClosed(ShutdownReason.GRACEFUL))
+    events.onNext(WebSocket.Event.OnConnectionOpened("Fake WebSocket"))
+    connection.sendMessage(Subscribe(Channel.ROOT, 1))
+    messages.onNext(Result(1))
+    messages.onNext(Result(2))
+
+    val stats = connection.linkStats()
+    Assert.assertEquals(1, stats.framesSent)
+    Assert.assertEquals(2, stats.framesReceived)
+    Assert.assertEquals(1, stats.reconnects)
+    Assert.assertTrue(connection.isConnected)
+  }
+
   @Test
   fun connectionClosesGracefully() {
     val service = Mockito.mock(LAOService::class.java)
@@ -94,8 +201,11 @@ class ConnectionTest {
     val manualState: BehaviorSubject<Lifecycle.State> =
       BehaviorSubject.createDefault(Lifecycle.State.Started)
     val connection = Connection("url", service, manualState)
+    val connectionMessages = connection.observeMessage().test()
     connection.close()
 
+    connectionMessages.assertComplete()
+
     Assert.assertEquals(
       Lifecycle.State.Stopped.WithReason(ShutdownReason.GRACEFUL),
       manualState.value
@@ -132,7 +242,103 @@ class ConnectionTest {
     Mockito.verifyNoMoreInteractions(service)
   }
 
+  @Test
+  fun multiConnectionMergesPeersAndDropsDuplicatedBroadcasts() {
+    val mainService = Mockito.mock(LAOService::class.java)
+    val mainMessages = BehaviorSubject.create<GenericMessage>()
+    Mockito.`when`(mainService.observeMessage()).thenReturn(mainMessages)
+    Mockito.`when`(mainService.observeWebsocket()).thenReturn(BehaviorSubject.create())
+
+    val peerService = Mockito.mock(LAOService::class.java)
+    val peerMessages = BehaviorSubject.create<GenericMessage>()
+    Mockito.`when`(peerService.observeMessage()).thenReturn(peerMessages)
+    Mockito.`when`(peerService.observeWebsocket()).thenReturn(BehaviorSubject.create())
+
+    val manualState: BehaviorSubject<Lifecycle.State> =
+      BehaviorSubject.createDefault(Lifecycle.State.Started)
+    val provider = Function { url: String ->
+      Connection(url, if (url == "url") mainService else peerService, manualState)
+    }
+    val multiConnection = MultiConnection(provider, "url")
+    multiConnection.connectToPeers(listOf(PeerAddress("url2")))
+
+    val observer = multiConnection.observeMessage().test()
+
+    val message =
+      MessageGeneral(
+        Base64DataUtils.generateKeyPair(),
+        CreateRollCall("title", 0, 1, 2, "EPFL", "rc", "an id"),
+        Gson()
+      )
+    val broadcast = Broadcast(Channel.ROOT, message)
+    // The peer is the only one to deliver the first result, proving it is observed while the main
+    // connection is still open
+    val result = Result(3)
+    peerMessages.onNext(result)
+    mainMessages.onNext(broadcast)
+    peerMessages.onNext(broadcast)
+
+    observer.assertValues(result, broadcast)
+    Assert.assertEquals(
+      MultiConnection.DeliveryStats(1, 0),
+      multiConnection.deliveryStats()[PeerAddress("url")]
+    )
+    Assert.assertEquals(
+      MultiConnection.DeliveryStats(2, 1),
+      multiConnection.deliveryStats()[PeerAddress("url2")]
+    )
+  }
+
+  @Test
+  fun multiConnectionRetriesAFailedCatchupOnTheNextPeer() {
+    val mainService = Mockito.mock(LAOService::class.java)
+    val mainMessages = BehaviorSubject.create<GenericMessage>()
+    Mockito.`when`(mainService.observeMessage()).thenReturn(mainMessages)
+    Mockito.`when`(mainService.observeWebsocket()).thenReturn(BehaviorSubject.create())
+
+    val peerService = Mockito.mock(LAOService::class.java)
+    val peerMessages = BehaviorSubject.create<GenericMessage>()
+    Mockito.`when`(peerService.observeMessage()).thenReturn(peerMessages)
+    Mockito.`when`(peerService.observeWebsocket()).thenReturn(BehaviorSubject.create())
+
+    val manualState: BehaviorSubject<Lifecycle.State> =
+      BehaviorSubject.createDefault(Lifecycle.State.Started)
+    val provider = Function { url: String ->
+      Connection(url, if (url == "url") mainService else peerService, manualState)
+    }
+    val multiConnection = MultiConnection(provider, "url")
+    multiConnection.connectToPeers(listOf(PeerAddress("url2")))
+    val observer = multiConnection.observeMessage().test()
+
+    // The catchup only goes to the main server, which is ranked first
+    val catchup = Catchup(Channel.ROOT, 7)
+    multiConnection.sendMessage(catchup)
+    Mockito.verify(mainService).sendMessage(catchup)
+    Mockito.verify(peerService, Mockito.never()).sendMessage(catchup)
+
+    // Its failure is not delivered, the catchup is sent to the peer instead
+    mainMessages.onNext(Error(7, ErrorCode(-2, "error")))
+    Mockito.verify(peerService).sendMessage(catchup)
+    observer.assertNoValues()
+
+    val result = Result(7)
+    peerMessages.onNext(result)
+    observer.assertValues(result)
+  }
+
   companion object {
     const val URL = "url"
+
+    private val MESSAGE =
+      MessageGeneral(
+        Base64DataUtils.generateKeyPair(),
+        CreateRollCall("title", 0, 1, 2, "EPFL", "rc", "an id"),
+        Gson()
+      )
+
+    /** @return a broadcast told apart from the others by its channel */
+    private fun broadcast(i: Int): Broadcast {
+      return Broadcast(Channel.ROOT.subChannel("channel$i"), MESSAGE)
+    }
   }
 }
@@ -5,6 +5,7 @@ import com.github.dedis.popstellar.testutils.MockitoKotlinHelpers
 import com.github.dedis.popstellar.utility.handler.MessageHandler
 import com.github.dedis.popstellar.utility.scheduler.TestSchedulerProvider
 import com.google.gson.Gson
+import io.reactivex.Flowable
 import io.reactivex.subjects.BehaviorSubject
 import java.util.concurrent.TimeUnit
 import org.junit.Test
@@ -27,12 +28,20 @@ class GlobalNetworkManagerTest {
     val factory = Mockito.mock(ConnectionFactory::class.java)
     val firstConnection = Mockito.mock(MultiConnection::class.java)
 
-    Mockito.`when`(firstConnection.observeMessage()).thenReturn(BehaviorSubject.create())
+    Mockito.`when`(firstConnection.observeBroadcasts()).thenReturn(Flowable.never())
+    Mockito.`when`(firstConnection.observeControlMessages()).thenReturn(Flowable.never())
     Mockito.`when`(firstConnection.observeConnectionEvents()).thenReturn(BehaviorSubject.create())
     Mockito.`when`(factory.createMultiConnection(ArgumentMatchers.anyString()))
       .thenReturn(firstConnection)
 
-    val networkManager = GlobalNetworkManager(handler, factory, gson, schedulerProvider)
+    val networkManager =
+      GlobalNetworkManager(
+        handler,
+        factory,
+        gson,
+        schedulerProvider,
+        TransportMetrics(TrafficCounters(), schedulerProvider)
+      )
     Mockito.verify(factory).createMultiConnection(ArgumentMatchers.anyString())
 
     val sendMessage = networkManager.messageSender.unsubscribe(Channel.ROOT)
@@ -50,16 +59,26 @@ class GlobalNetworkManagerTest {
     val factory = Mockito.mock(ConnectionFactory::class.java)
     val firstConnection = Mockito.mock(MultiConnection::class.java)
 
-    Mockito.`when`(firstConnection.observeMessage()).thenReturn(BehaviorSubject.create())
+    Mockito.`when`(firstConnection.observeBroadcasts()).thenReturn(Flowable.never())
+    Mockito.`when`(firstConnection.observeControlMessages()).thenReturn(Flowable.never())
     Mockito.`when`(firstConnection.observeConnectionEvents()).thenReturn(BehaviorSubject.create())
     Mockito.`when`(factory.createMultiConnection(ArgumentMatchers.anyString()))
       .thenReturn(firstConnection)
 
-    val networkManager = GlobalNetworkManager(handler, factory, gson, TestSchedulerProvider())
+    val schedulerProvider = TestSchedulerProvider()
+    val networkManager =
+      GlobalNetworkManager(
+        handler,
+        factory,
+        gson,
+        schedulerProvider,
+        TransportMetrics(TrafficCounters(), schedulerProvider)
+      )
     Mockito.verify(factory).createMultiConnection(ArgumentMatchers.anyString())
 
     val secondConnection = Mockito.mock(MultiConnection::class.java)
-    Mockito.`when`(secondConnection.observeMessage()).thenReturn(BehaviorSubject.create())
+    Mockito.`when`(secondConnection.observeBroadcasts()).thenReturn(Flowable.never())
+    Mockito.`when`(secondConnection.observeControlMessages()).thenReturn(Flowable.never())
     Mockito.`when`(secondConnection.observeConnectionEvents()).thenReturn(BehaviorSubject.create())
     Mockito.`when`(factory.createMultiConnection(ArgumentMatchers.anyString()))
       .thenReturn(secondConnection)
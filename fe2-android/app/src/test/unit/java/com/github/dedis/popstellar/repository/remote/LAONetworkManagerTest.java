@@ -1,7 +1,9 @@
 package com.github.dedis.popstellar.repository.remote;
 
+import static com.github.dedis.popstellar.repository.remote.LAONetworkManager.MAX_PUBLISH_ATTEMPTS;
 import static com.github.dedis.popstellar.repository.remote.LAONetworkManager.REPROCESSING_DELAY;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
@@ -17,18 +19,26 @@ import com.github.dedis.popstellar.model.network.method.*;
 import com.github.dedis.popstellar.model.network.method.message.MessageGeneral;
 import com.github.dedis.popstellar.model.network.method.message.data.Data;
 import com.github.dedis.popstellar.model.network.method.message.data.lao.CreateLao;
+import com.github.dedis.popstellar.model.network.method.message.data.socialmedia.AddChirp;
 import com.github.dedis.popstellar.model.objects.Channel;
 import com.github.dedis.popstellar.model.objects.PeerAddress;
 import com.github.dedis.popstellar.model.objects.security.KeyPair;
+import com.github.dedis.popstellar.model.objects.security.MessageID;
+import com.github.dedis.popstellar.repository.database.message.OutboxEntity;
 import com.github.dedis.popstellar.testutils.Base64DataUtils;
 import com.github.dedis.popstellar.utility.error.*;
 import com.github.dedis.popstellar.utility.error.keys.NoRollCallException;
 import com.github.dedis.popstellar.utility.handler.MessageHandler;
+import com.github.dedis.popstellar.utility.scheduler.SchedulerProvider;
 import com.github.dedis.popstellar.utility.scheduler.TestSchedulerProvider;
 import com.google.gson.Gson;
 import com.tinder.scarlet.WebSocket;
 import dagger.hilt.android.testing.HiltAndroidRule;
 import dagger.hilt.android.testing.HiltAndroidTest;
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Completable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
 import io.reactivex.disposables.Disposable;
 import io.reactivex.observers.TestObserver;
 import io.reactivex.schedulers.TestScheduler;
@@ -37,6 +47,8 @@ import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import javax.inject.Inject;
+import kotlin.Unit;
+import kotlin.jvm.functions.Function2;
 import org.junit.*;
 import org.junit.rules.RuleChain;
 import org.junit.runner.RunWith;
@@ -70,9 +82,15 @@ public class LAONetworkManagerTest {
   @Before
   public void setup() {
     hiltRule.inject();
-    when(connection.observeMessage()).thenReturn(messages);
+    when(connection.observeBroadcasts())
+        .thenReturn(messages.toFlowable(BackpressureStrategy.BUFFER));
+    when(connection.observeControlMessages())
+        .thenReturn(messages.toFlowable(BackpressureStrategy.BUFFER));
     when(connection.observeConnectionEvents()).thenReturn(events);
     when(connection.connectToPeers(any())).thenReturn(true);
+    when(connection.isConnected()).thenReturn(true);
+    when(handler.handleMessages(any(), any(), any(), any())).thenReturn(Completable.complete());
+    when(handler.startSendingFromOutbox(any())).thenReturn(true);
 
     // Default behavior : success
     Answer<?> answer =
@@ -119,7 +137,8 @@ public class LAONetworkManagerTest {
 
     verify(connection).sendMessage(any(Subscribe.class));
     verify(connection).sendMessage(any(Catchup.class));
-    verify(connection, atLeastOnce()).observeMessage();
+    verify(connection, atLeastOnce()).observeBroadcasts();
+    verify(connection, atLeastOnce()).observeControlMessages();
     verify(connection).observeConnectionEvents();
     verify(connection).close();
     verifyNoMoreInteractions(connection);
@@ -154,7 +173,8 @@ public class LAONetworkManagerTest {
     networkManager.dispose();
 
     verify(connection).sendMessage(any(Unsubscribe.class));
-    verify(connection, atLeastOnce()).observeMessage();
+    verify(connection, atLeastOnce()).observeBroadcasts();
+    verify(connection, atLeastOnce()).observeControlMessages();
     verify(connection).observeConnectionEvents();
     verify(connection).close();
     verifyNoMoreInteractions(connection);
@@ -191,7 +211,8 @@ public class LAONetworkManagerTest {
     networkManager.dispose();
 
     verify(connection).sendMessage(any(Publish.class));
-    verify(connection, atLeastOnce()).observeMessage();
+    verify(connection, atLeastOnce()).observeBroadcasts();
+    verify(connection, atLeastOnce()).observeControlMessages();
     verify(connection).observeConnectionEvents();
     verify(connection).close();
     verifyNoMoreInteractions(connection);
@@ -234,7 +255,8 @@ public class LAONetworkManagerTest {
     networkManager.dispose();
 
     verify(connection).sendMessage(any(Subscribe.class));
-    verify(connection, atLeastOnce()).observeMessage();
+    verify(connection, atLeastOnce()).observeBroadcasts();
+    verify(connection, atLeastOnce()).observeControlMessages();
     verify(connection).observeConnectionEvents();
     verify(connection).close();
     verifyNoMoreInteractions(connection);
@@ -276,12 +298,339 @@ public class LAONetworkManagerTest {
 
     verify(connection, times(2)).sendMessage(any(Subscribe.class));
     verify(connection, times(2)).sendMessage(any(Catchup.class));
-    verify(connection, atLeastOnce()).observeMessage();
+    verify(connection).isConnected(); // The outbox is drained on reconnection
+    verify(connection, atLeastOnce()).observeBroadcasts();
+    verify(connection, atLeastOnce()).observeControlMessages();
     verify(connection).observeConnectionEvents();
     verify(connection).close();
     verifyNoMoreInteractions(connection);
   }
 
+  @Test
+  public void resubscriptionStartsWithTheMostImportantChannels() {
+    TestSchedulerProvider schedulerProvider = new TestSchedulerProvider();
+    TestScheduler testScheduler = schedulerProvider.testScheduler;
+    Channel lao = Channel.getLaoChannel("lao");
+    Channel election = lao.subChannel("election");
+    Channel coin = lao.subChannel("coin");
+    Channel social = lao.subChannel("social").subChannel("chirps");
+    LAONetworkManager networkManager =
+        new LAONetworkManager(
+            handler,
+            connection,
+            JsonModule.provideGson(DataRegistryModuleHelper.buildRegistry()),
+            schedulerProvider,
+            new HashSet<>(Arrays.asList(social, coin, election, lao)));
+
+    List<Channel> resubscribed = new ArrayList<>();
+    Answer<?> answer =
+        args -> {
+          Subscribe subscribe = args.getArgument(0);
+          resubscribed.add(subscribe.getChannel());
+          messages.onNext(new Result(subscribe.getRequestId()));
+          return null;
+        };
+    doAnswer(answer).when(connection).sendMessage(any(Subscribe.class));
+
+    events.onNext(new WebSocket.Event.OnConnectionOpened<>(mock(WebSocket.class)));
+    testScheduler.advanceTimeBy(REPROCESSING_DELAY, TimeUnit.SECONDS);
+
+    assertEquals(Arrays.asList(lao, election, coin, social), resubscribed);
+    verify(connection, times(4)).sendMessage(any(Catchup.class));
+    networkManager.dispose();
+  }
+
+  @Test
+  public void catchupOnlyHandlesTheMessagesAfterTheMark() {
+    TestSchedulerProvider schedulerProvider = new TestSchedulerProvider();
+    TestScheduler testScheduler = schedulerProvider.testScheduler;
+    LAONetworkManager networkManager =
+        new LAONetworkManager(
+            handler,
+            connection,
+            JsonModule.provideGson(DataRegistryModuleHelper.buildRegistry()),
+            schedulerProvider,
+            new HashSet<>());
+
+    MessageGeneral known = new MessageGeneral(KEY_PAIR, DATA, gson);
+    MessageGeneral unknown =
+        new MessageGeneral(
+            KEY_PAIR, new CreateLao("Other", KEY_PAIR.getPublicKey(), new ArrayList<>()), gson);
+    List<MessageGeneral> history = Arrays.asList(known, unknown);
+    when(handler.getCatchupMark(CHANNEL)).thenReturn(CatchupMark.of(history, 1));
+
+    Answer<?> answer =
+        args -> {
+          Catchup catchup = args.getArgument(0);
+          messages.onNext(new ResultMessages(catchup.getRequestId(), history));
+          return null;
+        };
+    doAnswer(answer).when(connection).sendMessage(any(Catchup.class));
+
+    TestObserver<Void> observer = networkManager.catchup(CHANNEL).test();
+    testScheduler.advanceTimeBy(REPROCESSING_DELAY, TimeUnit.SECONDS);
+
+    observer.assertComplete();
+    verify(handler)
+        .handleMessages(any(), eq(CHANNEL), eq(Collections.singletonList(unknown)), any());
+    verify(handler).updateCatchupMark(CHANNEL, history, 2);
+    networkManager.dispose();
+  }
+
+  @Test
+  public void catchupMarkStopsAtTheFirstMessageThatFailed() {
+    TestSchedulerProvider schedulerProvider = new TestSchedulerProvider();
+    TestScheduler testScheduler = schedulerProvider.testScheduler;
+    LAONetworkManager networkManager =
+        new LAONetworkManager(
+            handler,
+            connection,
+            JsonModule.provideGson(DataRegistryModuleHelper.buildRegistry()),
+            schedulerProvider,
+            new HashSet<>());
+
+    MessageGeneral first = new MessageGeneral(KEY_PAIR, DATA, gson);
+    Data failingData = new CreateLao("Failing", KEY_PAIR.getPublicKey(), new ArrayList<>());
+    MessageGeneral failing = new MessageGeneral(KEY_PAIR, failingData, gson);
+    MessageGeneral last =
+        new MessageGeneral(
+            KEY_PAIR, new CreateLao("Last", KEY_PAIR.getPublicKey(), new ArrayList<>()), gson);
+    List<MessageGeneral> history = Arrays.asList(first, failing, last);
+
+    // The second message cannot be handled, it is neither parked nor retried
+    doAnswer(
+            args -> {
+              Function2<MessageGeneral, Exception, Unit> onError = args.getArgument(3);
+              onError.invoke(failing, new DataHandlingException(failingData, "error"));
+              return Completable.complete();
+            })
+        .when(handler)
+        .handleMessages(any(), eq(CHANNEL), any(), any());
+    Answer<?> answer =
+        args -> {
+          Catchup catchup = args.getArgument(0);
+          messages.onNext(new ResultMessages(catchup.getRequestId(), history));
+          return null;
+        };
+    doAnswer(answer).when(connection).sendMessage(any(Catchup.class));
+
+    TestObserver<Void> observer = networkManager.catchup(CHANNEL).test();
+    testScheduler.advanceTimeBy(REPROCESSING_DELAY, TimeUnit.SECONDS);
+
+    // The mark stays before the failed message, so that the next catchup handles it again
+    observer.assertComplete();
+    verify(handler).updateCatchupMark(CHANNEL, history, 1);
+    networkManager.dispose();
+  }
+
+  @Test
+  public void heartbeatFetchesTheUnknownMessagesOfTheSubscribedChannels() {
+    TestSchedulerProvider schedulerProvider = new TestSchedulerProvider();
+    TestScheduler testScheduler = schedulerProvider.testScheduler;
+    LAONetworkManager networkManager =
+        new LAONetworkManager(
+            handler,
+            connection,
+            JsonModule.provideGson(DataRegistryModuleHelper.buildRegistry()),
+            schedulerProvider,
+            new HashSet<>(Collections.singletonList(CHANNEL)));
+
+    MessageID unknown = Base64DataUtils.generateMessageID();
+    Channel other = Channel.ROOT.subChannel("other");
+    when(handler.getUnknownMessages(any())).thenReturn(Collections.singletonList(unknown));
+
+    Map<Channel, List<MessageID>> ids = new HashMap<>();
+    ids.put(CHANNEL, Collections.singletonList(unknown));
+    ids.put(other, Collections.singletonList(Base64DataUtils.generateMessageID()));
+    messages.onNext(new Heartbeat(ids));
+    testScheduler.advanceTimeBy(REPROCESSING_DELAY, TimeUnit.SECONDS);
+
+    // Only the messages of the subscribed channel are fetched
+    Map<Channel, List<MessageID>> expected = new HashMap<>();
+    expected.put(CHANNEL, Collections.singletonList(unknown));
+    verify(connection)
+        .sendMessage(
+            argThat(
+                msg ->
+                    msg instanceof GetMessagesById
+                        && ((GetMessagesById) msg).getMessageIds().equals(expected)));
+    networkManager.dispose();
+  }
+
+  @Test
+  public void deferrablePublishIsQueuedThenSentAndRemoved() {
+    TestSchedulerProvider schedulerProvider = new TestSchedulerProvider();
+    TestScheduler testScheduler = schedulerProvider.testScheduler;
+    LAONetworkManager networkManager =
+        new LAONetworkManager(
+            handler,
+            connection,
+            JsonModule.provideGson(DataRegistryModuleHelper.buildRegistry()),
+            schedulerProvider,
+            new HashSet<>());
+
+    MessageGeneral chirp = new MessageGeneral(KEY_PAIR, new AddChirp("text", null, 0), gson);
+    OutboxEntity entry = new OutboxEntity(chirp.getMessageId(), CHANNEL.getAsString(), chirp, 0);
+    when(handler.addToOutbox(CHANNEL, chirp)).thenReturn(Single.just(true));
+    when(handler.getOutbox())
+        .thenReturn(Collections.singletonList(entry), Collections.emptyList());
+    when(handler.removeFromOutbox(any())).thenReturn(Completable.complete());
+
+    TestObserver<Void> observer = networkManager.publish(CHANNEL, chirp).test();
+    testScheduler.advanceTimeBy(REPROCESSING_DELAY, TimeUnit.SECONDS);
+
+    observer.assertComplete();
+    verify(connection)
+        .sendMessage(
+            argThat(msg -> msg instanceof Publish && ((Publish) msg).getMessage().equals(chirp)));
+    verify(handler).removeFromOutbox(chirp.getMessageId());
+    networkManager.dispose();
+  }
+
+  @Test
+  public void queuedMessageRejectedByTheServerIsRemoved() {
+    TestSchedulerProvider schedulerProvider = new TestSchedulerProvider();
+    TestScheduler testScheduler = schedulerProvider.testScheduler;
+    LAONetworkManager networkManager =
+        new LAONetworkManager(
+            handler,
+            connection,
+            JsonModule.provideGson(DataRegistryModuleHelper.buildRegistry()),
+            schedulerProvider,
+            new HashSet<>());
+
+    MessageGeneral chirp = new MessageGeneral(KEY_PAIR, new AddChirp("text", null, 0), gson);
+    OutboxEntity entry = new OutboxEntity(chirp.getMessageId(), CHANNEL.getAsString(), chirp, 0);
+    when(handler.addToOutbox(CHANNEL, chirp)).thenReturn(Single.just(true));
+    when(handler.getOutbox())
+        .thenReturn(Collections.singletonList(entry), Collections.emptyList());
+    when(handler.removeFromOutbox(any())).thenReturn(Completable.complete());
+
+    Answer<?> answer =
+        args -> {
+          Publish publish = args.getArgument(0);
+          messages.onNext(new Error(publish.getRequestId(), new ErrorCode(-4, "rejected")));
+          return null;
+        };
+    doAnswer(answer).when(connection).sendMessage(any(Publish.class));
+
+    networkManager.publish(CHANNEL, chirp).test();
+    testScheduler.advanceTimeBy(REPROCESSING_DELAY, TimeUnit.SECONDS);
+
+    // Sending the message again would not help
+    verify(connection).sendMessage(any(Publish.class));
+    verify(handler).removeFromOutbox(chirp.getMessageId());
+    verify(handler, never()).setOutboxAttempts(any(), anyInt());
+    verify(handler).stopSendingFromOutbox(chirp.getMessageId());
+    networkManager.dispose();
+  }
+
+  @Test
+  public void queuedMessageIsGivenUpOnAfterItsLastAttempt() {
+    TestSchedulerProvider schedulerProvider = new TestSchedulerProvider();
+    TestScheduler testScheduler = schedulerProvider.testScheduler;
+    LAONetworkManager networkManager =
+        new LAONetworkManager(
+            handler,
+            connection,
+            JsonModule.provideGson(DataRegistryModuleHelper.buildRegistry()),
+            schedulerProvider,
+            new HashSet<>());
+
+    MessageGeneral chirp = new MessageGeneral(KEY_PAIR, new AddChirp("text", null, 0), gson);
+    OutboxEntity entry =
+        new OutboxEntity(
+            chirp.getMessageId(), CHANNEL.getAsString(), chirp, MAX_PUBLISH_ATTEMPTS - 1);
+    when(handler.addToOutbox(CHANNEL, chirp)).thenReturn(Single.just(true));
+    when(handler.getOutbox())
+        .thenReturn(Collections.singletonList(entry), Collections.emptyList());
+    when(handler.removeFromOutbox(any())).thenReturn(Completable.complete());
+
+    // The publish is never answered
+    doNothing().when(connection).sendMessage(any(Publish.class));
+
+    networkManager.publish(CHANNEL, chirp).test();
+    testScheduler.advanceTimeBy(2 * REPROCESSING_DELAY, TimeUnit.SECONDS);
+
+    verify(connection).sendMessage(any(Publish.class));
+    verify(handler).removeFromOutbox(chirp.getMessageId());
+    verify(handler, never()).setOutboxAttempts(any(), anyInt());
+    networkManager.dispose();
+  }
+
+  @Test
+  public void queuedMessageSupersededWhileDrainingIsNotSent() {
+    TestSchedulerProvider schedulerProvider = new TestSchedulerProvider();
+    TestScheduler testScheduler = schedulerProvider.testScheduler;
+    LAONetworkManager networkManager =
+        new LAONetworkManager(
+            handler,
+            connection,
+            JsonModule.provideGson(DataRegistryModuleHelper.buildRegistry()),
+            schedulerProvider,
+            new HashSet<>());
+
+    MessageGeneral chirp = new MessageGeneral(KEY_PAIR, new AddChirp("text", null, 0), gson);
+    OutboxEntity entry = new OutboxEntity(chirp.getMessageId(), CHANNEL.getAsString(), chirp, 0);
+    when(handler.addToOutbox(CHANNEL, chirp)).thenReturn(Single.just(true));
+    when(handler.getOutbox())
+        .thenReturn(Collections.singletonList(entry), Collections.emptyList());
+    // The message was deleted from the outbox after it was read
+    when(handler.startSendingFromOutbox(chirp.getMessageId())).thenReturn(false);
+
+    networkManager.publish(CHANNEL, chirp).test();
+    testScheduler.advanceTimeBy(REPROCESSING_DELAY, TimeUnit.SECONDS);
+
+    verify(connection, never()).sendMessage(any(Publish.class));
+    verify(handler, never()).removeFromOutbox(any());
+    networkManager.dispose();
+  }
+
+  @Test
+  public void outboxIsKeptWhileOfflineAndSentOnceConnected() {
+    TestSchedulerProvider schedulerProvider = new TestSchedulerProvider();
+    TestScheduler testScheduler = schedulerProvider.testScheduler;
+    LAONetworkManager networkManager =
+        new LAONetworkManager(
+            handler,
+            connection,
+            JsonModule.provideGson(DataRegistryModuleHelper.buildRegistry()),
+            schedulerProvider,
+            new HashSet<>());
+
+    // More messages than the attempts a queued message is given
+    List<OutboxEntity> entries = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      MessageGeneral chirp = new MessageGeneral(KEY_PAIR, new AddChirp("text " + i, null, i), gson);
+      entries.add(new OutboxEntity(chirp.getMessageId(), CHANNEL.getAsString(), chirp, 0));
+      when(handler.addToOutbox(CHANNEL, chirp)).thenReturn(Single.just(true));
+    }
+    when(handler.getOutbox()).thenReturn(entries, Collections.emptyList());
+    when(handler.removeFromOutbox(any())).thenReturn(Completable.complete());
+
+    when(connection.isConnected()).thenReturn(false);
+    for (OutboxEntity entry : entries) {
+      networkManager.publish(CHANNEL, entry.getMessage()).test();
+      testScheduler.advanceTimeBy(REPROCESSING_DELAY, TimeUnit.SECONDS);
+    }
+
+    // Nothing is sent nor given up on while offline
+    verify(connection, never()).sendMessage(any(Publish.class));
+    verify(handler, never()).setOutboxAttempts(any(), anyInt());
+    verify(handler, never()).removeFromOutbox(any());
+
+    when(connection.isConnected()).thenReturn(true);
+    events.onNext(new WebSocket.Event.OnConnectionOpened<>(mock(WebSocket.class)));
+    testScheduler.advanceTimeBy(REPROCESSING_DELAY, TimeUnit.SECONDS);
+
+    MessageGeneral first = entries.get(0).getMessage();
+    verify(connection)
+        .sendMessage(
+            argThat(msg -> msg instanceof Publish && ((Publish) msg).getMessage().equals(first)));
+    verify(handler).removeFromOutbox(first.getMessageId());
+    networkManager.dispose();
+  }
+
   @Test
   public void multipleRequestsAtATimeShouldAllSucceed() {
     TestSchedulerProvider schedulerProvider = new TestSchedulerProvider();
@@ -339,7 +688,8 @@ public class LAONetworkManagerTest {
 
     verify(connection, times(2)).sendMessage(any(Subscribe.class));
     verify(connection, times(2)).sendMessage(any(Catchup.class));
-    verify(connection, atLeastOnce()).observeMessage();
+    verify(connection, atLeastOnce()).observeBroadcasts();
+    verify(connection, atLeastOnce()).observeControlMessages();
     verify(connection).observeConnectionEvents();
     verify(connection).close();
     verifyNoMoreInteractions(connection);
@@ -400,6 +750,216 @@ public class LAONetworkManagerTest {
     networkManager.dispose();
   }
 
+  @Test
+  public void broadcastsWithInvalidSignaturesAreDropped()
+      throws UnknownElectionException,
+          UnknownRollCallException,
+          UnknownLaoException,
+          DataHandlingException,
+          NoRollCallException,
+          UnknownWitnessMessageException {
+    TestSchedulerProvider schedulerProvider = new TestSchedulerProvider();
+    TestScheduler testScheduler = schedulerProvider.testScheduler;
+    LAONetworkManager networkManager =
+        new LAONetworkManager(
+            handler,
+            connection,
+            JsonModule.provideGson(DataRegistryModuleHelper.buildRegistry()),
+            schedulerProvider,
+            new HashSet<>());
+
+    MessageGeneral valid = new MessageGeneral(KEY_PAIR, DATA, gson);
+    // Same message, claimed to be sent by someone else
+    MessageGeneral forged =
+        new MessageGeneral(
+            Base64DataUtils.generateKeyPair().getPublicKey(),
+            valid.getDataEncoded(),
+            valid.getData(),
+            valid.getSignature(),
+            valid.getMessageId(),
+            Collections.emptyList());
+
+    messages.onNext(new Broadcast(CHANNEL, forged));
+    messages.onNext(new Broadcast(CHANNEL, valid));
+    testScheduler.triggerActions();
+
+    verify(handler).handleMessage(any(), eq(CHANNEL), eq(valid));
+    verify(handler, never()).handleMessage(any(), any(), eq(forged));
+
+    networkManager.dispose();
+  }
+
+  @Test
+  public void broadcastsAlreadyHandledAreDroppedBeforeDecodingTheirData()
+      throws UnknownElectionException,
+          UnknownRollCallException,
+          UnknownLaoException,
+          DataHandlingException,
+          NoRollCallException,
+          UnknownWitnessMessageException {
+    TestSchedulerProvider schedulerProvider = new TestSchedulerProvider();
+    TestScheduler testScheduler = schedulerProvider.testScheduler;
+    LAONetworkManager networkManager =
+        new LAONetworkManager(
+            handler,
+            connection,
+            JsonModule.provideGson(DataRegistryModuleHelper.buildRegistry()),
+            schedulerProvider,
+            new HashSet<>());
+
+    MessageGeneral valid = new MessageGeneral(KEY_PAIR, DATA, gson);
+    AtomicBoolean decoded = new AtomicBoolean(false);
+    MessageGeneral known =
+        new MessageGeneral(
+            valid.getSender(),
+            valid.getDataEncoded(),
+            () -> {
+              decoded.set(true);
+              return DATA;
+            },
+            valid.getSignature(),
+            valid.getMessageId(),
+            Collections.emptyList());
+    when(handler.isMessageHandled(valid.getMessageId())).thenReturn(true);
+
+    messages.onNext(new Broadcast(CHANNEL, known));
+    testScheduler.triggerActions();
+
+    verify(handler, never()).handleMessage(any(), any(), any(MessageGeneral.class));
+    assertFalse(decoded.get());
+
+    networkManager.dispose();
+  }
+
+  @Test
+  public void handledBroadcastsAreLookedUpOnTheIoPool() {
+    TestScheduler io = new TestScheduler();
+    TestScheduler computation = new TestScheduler();
+    SchedulerProvider schedulerProvider =
+        new SchedulerProvider() {
+          @Override
+          public Scheduler io() {
+            return io;
+          }
+
+          @Override
+          public Scheduler computation() {
+            return computation;
+          }
+
+          @Override
+          public Scheduler newThread() {
+            return io;
+          }
+
+          @Override
+          public Scheduler mainThread() {
+            return io;
+          }
+        };
+    LAONetworkManager networkManager =
+        new LAONetworkManager(
+            handler,
+            connection,
+            JsonModule.provideGson(DataRegistryModuleHelper.buildRegistry()),
+            schedulerProvider,
+            new HashSet<>());
+
+    MessageGeneral message = new MessageGeneral(KEY_PAIR, DATA, gson);
+    messages.onNext(new Broadcast(CHANNEL, message));
+
+    // The lookup may query the database, it does not run on the computation pool
+    computation.triggerActions();
+    verify(handler, never()).isMessageHandled(any());
+
+    io.triggerActions();
+    verify(handler).isMessageHandled(message.getMessageId());
+
+    networkManager.dispose();
+  }
+
+  @Test
+  public void messagesMissingADependencyAreReleasedOnceItIsHandled()
+      throws UnknownElectionException,
+          UnknownRollCallException,
+          UnknownLaoException,
+          DataHandlingException,
+          NoRollCallException,
+          UnknownWitnessMessageException {
+    TestSchedulerProvider schedulerProvider = new TestSchedulerProvider();
+    TestScheduler testScheduler = schedulerProvider.testScheduler;
+
+    CreateLao createLao = (CreateLao) DATA;
+    MessageGeneral dependency = new MessageGeneral(KEY_PAIR, createLao, gson);
+    MessageGeneral dependent =
+        new MessageGeneral(
+            KEY_PAIR, new CreateLao("Other", KEY_PAIR.getPublicKey(), new ArrayList<>()), gson);
+
+    // The dependent message can only be handled once the lao is known
+    AtomicBoolean laoKnown = new AtomicBoolean(false);
+    doAnswer(
+            args -> {
+              MessageGeneral message = args.getArgument(2);
+              if (message.equals(dependency)) {
+                laoKnown.set(true);
+              } else if (!laoKnown.get()) {
+                throw new UnknownLaoException(createLao.getId());
+              }
+              return null;
+            })
+        .when(handler)
+        .handleMessage(any(), any(), any(MessageGeneral.class));
+
+    LAONetworkManager networkManager =
+        new LAONetworkManager(
+            handler,
+            connection,
+            JsonModule.provideGson(DataRegistryModuleHelper.buildRegistry()),
+            schedulerProvider,
+            new HashSet<>());
+
+    messages.onNext(new Broadcast(CHANNEL, dependent));
+    testScheduler.triggerActions();
+    messages.onNext(new Broadcast(CHANNEL, dependency));
+    testScheduler.triggerActions();
+
+    // The dependent message is handled again right away, without waiting for the reprocessing delay
+    verify(handler, times(2)).handleMessage(any(), any(), eq(dependent));
+
+    networkManager.dispose();
+  }
+
+  @Test
+  public void outboxIsStillSentAfterTheConnectionIsExtended() {
+    TestSchedulerProvider schedulerProvider = new TestSchedulerProvider();
+    TestScheduler testScheduler = schedulerProvider.testScheduler;
+    LAONetworkManager networkManager =
+        new LAONetworkManager(
+            handler,
+            connection,
+            JsonModule.provideGson(DataRegistryModuleHelper.buildRegistry()),
+            schedulerProvider,
+            new HashSet<>());
+
+    networkManager.extendConnection(Collections.singletonList(new PeerAddress("url")));
+
+    MessageGeneral chirp = new MessageGeneral(KEY_PAIR, new AddChirp("text", null, 0), gson);
+    OutboxEntity entry = new OutboxEntity(chirp.getMessageId(), CHANNEL.getAsString(), chirp, 0);
+    when(handler.addToOutbox(CHANNEL, chirp)).thenReturn(Single.just(true));
+    when(handler.getOutbox())
+        .thenReturn(Collections.singletonList(entry), Collections.emptyList());
+    when(handler.removeFromOutbox(any())).thenReturn(Completable.complete());
+
+    networkManager.publish(CHANNEL, chirp).test();
+    testScheduler.advanceTimeBy(REPROCESSING_DELAY, TimeUnit.SECONDS);
+
+    verify(connection)
+        .sendMessage(
+            argThat(msg -> msg instanceof Publish && ((Publish) msg).getMessage().equals(chirp)));
+    verify(handler).removeFromOutbox(chirp.getMessageId());
+    networkManager.dispose();
+  }
+
   @Test
   public void testExtendConnection() {
     TestSchedulerProvider schedulerProvider = new TestSchedulerProvider();
@@ -444,7 +1004,8 @@ public class LAONetworkManagerTest {
 
     verify(connection, times(2)).sendMessage(any(Subscribe.class));
     verify(connection, times(2)).sendMessage(any(Catchup.class));
-    verify(connection, atLeastOnce()).observeMessage();
+    verify(connection, atLeastOnce()).observeBroadcasts();
+    verify(connection, atLeastOnce()).observeControlMessages();
     verify(connection, times(2)).observeConnectionEvents();
     verify(connection).close();
   }
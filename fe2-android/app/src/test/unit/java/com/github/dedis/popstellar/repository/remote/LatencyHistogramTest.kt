@@ -0,0 +1,44 @@
+package com.github.dedis.popstellar.repository.remote
+
+import java.util.concurrent.TimeUnit
+import org.junit.Assert
+import org.junit.Test
+
+class LatencyHistogramTest {
+  @Test
+  fun samplesAreCountedInTheirBucket() {
+    val histogram = LatencyHistogram()
+    histogram.record(TimeUnit.MICROSECONDS.toNanos(500))
+    histogram.record(TimeUnit.MILLISECONDS.toNanos(3))
+    histogram.record(TimeUnit.MILLISECONDS.toNanos(30))
+    histogram.record(TimeUnit.SECONDS.toNanos(10))
+
+    val snapshot = histogram.snapshot()
+    Assert.assertEquals(4, snapshot.count)
+    Assert.assertEquals(1, snapshot.counts[0])
+    Assert.assertEquals(1, snapshot.counts[2])
+    Assert.assertEquals(1, snapshot.counts[5])
+    Assert.assertEquals(1, snapshot.counts[LatencyHistogram.BOUNDS_MILLIS.size])
+  }
+
+  @Test
+  fun percentilesAreBoundedByTheBuckets() {
+    val histogram = LatencyHistogram()
+    repeat(99) { histogram.record(TimeUnit.MILLISECONDS.toNanos(15)) }
+    histogram.record(TimeUnit.MILLISECONDS.toNanos(700))
+
+    val snapshot = histogram.snapshot()
+    Assert.assertEquals(20, snapshot.percentileMillis(50.0))
+    Assert.assertEquals(20, snapshot.percentileMillis(99.0))
+    Assert.assertEquals(1000, snapshot.percentileMillis(100.0))
+    Assert.assertEquals(21.85, snapshot.meanMillis, 0.01)
+  }
+
+  @Test
+  fun emptyHistogramHasNoPercentile() {
+    val snapshot = LatencyHistogram().snapshot()
+    Assert.assertEquals(0, snapshot.count)
+    Assert.assertEquals(0, snapshot.percentileMillis(99.0))
+    Assert.assertEquals(0.0, snapshot.meanMillis, 0.0)
+  }
+}
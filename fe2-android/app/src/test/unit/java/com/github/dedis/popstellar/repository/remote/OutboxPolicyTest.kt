@@ -0,0 +1,90 @@
+package com.github.dedis.popstellar.repository.remote
+
+import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.network.method.message.data.Data
+import com.github.dedis.popstellar.model.network.method.message.data.election.CastVote
+import com.github.dedis.popstellar.model.network.method.message.data.election.PlainVote
+import com.github.dedis.popstellar.model.network.method.message.data.lao.CreateLao
+import com.github.dedis.popstellar.model.network.method.message.data.socialmedia.AddChirp
+import com.github.dedis.popstellar.model.network.method.message.data.socialmedia.AddReaction
+import com.github.dedis.popstellar.model.network.method.message.data.socialmedia.DeleteChirp
+import com.github.dedis.popstellar.model.network.method.message.data.socialmedia.DeleteReaction
+import com.github.dedis.popstellar.model.objects.Election.Companion.generateElectionQuestionId
+import com.github.dedis.popstellar.model.objects.Election.Companion.generateElectionSetupId
+import com.github.dedis.popstellar.model.objects.Lao.Companion.generateLaoId
+import com.github.dedis.popstellar.model.objects.security.KeyPair
+import com.github.dedis.popstellar.testutils.Base64DataUtils
+import com.google.gson.Gson
+import org.junit.Assert
+import org.junit.Test
+
+class OutboxPolicyTest {
+
+  @Test
+  fun onlyTheMessagesMeaningfulWhenLateAreDeferrable() {
+    Assert.assertTrue(OutboxPolicy.isDeferrable(AddChirp("text", null, 0)))
+    Assert.assertTrue(OutboxPolicy.isDeferrable(vote(1)))
+    Assert.assertFalse(
+      OutboxPolicy.isDeferrable(CreateLao("lao", KEY_PAIR.publicKey, ArrayList()))
+    )
+  }
+
+  @Test
+  fun deletedReactionCancelsOutWithTheQueuedReaction() {
+    val chirp = message(AddChirp("text", null, 0))
+    val reaction = message(AddReaction("👍", chirp.messageId, 0))
+    val delete = message(DeleteReaction(reaction.messageId, 1))
+
+    Assert.assertEquals(
+      setOf(reaction.messageId, delete.messageId),
+      OutboxPolicy.superseded(listOf(chirp, reaction), delete)
+    )
+    // A reaction that was already sent has to be deleted on the servers
+    Assert.assertEquals(emptySet<Any>(), OutboxPolicy.superseded(listOf(chirp), delete))
+  }
+
+  @Test
+  fun deletedChirpCancelsOutWithTheQueuedChirpAndItsReactions() {
+    val chirp = message(AddChirp("text", null, 0))
+    val other = message(AddChirp("other", null, 0))
+    val reaction = message(AddReaction("👍", chirp.messageId, 0))
+    val delete = message(DeleteChirp(chirp.messageId, 1))
+
+    Assert.assertEquals(
+      setOf(chirp.messageId, reaction.messageId, delete.messageId),
+      OutboxPolicy.superseded(listOf(chirp, other, reaction), delete)
+    )
+  }
+
+  @Test
+  fun newVoteSupersedesTheQueuedVotesOfTheVoter() {
+    val first = message(vote(1))
+    val otherVoter = MessageGeneral(Base64DataUtils.generateKeyPair(), vote(1), GSON)
+    val second = message(vote(2))
+
+    Assert.assertEquals(
+      setOf(first.messageId),
+      OutboxPolicy.superseded(listOf(first, otherVoter), second)
+    )
+  }
+
+  private fun message(data: Data): MessageGeneral {
+    return MessageGeneral(KEY_PAIR, data, GSON)
+  }
+
+  private fun vote(choice: Int): CastVote {
+    val questionId = generateElectionQuestionId(ELECTION_ID, "question")
+    return CastVote(
+      listOf(PlainVote(questionId, choice, false, null, ELECTION_ID)),
+      ELECTION_ID,
+      LAO_ID
+    )
+  }
+
+  companion object {
+    private val GSON = Gson()
+    private val KEY_PAIR: KeyPair = Base64DataUtils.generateKeyPair()
+    private val LAO_ID = generateLaoId(KEY_PAIR.publicKey, 0, "lao")
+    private val ELECTION_ID = generateElectionSetupId(LAO_ID, 0, "election")
+  }
+}
@@ -0,0 +1,69 @@
+package com.github.dedis.popstellar.repository.remote
+
+import com.github.dedis.popstellar.model.network.answer.Error
+import com.github.dedis.popstellar.model.network.answer.ErrorCode
+import com.github.dedis.popstellar.model.network.answer.Result
+import com.github.dedis.popstellar.model.objects.PeerAddress
+import java.util.concurrent.TimeUnit
+import org.junit.Assert
+import org.junit.Test
+
+class PeerRouterTest {
+  private var now = 0L
+  private val router = PeerRouter { now }
+
+  @Test
+  fun fastestPeerIsRankedFirst() {
+    router.addPeer(SLOW) { true }
+    router.addPeer(FAST) { true }
+
+    answerAfter(SLOW, 1, 100, false)
+    answerAfter(FAST, 2, 10, false)
+
+    Assert.assertEquals(FAST, router.best())
+    Assert.assertEquals(listOf(FAST, SLOW), router.best(2))
+    Assert.assertEquals(SLOW, router.best(setOf(FAST)))
+    Assert.assertNull(router.best(setOf(FAST, SLOW)))
+  }
+
+  @Test
+  fun disconnectedOrFailingPeersAreRankedLast() {
+    var connected = false
+    router.addPeer(FAST) { connected }
+    router.addPeer(SLOW) { true }
+    answerAfter(FAST, 1, 10, false)
+    answerAfter(SLOW, 2, 100, false)
+
+    Assert.assertEquals(SLOW, router.best())
+
+    connected = true
+    Assert.assertEquals(FAST, router.best())
+
+    // Failing queries make the peer unhealthy
+    for (i in 3..6) {
+      answerAfter(FAST, i, 10, true)
+    }
+    Assert.assertEquals(SLOW, router.best())
+  }
+
+  @Test
+  fun unansweredQueriesCountAsErrors() {
+    router.addPeer(FAST) { true }
+    router.onSent(FAST, 1)
+
+    now += TimeUnit.MILLISECONDS.toNanos(PeerRouter.ANSWER_TIMEOUT_MILLIS + 1)
+
+    Assert.assertTrue(router.stats().getValue(FAST).errorRate > 0)
+  }
+
+  private fun answerAfter(peer: PeerAddress, id: Int, millis: Long, isError: Boolean) {
+    router.onSent(peer, id)
+    now += TimeUnit.MILLISECONDS.toNanos(millis)
+    router.onAnswer(peer, if (isError) Error(id, ErrorCode(-2, "error")) else Result(id))
+  }
+
+  companion object {
+    private val FAST = PeerAddress("fast")
+    private val SLOW = PeerAddress("slow")
+  }
+}
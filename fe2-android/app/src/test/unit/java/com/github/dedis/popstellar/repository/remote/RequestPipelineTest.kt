@@ -0,0 +1,102 @@
+package com.github.dedis.popstellar.repository.remote
+
+import com.github.dedis.popstellar.model.network.answer.Error
+import com.github.dedis.popstellar.model.network.answer.ErrorCode
+import com.github.dedis.popstellar.model.network.answer.Result
+import com.github.dedis.popstellar.model.network.method.Catchup
+import com.github.dedis.popstellar.model.network.method.Subscribe
+import com.github.dedis.popstellar.model.objects.Channel
+import com.github.dedis.popstellar.utility.error.JsonRPCErrorException
+import io.reactivex.schedulers.TestScheduler
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import org.junit.Assert
+import org.junit.Test
+import org.mockito.Mockito
+
+class RequestPipelineTest {
+  private val connection = Mockito.mock(Connection::class.java)
+  private val writeScheduler = TestScheduler()
+  private val timeoutScheduler = TestScheduler()
+  private val pipeline = RequestPipeline(connection, writeScheduler, timeoutScheduler, TIMEOUT)
+
+  @Test
+  fun requestsAreWrittenInOrderByTheWriter() {
+    val subscribe = Subscribe(Channel.ROOT, 1)
+    val catchup = Catchup(Channel.ROOT, 2)
+    pipeline.request(subscribe, writeScheduler).test()
+    pipeline.request(catchup, writeScheduler).test()
+
+    // Nothing is written on the calling thread
+    Mockito.verifyNoInteractions(connection)
+    Assert.assertEquals(RequestPipeline.Stats(2, 2), pipeline.stats())
+
+    writeScheduler.triggerActions()
+
+    val inOrder = Mockito.inOrder(connection)
+    inOrder.verify(connection).sendMessage(subscribe)
+    inOrder.verify(connection).sendMessage(catchup)
+    Assert.assertEquals(RequestPipeline.Stats(2, 0), pipeline.stats())
+  }
+
+  @Test
+  fun answerIsDeliveredOnTheChosenScheduler() {
+    val observeScheduler = TestScheduler()
+    val request = pipeline.request(Subscribe(Channel.ROOT, 1), observeScheduler).test()
+    writeScheduler.triggerActions()
+
+    val answer = Result(1)
+    pipeline.onAnswer(answer)
+    request.assertNoValues()
+    Assert.assertEquals(0, pipeline.stats().inFlight)
+
+    observeScheduler.triggerActions()
+    request.assertValue(answer)
+  }
+
+  @Test
+  fun errorAnswerFailsTheRequest() {
+    val request = pipeline.request(Subscribe(Channel.ROOT, 1), writeScheduler).test()
+    writeScheduler.triggerActions()
+
+    pipeline.onAnswer(Error(1, ErrorCode(-4, "error")))
+    writeScheduler.triggerActions()
+
+    request.assertError(JsonRPCErrorException::class.java)
+  }
+
+  @Test
+  fun requestWithoutAnswerTimesOut() {
+    val request = pipeline.request(Subscribe(Channel.ROOT, 1), writeScheduler).test()
+    writeScheduler.triggerActions()
+
+    timeoutScheduler.advanceTimeBy(TIMEOUT, TimeUnit.SECONDS)
+    writeScheduler.triggerActions()
+
+    request.assertError(TimeoutException::class.java)
+    Assert.assertEquals(RequestPipeline.Stats(0, 0), pipeline.stats())
+
+    // A late answer is ignored
+    pipeline.onAnswer(Result(1))
+    request.assertValueCount(0)
+  }
+
+  @Test
+  fun roundTripIsMeasuredByMethod() {
+    var now = 0L
+    val pipeline = RequestPipeline(connection, writeScheduler, timeoutScheduler, TIMEOUT) { now }
+    pipeline.request(Subscribe(Channel.ROOT, 1), writeScheduler).test()
+    writeScheduler.triggerActions()
+
+    now = TimeUnit.MILLISECONDS.toNanos(30)
+    pipeline.onAnswer(Result(1))
+
+    val roundTrip = pipeline.roundTripStats().getValue("subscribe")
+    Assert.assertEquals(1, roundTrip.count)
+    Assert.assertEquals(30.0, roundTrip.meanMillis, 0.0)
+  }
+
+  companion object {
+    private const val TIMEOUT = 5L
+  }
+}
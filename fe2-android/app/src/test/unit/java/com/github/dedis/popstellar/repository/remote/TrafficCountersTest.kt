@@ -0,0 +1,56 @@
+package com.github.dedis.popstellar.repository.remote
+
+import com.tinder.scarlet.Message
+import com.tinder.scarlet.MessageAdapter
+import java.io.DataInputStream
+import java.lang.reflect.Type
+import java.net.InetAddress
+import java.net.ServerSocket
+import org.junit.Assert
+import org.junit.Test
+
+class TrafficCountersTest {
+  private val counters = TrafficCounters()
+
+  @Test
+  fun messageAdapterCountsThePayloadBytes() {
+    val stringAdapter =
+      object : MessageAdapter<String> {
+        override fun fromMessage(message: Message): String = (message as Message.Text).value
+
+        override fun toMessage(data: String): Message = Message.Text(data)
+      }
+    val delegate =
+      object : MessageAdapter.Factory {
+        override fun create(type: Type, annotations: Array<Annotation>) = stringAdapter
+      }
+
+    @Suppress("UNCHECKED_CAST")
+    val adapter =
+      counters.messageAdapterFactory(delegate).create(String::class.java, emptyArray())
+        as MessageAdapter<String>
+
+    Assert.assertEquals("received", adapter.fromMessage(Message.Text("received")))
+    // Non ASCII characters take several bytes
+    adapter.toMessage("sent é")
+
+    Assert.assertEquals(TrafficCounters.TrafficStats(7, 8, 0, 0), counters.stats())
+  }
+
+  @Test
+  fun socketsCountTheWireBytes() {
+    ServerSocket(0, 1, InetAddress.getLoopbackAddress()).use { server ->
+      counters.socketFactory().createSocket(server.inetAddress, server.localPort).use { socket ->
+        server.accept().use { peer ->
+          socket.getOutputStream().write(ByteArray(10))
+          DataInputStream(peer.getInputStream()).readFully(ByteArray(10))
+
+          peer.getOutputStream().write(ByteArray(4))
+          DataInputStream(socket.getInputStream()).readFully(ByteArray(4))
+        }
+      }
+    }
+
+    Assert.assertEquals(TrafficCounters.TrafficStats(0, 0, 10, 4), counters.stats())
+  }
+}
@@ -43,6 +43,7 @@ import com.github.dedis.popstellar.repository.RollCallRepository
 import com.github.dedis.popstellar.repository.WitnessingRepository
 import com.github.dedis.popstellar.repository.database.AppDatabase
 import com.github.dedis.popstellar.repository.database.event.election.ElectionDao
+import com.github.dedis.popstellar.repository.database.event.election.VoteDao
 import com.github.dedis.popstellar.repository.database.lao.LAODao
 import com.github.dedis.popstellar.repository.database.message.MessageDao
 import com.github.dedis.popstellar.repository.database.witnessing.PendingDao
@@ -102,6 +103,8 @@ class ElectionHandlerTest {
 
   @Mock lateinit var electionDao: ElectionDao
 
+  @Mock lateinit var voteDao: VoteDao
+
   @Mock lateinit var witnessingDao: WitnessingDao
 
   @Mock lateinit var witnessDao: WitnessDao
@@ -132,7 +135,7 @@ class ElectionHandlerTest {
     Mockito.`when`(laoDao.insert(MockitoKotlinHelpers.any())).thenReturn(Completable.complete())
 
     Mockito.`when`(appDatabase.messageDao()).thenReturn(messageDao)
-    Mockito.`when`(messageDao.takeFirstNMessages(ArgumentMatchers.anyInt()))
+    Mockito.`when`(messageDao.getLatestMessages(ArgumentMatchers.anyInt()))
       .thenReturn(Single.just(ArrayList()))
     Mockito.`when`(messageDao.insert(MockitoKotlinHelpers.any())).thenReturn(Completable.complete())
     Mockito.`when`(messageDao.getMessageById(MockitoKotlinHelpers.any())).thenReturn(null)
@@ -143,6 +146,11 @@ class ElectionHandlerTest {
     Mockito.`when`(electionDao.getElectionsByLaoId(ArgumentMatchers.anyString()))
       .thenReturn(Single.just(ArrayList()))
 
+    Mockito.`when`(appDatabase.voteDao()).thenReturn(voteDao)
+    Mockito.`when`(voteDao.insert(MockitoKotlinHelpers.any())).thenReturn(Completable.complete())
+    Mockito.`when`(voteDao.getVotesByLaoId(ArgumentMatchers.anyString()))
+      .thenReturn(Single.just(ArrayList()))
+
     Mockito.`when`(appDatabase.witnessDao()).thenReturn(witnessDao)
     Mockito.`when`(witnessDao.getWitnessesByLao(ArgumentMatchers.anyString()))
       .thenReturn(Single.just(ArrayList()))
@@ -50,9 +50,12 @@ import com.github.dedis.popstellar.utility.security.KeyManager
 import com.google.gson.Gson
 import io.reactivex.Completable
 import io.reactivex.Single
+import io.reactivex.plugins.RxJavaPlugins
+import io.reactivex.schedulers.Schedulers
 import java.io.IOException
 import java.security.GeneralSecurityException
 import java.time.Instant
+import org.junit.After
 import org.junit.Assert
 import org.junit.Before
 import org.junit.Test
@@ -102,6 +105,9 @@ class LaoHandlerTest {
   fun setup() {
     MockitoAnnotations.openMocks(this)
     val application = ApplicationProvider.getApplicationContext<Application>()
+    // Load the repositories synchronously, so that the filter of persisted message ids is filled
+    // before the messages are handled
+    RxJavaPlugins.setIoSchedulerHandler { Schedulers.trampoline() }
 
     Mockito.lenient().`when`(keyManager.mainKeyPair).thenReturn(SENDER_KEY1)
     Mockito.lenient().`when`(keyManager.mainPublicKey).thenReturn(SENDER1)
@@ -114,7 +120,7 @@ class LaoHandlerTest {
     Mockito.`when`(laoDao.insert(MockitoKotlinHelpers.any())).thenReturn(Completable.complete())
 
     Mockito.`when`(appDatabase.messageDao()).thenReturn(messageDao)
-    Mockito.`when`(messageDao.takeFirstNMessages(ArgumentMatchers.anyInt()))
+    Mockito.`when`(messageDao.getLatestMessages(ArgumentMatchers.anyInt()))
       .thenReturn(Single.just(ArrayList()))
     Mockito.`when`(messageDao.insert(MockitoKotlinHelpers.any())).thenReturn(Completable.complete())
     Mockito.`when`(messageDao.getMessageById(MockitoKotlinHelpers.any())).thenReturn(null)
@@ -173,6 +179,11 @@ class LaoHandlerTest {
     messageRepo.addMessage(createLaoMessage, isContentNeeded = true, toPersist = true)
   }
 
+  @After
+  fun tearDown() {
+    RxJavaPlugins.reset()
+  }
+
   @Test
   @Throws(
     DataHandlingException::class,
@@ -206,6 +217,57 @@ class LaoHandlerTest {
     Assert.assertNull(resultLao.modificationId)
   }
 
+  @Test
+  fun testHandleBatchSkipsKnownAndDuplicatedMessages() {
+    val message = MessageGeneral(SENDER_KEY1, CREATE_LAO2, gson)
+
+    messageHandler
+      .handleMessages(messageSender, LAO_CHANNEL2, listOf(createLaoMessage, message, message)) {
+        _,
+        e ->
+        throw e
+      }
+      .test()
+      .assertComplete()
+
+    // The new lao is created once. The known message is found in memory and the filter of
+    // persisted ids tells that the new one was never persisted, so the database is not queried
+    Assert.assertEquals(LAO_CHANNEL2, laoRepo.getLaoByChannel(LAO_CHANNEL2).channel)
+    Mockito.verify(messageSender).subscribe(LAO_CHANNEL2.subChannel("coin"))
+    Mockito.verify(messageDao, Mockito.never()).getPresentMessageIds(MockitoKotlinHelpers.any())
+  }
+
+  @Test
+  fun testHandleBatchLooksUpMessagesThatMightBePersisted() {
+    val message = MessageGeneral(SENDER_KEY1, CREATE_LAO2, gson)
+    val ids = listOf(createLaoMessage.messageId, message.messageId)
+    // The filter is filled with the ids on disk, it cannot tell that the new message is absent
+    Mockito.`when`(messageDao.getAllMessageIds()).thenReturn(ids)
+    Mockito.`when`(messageDao.getPresentMessageIds(ids))
+      .thenReturn(listOf(createLaoMessage.messageId))
+    val messageRepo =
+      MessageRepository(appDatabase, ApplicationProvider.getApplicationContext<Application>())
+    val handler =
+      MessageHandler(
+        messageRepo,
+        buildRegistry(laoRepo, witnessingRepository, messageRepo, keyManager, serverRepository)
+      )
+
+    handler
+      .handleMessages(messageSender, LAO_CHANNEL2, listOf(createLaoMessage, message, message)) {
+        _,
+        e ->
+        throw e
+      }
+      .test()
+      .assertComplete()
+
+    // Both messages absent from memory are looked up in a single query, the new lao is created
+    Mockito.verify(messageDao).getPresentMessageIds(MockitoKotlinHelpers.any())
+    Mockito.verify(messageDao).getPresentMessageIds(ids)
+    Assert.assertEquals(LAO_CHANNEL2, laoRepo.getLaoByChannel(LAO_CHANNEL2).channel)
+  }
+
   @Test
   @Throws(
     DataHandlingException::class,
@@ -118,7 +118,7 @@ class RollCallHandlerTest {
     Mockito.`when`(laoDao.insert(MockitoKotlinHelpers.any())).thenReturn(Completable.complete())
 
     Mockito.`when`(appDatabase.messageDao()).thenReturn(messageDao)
-    Mockito.`when`(messageDao.takeFirstNMessages(ArgumentMatchers.anyInt()))
+    Mockito.`when`(messageDao.getLatestMessages(ArgumentMatchers.anyInt()))
       .thenReturn(Single.just(ArrayList()))
     Mockito.`when`(messageDao.insert(MockitoKotlinHelpers.any())).thenReturn(Completable.complete())
     Mockito.`when`(messageDao.getMessageById(MockitoKotlinHelpers.any())).thenReturn(null)
@@ -1,6 +1,9 @@
 package com.github.dedis.popstellar.utility.security
 
 import com.github.dedis.popstellar.utility.security.HashSHA256.hash
+import java.nio.charset.StandardCharsets
+import java.security.MessageDigest
+import java.util.Base64
 import org.junit.Assert
 import org.junit.Test
 
@@ -51,4 +54,31 @@ class HashSHA256Test {
       hash("text \uD83E\uDD70", "\uD83C\uDFC9", "more text\uD83C\uDF83️", "♠️")
     )
   }
+
+  @Test
+  fun hashIsTheSameAfterAFailedHash() {
+    val expected = hash("first", "second")
+    Assert.assertThrows(IllegalArgumentException::class.java) { hash("first", "") }
+    Assert.assertEquals(expected, hash("first", "second"))
+  }
+
+  @Test
+  fun hashOfLongStringsMatchesTheProtocol() {
+    val long = "\uD83C\uDFC9".repeat(1000)
+    val bytes = long.toByteArray(StandardCharsets.UTF_8)
+    val digest = MessageDigest.getInstance("SHA-256")
+    digest.update(bytes.size.toString().toByteArray(StandardCharsets.UTF_8))
+    digest.update(bytes)
+    val expected = Base64.getUrlEncoder().encodeToString(digest.digest())
+
+    Assert.assertEquals(expected, hash(long))
+  }
+
+  @Test
+  fun digestHashesTheBytes() {
+    val bytes = "Data to hash".toByteArray(StandardCharsets.UTF_8)
+    val expected = MessageDigest.getInstance("SHA-256").digest(bytes)
+
+    Assert.assertArrayEquals(expected, HashSHA256.digest(bytes))
+  }
 }